@@ -0,0 +1,38 @@
+package com.shop.socks.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+//Запуск бенчмарков с результатом в JSON, чтобы сравнивать прогоны между коммитами.
+//Аргументы: [регулярное выражение бенчмарков] [файл результата]; по умолчанию все бенчмарки
+//и build/reports/jmh/results.json. Параметры каталога можно сузить, например -p catalogueSize=1000.
+//В результат попадает и объем выделенной памяти на операцию
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        String include = args.length > 0 ? args[0] : "com\\.shop\\.socks\\..*Benchmark";
+        Path result = Paths.get(args.length > 1 ? args[1] : "build/reports/jmh/results.json");
+        if (result.getParent() != null) {
+            Files.createDirectories(result.getParent());
+        }
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class) //gc.alloc.rate.norm - байт, выделенных за операцию
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.toString())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,69 @@
+package com.shop.socks.benchmarks;
+
+import com.shop.socks.dto.SocksDto;
+import com.shop.socks.model.Socks;
+import com.shop.socks.service.impl.SocksServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Память ответа getFilteredSocks на 10 млн позиций: сколько байт удерживает готовый список
+//(retainedBytes, bytesPerRow) и сколько выделяется за вызов (gc.alloc.rate.norm из GCProfiler).
+//Время в этом бенчмарке включает принудительные сборки мусора и не сравнивается с FilteredSocksBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(value = 3, jvmArgsAppend = "-Xmx8g")
+public class CatalogueFootprintBenchmark {
+
+    @Param({"10000000"})
+    private int catalogueSize;
+
+    private SocksServiceImpl socksService;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        public long retainedBytes;
+        public long bytesPerRow;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        //Один объект String на цвет, как после интернирования цветов при чтении из БД
+        String[] colors = new String[catalogueSize / 101 + 1];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = "color-" + i;
+        }
+        List<Socks> catalogue = new ArrayList<>(catalogueSize);
+        for (int i = 0; i < catalogueSize; i++) {
+            Socks socks = new Socks(colors[i / 101], i % 101, i % 1000);
+            socks.setId((long) i);
+            catalogue.add(socks);
+        }
+        socksService = Services.socksService(StubSocksRepository.create(catalogue));
+    }
+
+    @Benchmark
+    public int filteredResult(Footprint footprint) {
+        long before = usedHeapAfterGc();
+        List<SocksDto> result = socksService.getFilteredSocks(null, 0, 100, "color");
+        long after = usedHeapAfterGc();
+        footprint.retainedBytes = after - before;
+        footprint.bytesPerRow = footprint.retainedBytes / Math.max(1, result.size());
+        return result.size();
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
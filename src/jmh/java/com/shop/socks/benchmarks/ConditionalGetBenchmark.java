@@ -0,0 +1,50 @@
+package com.shop.socks.benchmarks;
+
+import com.shop.socks.controller.SocksController;
+import com.shop.socks.model.Socks;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Повторный опрос GET /api/socks с одним фильтром при неизменных остатках:
+//uncached - кэш ответов отключен, каждый опрос строит и сериализует список,
+//cached - тело берется из кэша, notModified - клиент присылает If-None-Match и получает 304
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConditionalGetBenchmark {
+
+    @Param({"1000", "100000"})
+    private int catalogueSize;
+
+    @Param({"uncached", "cached", "notModified"})
+    private String mode;
+
+    private SocksController socksController;
+    private String ifNoneMatch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Socks> catalogue = new ArrayList<>(catalogueSize);
+        for (int i = 0; i < catalogueSize; i++) {
+            Socks socks = new Socks("color-" + (i / 101), i % 101, i % 1000);
+            socks.setId((long) i);
+            catalogue.add(socks);
+        }
+        socksController = new SocksController(Services.socksService(StubSocksRepository.create(catalogue)), null,
+                Services.responseCache("uncached".equals(mode) ? 0 : 1000), Services.idempotencyStore(0));
+        String etag = socksController.allFilteredSocks("", 0, 100, "color", null).getHeaders().getETag();
+        ifNoneMatch = "notModified".equals(mode) ? etag : null;
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> poll() {
+        return socksController.allFilteredSocks("", 0, 100, "color", ifNoneMatch);
+    }
+}
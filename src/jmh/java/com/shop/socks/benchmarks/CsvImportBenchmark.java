@@ -0,0 +1,63 @@
+package com.shop.socks.benchmarks;
+
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.parser.CsvSocksReader;
+import com.shop.socks.service.impl.SocksServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+//Разбор CSV: потоковый разбор из памяти и loadDataFromCSV с чтением файла и суммированием по артикулам
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvImportBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int rows;
+
+    private byte[] csv;
+    private Path csvFile;
+    private SocksServiceImpl socksService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        StringBuilder builder = new StringBuilder(rows * 20).append("ID,Color,Cotton,Quantity\n");
+        for (int i = 1; i <= rows; i++) {
+            builder.append(i).append(",color-").append(i % 50).append(',')
+                    .append(i % 101).append(',').append(i % 7 + 1).append('\n');
+        }
+        csv = builder.toString().getBytes(StandardCharsets.UTF_8);
+        csvFile = Files.createTempFile("socks-bench-", ".csv");
+        Files.write(csvFile, csv);
+        socksService = Services.socksService(StubSocksRepository.create(Collections.emptyList()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(csvFile);
+    }
+
+    @Benchmark
+    public long parse(Blackhole blackhole) throws IOException {
+        return CsvSocksReader.read(new ByteArrayInputStream(csv), (rowNumber, color, cotton, quantity) -> {
+            blackhole.consume(color);
+            blackhole.consume(cotton + quantity);
+        });
+    }
+
+    @Benchmark
+    public LotOfSocksDto loadDataFromCsv() {
+        return socksService.loadDataFromCSV(csvFile.toString());
+    }
+}
@@ -0,0 +1,76 @@
+package com.shop.socks.benchmarks;
+
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.parser.BatchFormat;
+import com.shop.socks.parser.ExcelSocksReader;
+import com.shop.socks.service.impl.BatchProgress;
+import com.shop.socks.service.impl.SocksServiceImpl;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+//Цикл разбора Excel из processBatchOfSocks: отдельно потоковое чтение листа
+//и полный импорт с суммированием по артикулам (запись в БД заглушена)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExcelImportBenchmark {
+
+    @Param({"10000", "100000"})
+    private int rows;
+
+    private Path xlsx;
+    private SocksServiceImpl socksService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        xlsx = Files.createTempFile("socks-bench-", ".xlsx");
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(100);
+             OutputStream outputStream = Files.newOutputStream(xlsx)) {
+            Sheet sheet = workbook.createSheet();
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("color");
+            header.createCell(1).setCellValue("cotton");
+            header.createCell(2).setCellValue("quantity");
+            for (int i = 1; i <= rows; i++) {
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue("color-" + (i % 50));
+                row.createCell(1).setCellValue(i % 101);
+                row.createCell(2).setCellValue(i % 7 + 1);
+            }
+            workbook.write(outputStream);
+            workbook.dispose();
+        }
+        socksService = Services.socksService(StubSocksRepository.create(Collections.emptyList()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(xlsx);
+    }
+
+    @Benchmark
+    public long parseSheet(Blackhole blackhole) throws IOException {
+        return ExcelSocksReader.read(xlsx.toFile(), (rowNumber, color, cotton, quantity) -> {
+            blackhole.consume(color);
+            blackhole.consume(cotton + quantity);
+        });
+    }
+
+    @Benchmark
+    public LotOfSocksDto importBatch() throws IOException {
+        return socksService.importBatch(xlsx, BatchFormat.EXCEL, new BatchProgress());
+    }
+}
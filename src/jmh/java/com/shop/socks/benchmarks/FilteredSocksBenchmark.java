@@ -0,0 +1,42 @@
+package com.shop.socks.benchmarks;
+
+import com.shop.socks.dto.SocksDto;
+import com.shop.socks.model.Socks;
+import com.shop.socks.service.impl.SocksServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//getFilteredSocks на каталогах от 1 тыс. до 10 млн позиций: репозиторий возвращает весь каталог,
+//измеряется обработка результата сервисом (преобразование в DTO, сборка списка, логирование)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class FilteredSocksBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int catalogueSize;
+
+    private SocksServiceImpl socksService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Socks> catalogue = new ArrayList<>(catalogueSize);
+        for (int i = 0; i < catalogueSize; i++) {
+            Socks socks = new Socks("color-" + (i / 101), i % 101, i % 1000);
+            socks.setId((long) i);
+            catalogue.add(socks);
+        }
+        socksService = Services.socksService(StubSocksRepository.create(catalogue));
+    }
+
+    @Benchmark
+    public List<SocksDto> filteredByCottonRange() {
+        return socksService.getFilteredSocks(null, 0, 100, "color");
+    }
+}
@@ -0,0 +1,136 @@
+package com.shop.socks.benchmarks;
+
+import com.shop.socks.cache.StockCache;
+import com.shop.socks.model.Socks;
+import com.shop.socks.model.SocksKey;
+import com.shop.socks.repository.SocksRepository;
+import com.shop.socks.repository.StockRow;
+import com.shop.socks.service.StockWriter;
+import com.shop.socks.service.impl.CoalescingStockWriter;
+import com.shop.socks.service.impl.DirectStockWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Приход и отпуск по одному горячему артикулу из 32 потоков: прямая запись (direct) и объединение
+//записей (coalescing, socks.stock.write-mode=coalescing). Строка склада одна, каждый запрос к "БД"
+//занимает latencyMicros под блокировкой строки, поэтому прямая запись упирается в блокировку,
+//а объединение платит за нее один раз на пачку
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class HotSkuWriterBenchmark {
+
+    private static final SocksKey KEY = new SocksKey("Red", 50);
+
+    @Param({"direct", "coalescing"})
+    private String mode;
+
+    @Param({"1000"})
+    private long latencyMicros;
+
+    private StockWriter writer;
+    private final AtomicLong operations = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SocksRepository repository = new SlowRow(latencyMicros).repository();
+        StockCache stockCache = new StockCache(100, 60);
+        writer = "coalescing".equals(mode)
+                ? new CoalescingStockWriter(repository, stockCache, TransactionOperations.withoutTransaction(),
+                200, 256)
+                : new DirectStockWriter(repository, stockCache);
+        writer.increment(KEY, 10);
+    }
+
+    //Приходы по 2 и отпуски по 1 чередуются, остаток растет и отпуск не отклоняется
+    @Benchmark
+    public Object movement() {
+        return operations.incrementAndGet() % 2 == 0 ? writer.increment(KEY, 2) : writer.decrement(KEY, 1);
+    }
+
+    //Одна строка склада, запросы выполняются по одному с задержкой
+    private static final class SlowRow {
+
+        private final long latencyNanos;
+        private int quantity;
+
+        private SlowRow(long latencyMicros) {
+            this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        }
+
+        SocksRepository repository() {
+            return (SocksRepository) Proxy.newProxyInstance(SocksRepository.class.getClassLoader(),
+                    new Class<?>[]{SocksRepository.class}, (proxy, method, args) -> {
+                        synchronized (this) {
+                            return switch (method.getName()) {
+                                case "incrementQuantity" -> {
+                                    latency();
+                                    quantity += (int) args[2];
+                                    yield socks();
+                                }
+                                case "decrementQuantity" -> {
+                                    latency();
+                                    if (quantity < (int) args[2]) {
+                                        yield Optional.empty();
+                                    }
+                                    quantity -= (int) args[2];
+                                    yield Optional.of(socks());
+                                }
+                                case "lockStock" -> {
+                                    latency();
+                                    yield Optional.of(stockRow());
+                                }
+                                case "addQuantity" -> {
+                                    latency();
+                                    quantity += (int) args[1];
+                                    yield 1;
+                                }
+                                case "upsertStock" -> {
+                                    latency();
+                                    quantity += (int) args[2];
+                                    yield stockRow();
+                                }
+                                case "hashCode" -> System.identityHashCode(proxy);
+                                case "equals" -> proxy == args[0];
+                                case "toString" -> "SlowRow";
+                                default -> throw new UnsupportedOperationException(method.getName());
+                            };
+                        }
+                    });
+        }
+
+        private Socks socks() {
+            Socks socks = new Socks(KEY.color(), KEY.cotton(), quantity);
+            socks.setId(1L);
+            return socks;
+        }
+
+        private StockRow stockRow() {
+            int rowQuantity = quantity;
+            return new StockRow() {
+                @Override
+                public Long getId() {
+                    return 1L;
+                }
+
+                @Override
+                public int getQuantity() {
+                    return rowQuantity;
+                }
+            };
+        }
+
+        private void latency() throws InterruptedException {
+            TimeUnit.NANOSECONDS.sleep(latencyNanos);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.shop.socks.benchmarks;
+
+import com.shop.socks.cache.IdempotencyStore;
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.dto.SocksDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Накладные расходы Idempotency-Key на приход без учета самой операции: none - запрос без ключа,
+//newKey - каждый запрос с новым ключом (проверка LRU, запись ответа; занятие ключа в БД
+//здесь ничего не стоит, в приложении это один INSERT), replay - повтор ключа
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdempotencyBenchmark {
+
+    private static final LotOfSocksDto RESPONSE = new LotOfSocksDto("Red", 50, 100);
+
+    @Param({"none", "newKey", "replay"})
+    private String mode;
+
+    private IdempotencyStore store;
+    private final SocksDto income = new SocksDto("Red", 50, 1);
+    private final AtomicLong keys = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        store = Services.idempotencyStore(100_000);
+        store.execute("replayed", "income", income, () -> RESPONSE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.destroy();
+    }
+
+    @Benchmark
+    public IdempotencyStore.Result income() {
+        String key = switch (mode) {
+            case "newKey" -> "key-" + keys.incrementAndGet();
+            case "replay" -> "replayed";
+            default -> null;
+        };
+        return store.execute(key, "income", income, () -> RESPONSE);
+    }
+}
@@ -0,0 +1,90 @@
+package com.shop.socks.benchmarks;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.shop.socks.controller.SocksController;
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.dto.SocksDto;
+import com.shop.socks.model.Socks;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Стоимость логирования на горячем пути контроллер -> сервис: записи форматируются полностью
+//и пишутся в пустой поток, то есть измеряется сборка сообщений, а не скорость консоли.
+//OFF - нижняя граница, INFO - рабочий уровень (разница с OFF должна быть близка к нулю),
+//DEBUG - отладочный уровень, где списки ограничены socks.logging.max-payload-elements
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggingOverheadBenchmark {
+
+    @Param({"OFF", "INFO", "DEBUG"})
+    private String level;
+
+    @Param({"100", "10000"})
+    private int catalogueSize;
+
+    private SocksController socksController;
+    private Logger applicationLogger;
+    private OutputStreamAppender<ILoggingEvent> appender;
+    private final SocksDto income = new SocksDto("Red", 50, 1);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Socks> catalogue = new ArrayList<>(catalogueSize);
+        for (int i = 0; i < catalogueSize; i++) {
+            Socks socks = new Socks("color-" + (i / 101), i % 101, i % 1000);
+            socks.setId((long) i);
+            catalogue.add(socks);
+        }
+        //Кэш ответов отключен (max-entries=0): каждый вызов проходит сервис и сериализацию
+        socksController = new SocksController(Services.socksService(StubSocksRepository.create(catalogue)), null,
+                Services.responseCache(0), Services.idempotencyStore(0));
+
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{HH:mm:ss.SSS} %-5level [%thread] %logger{36} - %msg%n");
+        encoder.start();
+        appender = new OutputStreamAppender<>();
+        appender.setContext(context);
+        appender.setEncoder(encoder);
+        appender.setOutputStream(OutputStream.nullOutputStream());
+        appender.start();
+
+        applicationLogger = context.getLogger("com.shop.socks");
+        applicationLogger.setAdditive(false);
+        applicationLogger.addAppender(appender);
+        applicationLogger.setLevel(ch.qos.logback.classic.Level.toLevel(level));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        applicationLogger.detachAppender(appender);
+        applicationLogger.setAdditive(true);
+        applicationLogger.setLevel(null);
+        appender.stop();
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> filtered() {
+        return socksController.allFilteredSocks(null, 0, 100, "color", null);
+    }
+
+    @Benchmark
+    public ResponseEntity<LotOfSocksDto> income() {
+        return socksController.arrivalOfSocks(income, null);
+    }
+}
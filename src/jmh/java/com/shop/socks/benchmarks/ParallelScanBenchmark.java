@@ -0,0 +1,88 @@
+package com.shop.socks.benchmarks;
+
+import com.shop.socks.repository.ParallelStockScanner;
+import com.shop.socks.repository.StockRowCallback;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+//Последовательный и параллельный обход выборки без цвета на 1 тыс. - 1 млн строк.
+//Запрос к БД имитируется чтением строк по корзинам хлопка с фиксированной ценой строки
+//(rowCost, единицы Blackhole.consumeCPU - декодирование строки драйвером). По результатам
+//видно, с какого размера выборки разбиение окупает слияние частей и передачу между потоками,
+//от этого выбирается socks.scan.parallel-threshold-rows
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ParallelScanBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int rows;
+
+    @Param({"sequential", "parallel"})
+    private String mode;
+
+    @Param({"4"})
+    private int parallelism;
+
+    @Param({"50"})
+    private long rowCost;
+
+    private long[][] ids;
+    private String[][] colors;
+    private int[][] quantities;
+    private ParallelStockScanner scanner;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        //Строки разложены по значению хлопка, внутри корзины - по цвету, как ORDER BY cotton, color
+        int perCotton = Math.max(1, rows / 101);
+        ids = new long[101][perCotton];
+        colors = new String[101][perCotton];
+        quantities = new int[101][perCotton];
+        String[] palette = new String[perCotton];
+        for (int i = 0; i < perCotton; i++) {
+            palette[i] = String.format("color-%07d", i);
+        }
+        for (int cotton = 0; cotton <= 100; cotton++) {
+            for (int i = 0; i < perCotton; i++) {
+                ids[cotton][i] = (long) cotton * perCotton + i;
+                colors[cotton][i] = palette[i];
+                quantities[cotton][i] = i % 1000;
+            }
+        }
+        scanner = new ParallelStockScanner(parallelism, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        scanner.destroy();
+    }
+
+    @Benchmark
+    public void scanAll(Blackhole blackhole) {
+        StockRowCallback consumer = (id, color, cotton, quantity) -> {
+            blackhole.consume(id);
+            blackhole.consume(color);
+            blackhole.consume(quantity);
+        };
+        if ("parallel".equals(mode)) {
+            scanner.scan(0, 100, "cotton", this::scanTable, consumer);
+        } else {
+            scanTable(0, 100, "cotton", consumer);
+        }
+    }
+
+    private void scanTable(Integer minCotton, Integer maxCotton, String sortBy, StockRowCallback callback) {
+        for (int cotton = minCotton; cotton <= maxCotton; cotton++) {
+            for (int i = 0; i < ids[cotton].length; i++) {
+                Blackhole.consumeCPU(rowCost);
+                callback.row(ids[cotton][i], colors[cotton][i], cotton, quantities[cotton][i]);
+            }
+        }
+    }
+}
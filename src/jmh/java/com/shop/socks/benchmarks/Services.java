@@ -0,0 +1,65 @@
+package com.shop.socks.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.socks.cache.ColorDictionary;
+import com.shop.socks.cache.IdempotencyStore;
+import com.shop.socks.cache.ResponseCache;
+import com.shop.socks.cache.StockCache;
+import com.shop.socks.cache.StockVersions;
+import com.shop.socks.metrics.SocksMetrics;
+import com.shop.socks.model.IdempotencyRecord;
+import com.shop.socks.repository.IdempotencyRepository;
+import com.shop.socks.repository.SocksRepository;
+import com.shop.socks.service.impl.BatchPipeline;
+import com.shop.socks.service.impl.DirectStockWriter;
+import com.shop.socks.service.impl.SocksServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.Collection;
+import java.util.Optional;
+
+final class Services {
+
+    private Services() {
+    }
+
+    static SocksServiceImpl socksService(SocksRepository repository) {
+        StockCache stockCache = new StockCache(10_000, 60);
+        return new SocksServiceImpl(repository, stockCache, new DirectStockWriter(repository, stockCache),
+                new SocksMetrics(new SimpleMeterRegistry(), stockCache), Optional.empty(),
+                new BatchPipeline(2, 8, 4096), new ColorDictionary(null));
+    }
+
+    static ResponseCache responseCache(int maxEntries) {
+        return new ResponseCache(new StockVersions(new StockCache(10_000, 60)), new ColorDictionary(null),
+                new ObjectMapper(), maxEntries, 1 << 20, 64L << 20, 60);
+    }
+
+    //Хранилище ключей идемпотентности без БД: запись в таблицу не выполняется, ключей в ней нет
+    static IdempotencyStore idempotencyStore(int maxEntries) {
+        return new IdempotencyStore(new IdempotencyRepository(null) {
+            @Override
+            public boolean reserve(IdempotencyRecord reservation, long leaseMs) {
+                return true;
+            }
+
+            @Override
+            public void release(String key) {
+            }
+
+            @Override
+            public void saveAll(Collection<IdempotencyRecord> records) {
+            }
+
+            @Override
+            public Optional<IdempotencyRecord> find(String key) {
+                return Optional.empty();
+            }
+
+            @Override
+            public int deleteExpired(long maxAgeSeconds) {
+                return 0;
+            }
+        }, maxEntries, 24, 30_000, 10, 5000);
+    }
+}
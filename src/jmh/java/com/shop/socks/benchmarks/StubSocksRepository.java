@@ -0,0 +1,41 @@
+package com.shop.socks.benchmarks;
+
+import com.shop.socks.model.Socks;
+import com.shop.socks.repository.BatchUpsertResult;
+import com.shop.socks.repository.SocksRepository;
+import com.shop.socks.repository.StockRowCallback;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+//Репозиторий без БД для бенчмарков: отвечает заранее подготовленными данными и почти ничего не стоит,
+//поэтому измеряется работа сервиса и разбора, а не моков или сети
+final class StubSocksRepository {
+
+    private StubSocksRepository() {
+    }
+
+    static SocksRepository create(List<Socks> catalogue) {
+        Socks row = catalogue.isEmpty() ? new Socks("Red", 50, 100) : catalogue.get(0);
+        return (SocksRepository) Proxy.newProxyInstance(SocksRepository.class.getClassLoader(),
+                new Class<?>[]{SocksRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "scanFiltered" -> {
+                        StockRowCallback callback = (StockRowCallback) args[4];
+                        for (Socks socks : catalogue) {
+                            callback.row(socks.getId(), socks.getColor(), socks.getCotton(), socks.getQuantity());
+                        }
+                        yield null;
+                    }
+                    case "sumQuantity" -> (long) catalogue.size();
+                    case "upsertQuantities" -> new BatchUpsertResult(0, ((Map<?, ?>) args[0]).size());
+                    case "incrementQuantity" -> row;
+                    case "decrementQuantity", "findByColorAndCotton" -> Optional.of(row);
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "StubSocksRepository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
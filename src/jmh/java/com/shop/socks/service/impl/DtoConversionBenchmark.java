@@ -0,0 +1,30 @@
+package com.shop.socks.service.impl;
+
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.model.Socks;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+//Преобразование сущности в DTO ответа; бенчмарк лежит в пакете сервиса, т.к. методы преобразования пакетные
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DtoConversionBenchmark {
+
+    private Socks socks;
+
+    @Setup
+    public void setUp() {
+        socks = new Socks("Red", 50, 100);
+        socks.setId(1L);
+    }
+
+    @Benchmark
+    public LotOfSocksDto convertToLotOfSocks() {
+        return SocksServiceImpl.convertToLotOfSocks(socks);
+    }
+}
@@ -3,11 +3,17 @@ package com.shop.socks;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import java.util.Map;
+
 @SpringBootApplication
 public class Application {
 
 	public static void main(String[] args) {
-		SpringApplication.run(Application.class, args);
+		SpringApplication application = new SpringApplication(Application.class);
+		//Значения по умолчанию с низшим приоритетом: настройки окружения их переопределяют
+		application.setDefaultProperties(Map.of(
+				"management.endpoints.web.exposure.include", "health,prometheus"));
+		application.run(args);
 	}
 
 }
@@ -0,0 +1,4 @@
+package com.shop.socks.cache;
+
+public record CacheStats(long hits, long misses, long evictions, int size) {
+}
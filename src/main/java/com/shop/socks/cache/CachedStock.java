@@ -0,0 +1,17 @@
+package com.shop.socks.cache;
+
+import com.shop.socks.model.Socks;
+
+//Остаток одного артикула в кэше; id == null означает, что позиции на складе нет
+public record CachedStock(Long id, int quantity) {
+
+    public static final CachedStock ABSENT = new CachedStock(null, 0);
+
+    public static CachedStock of(Socks socks) {
+        return new CachedStock(socks.getId(), socks.getQuantity());
+    }
+
+    public boolean isPresent() {
+        return id != null;
+    }
+}
@@ -0,0 +1,172 @@
+package com.shop.socks.cache;
+
+import com.shop.socks.model.SocksColor;
+import com.shop.socks.repository.ColorRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Словарь цветов (приведение написания к каноническому): написания, отличающиеся регистром и пробелами
+//("Red", " red ", "RED"), - один цвет с одним каноническим написанием, под которым хранятся остатки.
+//Приход, пакеты движений, загрузки партий и изменение позиции записывают цвет в каноническом написании,
+//выборки ищут по нему же. Словарь целиком в памяти, загружается из socks_colors после старта приложения
+//(ApplicationReadyEvent, когда схема уже создана); новый цвет регистрируется в таблице при первом приходе.
+//Цвет, зарегистрированный до загрузки, получает написание из таблицы, поэтому написания не расходятся.
+//Для каждого цвета выдается один и тот же экземпляр строки, поэтому ключи кэша остатков и индекса
+//не хранят копий написания; цвета сравниваются через String.equals
+@Component
+@Slf4j
+public class ColorDictionary {
+
+    private final ColorRepository repository; //null - словарь только в памяти (тесты, бенчмарки)
+
+    //Ключ сравнения -> каноническое написание
+    private final ConcurrentHashMap<String, String> byNormalized = new ConcurrentHashMap<>();
+    //Регистрация нового цвета редка, поэтому выполняется под общей блокировкой
+    private final ReentrantLock registerLock = new ReentrantLock();
+
+    @Autowired
+    public ColorDictionary(ColorRepository repository) {
+        this.repository = repository;
+    }
+
+    //Загрузка словаря из таблицы; пустая таблица (первый запуск) заполняется цветами остатков
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (repository == null) {
+            return;
+        }
+        int[] loaded = new int[1];
+        repository.forEach(color -> {
+            install(color);
+            loaded[0]++;
+        });
+        if (loaded[0] == 0) {
+            seed();
+        }
+        log.info("Словарь цветов загружен: {} цветов", byNormalized.size());
+    }
+
+    //Ключ сравнения: без пробелов по краям, пробелы внутри - одиночные, нижний регистр
+    public static String normalize(String color) {
+        String cleaned = clean(color);
+        return cleaned == null ? null : cleaned.toLowerCase(Locale.ROOT);
+    }
+
+    //Каноническое написание для записи остатков; неизвестный цвет регистрируется.
+    //Пустой цвет возвращается как есть: его отклоняет проверка операции
+    public String canonical(String color) {
+        String normalized = normalize(color);
+        if (normalized == null) {
+            return color;
+        }
+        String known = byNormalized.get(normalized);
+        return known != null ? known : register(clean(color), normalized);
+    }
+
+    //Каноническое написание для выборки; неизвестный цвет не регистрируется, ищется как написан
+    //(без лишних пробелов). null - фильтра по цвету нет
+    public String lookup(String color) {
+        String normalized = normalize(color);
+        if (normalized == null) {
+            return null;
+        }
+        String known = byNormalized.get(normalized);
+        return known != null ? known : clean(color);
+    }
+
+    public int size() {
+        return byNormalized.size();
+    }
+
+    private String register(String name, String normalized) {
+        registerLock.lock();
+        try {
+            String known = byNormalized.get(normalized);
+            if (known != null) {
+                return known;
+            }
+            SocksColor registered = repository == null
+                    ? new SocksColor(name, normalized)
+                    : repository.register(name, normalized);
+            log.debug("Зарегистрирован цвет {}", registered.getName());
+            return install(registered);
+        } finally {
+            registerLock.unlock();
+        }
+    }
+
+    private String install(SocksColor color) {
+        String previous = byNormalized.putIfAbsent(color.getNormalized(), color.getName());
+        return previous != null ? previous : color.getName();
+    }
+
+    //Первый запуск со словарем: в него заносятся цвета уже записанных остатков. Из вариантов одного цвета
+    //каноническим становится первый по порядку, позиции остальных вариантов остаются отдельными
+    private void seed() {
+        Map<String, SocksColor> colors = new LinkedHashMap<>();
+        List<String> variants = new ArrayList<>();
+        repository.forEachStockColor(color -> {
+            String normalized = normalize(color);
+            if (normalized == null) {
+                return;
+            }
+            if (colors.putIfAbsent(normalized, new SocksColor(color, normalized)) != null) {
+                variants.add(color);
+            }
+        });
+        if (colors.isEmpty()) {
+            return;
+        }
+        repository.seed(colors.values());
+        repository.forEach(this::install);
+        if (!variants.isEmpty()) {
+            log.warn("В остатках есть варианты написания уже известных цветов ({}), их позиции нужно объединить: {}",
+                    variants.size(), variants.subList(0, Math.min(variants.size(), 20)));
+        }
+    }
+
+    //Без пробелов по краям и с одиночными пробелами внутри; null - цвет пустой
+    private static String clean(String color) {
+        if (color == null) {
+            return null;
+        }
+        String stripped = color.strip();
+        if (stripped.isEmpty()) {
+            return null;
+        }
+        boolean clean = true;
+        for (int i = 1; i < stripped.length() && clean; i++) {
+            char c = stripped.charAt(i);
+            clean = !Character.isWhitespace(c) || c == ' ' && !Character.isWhitespace(stripped.charAt(i - 1));
+        }
+        if (clean) {
+            return stripped; //Обычный случай: строка не копируется
+        }
+        StringBuilder cleaned = new StringBuilder(stripped.length());
+        boolean space = false;
+        for (int i = 0; i < stripped.length(); i++) {
+            char c = stripped.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space) {
+                cleaned.append(' ');
+                space = false;
+            }
+            cleaned.append(c);
+        }
+        return cleaned.toString();
+    }
+}
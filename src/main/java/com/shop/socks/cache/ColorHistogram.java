@@ -0,0 +1,120 @@
+package com.shop.socks.cache;
+
+import com.shop.socks.model.Socks;
+import com.shop.socks.repository.StockRowCallback;
+
+import java.util.Arrays;
+import java.util.List;
+
+//Неизменяемый снимок остатков одного цвета: по ячейке на каждое значение хлопка 0..100
+//и префиксные суммы, поэтому сумма по диапазону хлопка считается за O(1), а список - за O(число ячеек).
+//Изменение артикула создает новый снимок, читатели работают без блокировок
+final class ColorHistogram {
+
+    static final int MIN_COTTON = 0;
+    static final int MAX_COTTON = 100;
+    private static final int BUCKETS = MAX_COTTON - MIN_COTTON + 1;
+    private static final long NO_ROW = 0L; //Идентификаторы позиций выдаются последовательностью с 1
+
+    private final long[] ids;
+    private final int[] quantities;
+    private final long[] prefixSums; //prefixSums[i] - сумма ячеек 0..i-1
+    private final boolean indexable;
+    private final long loadedAt;
+
+    private ColorHistogram(long[] ids, int[] quantities, boolean indexable, long loadedAt) {
+        this.ids = ids;
+        this.quantities = quantities;
+        this.indexable = indexable;
+        this.loadedAt = loadedAt;
+        this.prefixSums = new long[BUCKETS + 1];
+        for (int i = 0; i < BUCKETS; i++) {
+            prefixSums[i + 1] = prefixSums[i] + quantities[i];
+        }
+    }
+
+    //Цвет с позицией вне диапазона хлопка (например, после PUT) индексом не обслуживается
+    static ColorHistogram of(List<Socks> rows, long loadedAt) {
+        Builder builder = new Builder();
+        for (Socks socks : rows) {
+            builder.add(socks.getId(), socks.getCotton(), socks.getQuantity());
+        }
+        return builder.build(loadedAt);
+    }
+
+    //Время загрузки из БД сохраняется: инкрементные изменения не отменяют перечитывание по TTL
+    ColorHistogram with(int cotton, CachedStock stock) {
+        if (!indexable) {
+            return this;
+        }
+        if (!inRange(cotton)) {
+            return stock.isPresent() ? new ColorHistogram(ids, quantities, false, loadedAt) : this;
+        }
+        long[] newIds = Arrays.copyOf(ids, BUCKETS);
+        int[] newQuantities = Arrays.copyOf(quantities, BUCKETS);
+        newIds[cotton] = stock.isPresent() ? stock.id() : NO_ROW;
+        newQuantities[cotton] = stock.isPresent() ? stock.quantity() : 0;
+        return new ColorHistogram(newIds, newQuantities, true, loadedAt);
+    }
+
+    boolean isIndexable() {
+        return indexable;
+    }
+
+    long loadedAt() {
+        return loadedAt;
+    }
+
+    long sum(int fromCotton, int toCotton) {
+        if (fromCotton > toCotton) {
+            return 0;
+        }
+        return prefixSums[toCotton + 1] - prefixSums[fromCotton];
+    }
+
+    //Позиции по возрастанию хлопка
+    void forEach(String color, int fromCotton, int toCotton, StockRowCallback callback) {
+        for (int cotton = fromCotton; cotton <= toCotton; cotton++) {
+            if (ids[cotton] != NO_ROW) {
+                callback.row(ids[cotton], color, cotton, quantities[cotton]);
+            }
+        }
+    }
+
+    private static boolean inRange(int cotton) {
+        return cotton >= MIN_COTTON && cotton <= MAX_COTTON;
+    }
+
+    //Сборка снимка из строк одного цвета без промежуточных объектов
+    static final class Builder {
+
+        private long[] ids = new long[BUCKETS];
+        private int[] quantities = new int[BUCKETS];
+        private boolean indexable = true;
+        private int rows;
+
+        void add(long id, int cotton, int quantity) {
+            rows++;
+            if (!inRange(cotton)) {
+                indexable = false;
+            } else {
+                ids[cotton] = id;
+                quantities[cotton] = quantity;
+            }
+        }
+
+        int rows() {
+            return rows;
+        }
+
+        //После build сборщик начинает новый цвет
+        ColorHistogram build(long loadedAt) {
+            ColorHistogram histogram = new ColorHistogram(ids, quantities, indexable, loadedAt);
+            ids = new long[BUCKETS];
+            quantities = new int[BUCKETS];
+            indexable = true;
+            rows = 0;
+            return histogram;
+        }
+    }
+}
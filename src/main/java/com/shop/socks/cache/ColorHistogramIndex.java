@@ -0,0 +1,207 @@
+package com.shop.socks.cache;
+
+import com.shop.socks.model.SocksKey;
+import com.shop.socks.repository.SocksRepository;
+import com.shop.socks.repository.StockRowCallback;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Индекс остатков по цвету для запросов "цвет + диапазон хлопка" без обращения к БД.
+//Строится из таблицы при старте, неизвестный цвет загружается при первом запросе.
+//Изменения приходят от StockCache: записанный остаток артикула сразу попадает в снимок цвета,
+//а артикулы, измененные в обход кэша (пакеты движений, загрузки партий), сбрасывают снимок
+//своего цвета до перечитывания из БД. Как и кэш, снимок перечитывается по истечении TTL,
+//что ограничивает расхождение с изменениями других экземпляров приложения
+@Component
+@ConditionalOnProperty(name = "socks.index.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class ColorHistogramIndex implements StockListener {
+
+    private final SocksRepository socksRepository;
+    private final long ttlNanos;
+    private final int maxColors;
+
+    private final ConcurrentHashMap<String, ColorEntry> colors = new ConcurrentHashMap<>();
+    //Порядковый номер загрузок и изменений: загрузка, начатая раньше изменения, не перезапишет его
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Value("${socks.index.warm-up:true}")
+    private boolean warmUp = true;
+
+    @Autowired
+    public ColorHistogramIndex(SocksRepository socksRepository,
+                               StockCache stockCache,
+                               @Value("${socks.index.ttl-seconds:60}") long ttlSeconds,
+                               @Value("${socks.index.max-colors:100000}") int maxColors) {
+        this.socksRepository = socksRepository;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.maxColors = maxColors;
+        stockCache.addListener(this);
+    }
+
+    //Пустой результат - цвет индексом не обслуживается, запрос нужно выполнить в БД
+    public OptionalLong sumQuantity(String color, Integer minCotton, Integer maxCotton) {
+        ColorHistogram histogram = histogram(color);
+        if (histogram == null || !histogram.isIndexable()) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(histogram.sum(lower(minCotton), upper(maxCotton)));
+    }
+
+    //Позиции цвета в диапазоне хлопка по возрастанию хлопка; false - цвет индексом не обслуживается
+    public boolean scanCottonRange(String color, Integer minCotton, Integer maxCotton, StockRowCallback callback) {
+        ColorHistogram histogram = histogram(color);
+        if (histogram == null || !histogram.isIndexable()) {
+            return false;
+        }
+        histogram.forEach(color, lower(minCotton), upper(maxCotton), callback);
+        return true;
+    }
+
+    @Override
+    public void stockChanged(SocksKey key, CachedStock stock) {
+        ColorEntry entry = colors.get(key.color());
+        if (entry != null) { //Цвет еще не загружен: загрузка прочитает уже записанное значение
+            entry.apply(key.cotton(), stock, sequence.incrementAndGet());
+        }
+    }
+
+    @Override
+    public void stockInvalidated(Collection<SocksKey> keys) {
+        Set<String> invalidated = new HashSet<>();
+        for (SocksKey key : keys) {
+            if (invalidated.add(key.color())) {
+                ColorEntry entry = colors.get(key.color());
+                if (entry != null) {
+                    entry.invalidate(sequence.incrementAndGet());
+                }
+            }
+        }
+    }
+
+    //Построение индекса одним потоковым проходом по таблице. Цвета, измененные или загруженные
+    //во время прохода, не перезаписываются
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!warmUp) {
+            return;
+        }
+        long stamp = sequence.incrementAndGet();
+        long loadedAt = System.nanoTime();
+        long started = System.currentTimeMillis();
+        ColorHistogram.Builder builder = new ColorHistogram.Builder();
+        String[] current = new String[1];
+        int[] indexed = new int[2]; //Цвета, позиции
+        socksRepository.scanFiltered(null, null, null, "color", (id, color, cotton, quantity) -> {
+            if (current[0] != null && !current[0].equals(color)) {
+                install(current[0], builder, stamp, loadedAt, indexed);
+            }
+            current[0] = color;
+            builder.add(id, cotton, quantity);
+        });
+        if (current[0] != null) {
+            install(current[0], builder, stamp, loadedAt, indexed);
+        }
+        log.info("Индекс остатков по цветам построен: {} цветов, {} позиций за {} мс",
+                indexed[0], indexed[1], System.currentTimeMillis() - started);
+    }
+
+    private void install(String color, ColorHistogram.Builder builder, long stamp, long loadedAt, int[] indexed) {
+        int rows = builder.rows();
+        ColorHistogram histogram = builder.build(loadedAt);
+        ColorEntry entry = entry(color);
+        if (entry != null) {
+            entry.install(histogram, stamp);
+            indexed[0]++;
+            indexed[1] += rows;
+        }
+    }
+
+    private ColorHistogram histogram(String color) {
+        ColorEntry entry = entry(color);
+        if (entry == null) {
+            return null;
+        }
+        ColorHistogram histogram = entry.histogram;
+        if (histogram != null && System.nanoTime() - histogram.loadedAt() <= ttlNanos) {
+            return histogram;
+        }
+        long stamp = sequence.incrementAndGet();
+        long loadedAt = System.nanoTime();
+        ColorHistogram loaded = ColorHistogram.of(socksRepository.findByColor(color), loadedAt);
+        entry.install(loaded, stamp);
+        return loaded;
+    }
+
+    //Число цветов ограничено, чтобы запросы по произвольным цветам не раздували индекс
+    private ColorEntry entry(String color) {
+        ColorEntry entry = colors.get(color);
+        if (entry == null && colors.size() < maxColors) {
+            entry = colors.computeIfAbsent(color, c -> new ColorEntry());
+        }
+        return entry;
+    }
+
+    private static int lower(Integer minCotton) {
+        return minCotton == null ? ColorHistogram.MIN_COTTON : Math.max(minCotton, ColorHistogram.MIN_COTTON);
+    }
+
+    private static int upper(Integer maxCotton) {
+        return maxCotton == null ? ColorHistogram.MAX_COTTON : Math.min(maxCotton, ColorHistogram.MAX_COTTON);
+    }
+
+    private static final class ColorEntry {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile ColorHistogram histogram;
+        private long stamp; //Номер последней загрузки или изменения, под lock
+
+        void install(ColorHistogram loaded, long loadStamp) {
+            lock.lock();
+            try {
+                if (loadStamp > stamp) {
+                    histogram = loaded;
+                    stamp = loadStamp;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void apply(int cotton, CachedStock stock, long changeStamp) {
+            lock.lock();
+            try {
+                stamp = changeStamp;
+                if (histogram != null) {
+                    histogram = histogram.with(cotton, stock);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void invalidate(long changeStamp) {
+            lock.lock();
+            try {
+                stamp = changeStamp;
+                histogram = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.shop.socks.cache;
+
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.dto.SocksDto;
+import com.shop.socks.model.IdempotencyRecord;
+import com.shop.socks.repository.IdempotencyRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+//Ответы прихода и отпуска по ключу Idempotency-Key: повтор запроса (например, после таймаута у клиента)
+//получает сохраненный ответ, а остатки не меняются второй раз. Последние socks.idempotency.max-entries
+//ответов хранятся в памяти (LRU), все ключи - в таблице socks_idempotency не меньше
+//socks.idempotency.retention-hours. Ключ, которого нет в памяти, до выполнения операции занимается в таблице
+//одним INSERT, поэтому повтор на другом экземпляре или после перезапуска операцию не повторяет; чтение
+//занятого ключа нужно, только если INSERT не прошел. Ответы дописываются в таблицу пачками из фонового
+//потока раз в socks.idempotency.flush-interval-ms. Занятый ключ без ответа действует
+//socks.idempotency.lease-ms: если экземпляр остановился между операцией и записью ответа, повтор
+//получает IN_PROGRESS только в пределах аренды, после нее ключ занимается заново и операция выполняется
+@Component
+@Slf4j
+public class IdempotencyStore implements DisposableBean {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final long PRUNE_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final IdempotencyRepository repository;
+    private final int maxEntries;
+    private final long retentionSeconds;
+    private final long leaseMs;
+    private final long waitMs;
+    private final ScheduledExecutorService writer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, IdempotencyRecord> recent = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<IdempotencyRecord>> inFlight = new HashMap<>(); //Под lock
+    //Ответы, еще не записанные в БД; ищутся до обращения к ней
+    private final ConcurrentHashMap<String, IdempotencyRecord> unsaved = new ConcurrentHashMap<>();
+    private volatile long prunedNanos;
+
+    @Autowired
+    public IdempotencyStore(IdempotencyRepository repository,
+                            @Value("${socks.idempotency.max-entries:100000}") int maxEntries,
+                            @Value("${socks.idempotency.retention-hours:24}") long retentionHours,
+                            @Value("${socks.idempotency.lease-ms:30000}") long leaseMs,
+                            @Value("${socks.idempotency.flush-interval-ms:10}") long flushIntervalMs,
+                            @Value("${socks.idempotency.wait-ms:5000}") long waitMs) {
+        this.repository = repository;
+        this.maxEntries = maxEntries;
+        this.retentionSeconds = TimeUnit.HOURS.toSeconds(retentionHours);
+        this.leaseMs = leaseMs;
+        this.waitMs = waitMs;
+        this.prunedNanos = System.nanoTime();
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "socks-idempotency-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (flushIntervalMs > 0) {
+            writer.scheduleWithFixedDelay(this::scheduledFlush, flushIntervalMs, flushIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static boolean isValidKey(String key) {
+        return key != null && !key.isBlank() && key.length() <= MAX_KEY_LENGTH;
+    }
+
+    //Выполняет операцию один раз на ключ. Без ключа операция выполняется как обычно.
+    //Отказ (null) не запоминается: ключ освобождается, повтор с тем же ключом выполнится заново.
+    //Одновременный запрос с тем же ключом на этом экземпляре ждет первый до socks.idempotency.wait-ms,
+    //ключ, занятый в БД без ответа (запрос на другом экземпляре или прерванный остановкой), в пределах
+    //аренды - IN_PROGRESS
+    public Result execute(String key, String operation, SocksDto request, Supplier<LotOfSocksDto> action) {
+        if (key == null) {
+            return new Result(action.get(), Status.EXECUTED);
+        }
+        while (true) {
+            CompletableFuture<IdempotencyRecord> running;
+            CompletableFuture<IdempotencyRecord> own = null;
+            lock.lock();
+            try {
+                IdempotencyRecord stored = recent.get(key);
+                if (stored != null) {
+                    return replay(stored, operation, request);
+                }
+                running = inFlight.get(key);
+                if (running == null) {
+                    own = new CompletableFuture<>();
+                    inFlight.put(key, own);
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (running != null) {
+                if (!await(running)) {
+                    return new Result(null, Status.IN_PROGRESS);
+                }
+                continue; //Ответ первого запроса уже в памяти, а если он не выполнился - пробуем сами
+            }
+            IdempotencyRecord record = null;
+            boolean reserved = false;
+            try {
+                IdempotencyRecord stored = unsaved.get(key);
+                if (stored == null) {
+                    reserved = repository.reserve(new IdempotencyRecord(key, operation, request.getColor(),
+                            request.getCotton(), request.getQuantity()), leaseMs);
+                    if (!reserved) {
+                        stored = repository.find(key).orElse(null);
+                    }
+                }
+                if (!reserved) {
+                    if (stored == null || !stored.hasResponse()) {
+                        return new Result(null, Status.IN_PROGRESS);
+                    }
+                    record = stored;
+                    remember(stored);
+                    return replay(stored, operation, request);
+                }
+                LotOfSocksDto response = action.get();
+                if (response != null) {
+                    record = new IdempotencyRecord(key, operation, request.getColor(), request.getCotton(),
+                            request.getQuantity(), response.getColor(), response.getCotton(), response.getQuantity());
+                    remember(record);
+                    unsaved.put(key, record);
+                }
+                return new Result(response, Status.EXECUTED);
+            } finally {
+                if (reserved && record == null) {
+                    release(key);
+                }
+                lock.lock();
+                try {
+                    inFlight.remove(key);
+                } finally {
+                    lock.unlock();
+                }
+                own.complete(record);
+            }
+        }
+    }
+
+    //Запись накопленных ответов в БД и удаление устаревших; возвращает число записанных ответов
+    public int flush() {
+        List<IdempotencyRecord> batch = new ArrayList<>(unsaved.values());
+        if (!batch.isEmpty()) {
+            repository.saveAll(batch);
+            batch.forEach(record -> unsaved.remove(record.getIdempotencyKey(), record));
+        }
+        long now = System.nanoTime();
+        if (now - prunedNanos > PRUNE_INTERVAL_NANOS) {
+            prunedNanos = now;
+            int deleted = repository.deleteExpired(retentionSeconds);
+            if (deleted > 0) {
+                log.debug("Удалено устаревших ключей идемпотентности: {}", deleted);
+            }
+        }
+        return batch.size();
+    }
+
+    @Override
+    public void destroy() {
+        writer.shutdownNow();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Ключи идемпотентности не записаны при остановке: {}", e.getMessage());
+        }
+    }
+
+    private Result replay(IdempotencyRecord stored, String operation, SocksDto request) {
+        if (!stored.getOperation().equals(operation) || !Objects.equals(stored.getColor(), request.getColor())
+                || stored.getCotton() != request.getCotton() || stored.getQuantity() != request.getQuantity()) {
+            return new Result(null, Status.CONFLICT);
+        }
+        log.debug("Повтор запроса с ключом идемпотентности {}", stored.getIdempotencyKey());
+        return new Result(new LotOfSocksDto(stored.getResponseColor(), stored.getResponseCotton(),
+                stored.getResponseQuantity()), Status.REPLAYED);
+    }
+
+    //Операция отклонена или завершилась ошибкой. Если освободить ключ не удалось, повторы получают
+    //IN_PROGRESS до истечения аренды, после нее ключ занимается заново
+    private void release(String key) {
+        try {
+            repository.release(key);
+        } catch (RuntimeException e) {
+            log.error("Ключ идемпотентности {} не освобожден: {}", key, e.getMessage());
+        }
+    }
+
+    private void remember(IdempotencyRecord record) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            recent.put(record.getIdempotencyKey(), record);
+            if (recent.size() > maxEntries) {
+                recent.remove(recent.keySet().iterator().next());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean await(CompletableFuture<IdempotencyRecord> running) {
+        try {
+            running.get(waitMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return true; //Не завершается с ошибкой: record остается null
+        }
+    }
+
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Ошибка записи ключей идемпотентности в БД: {}", e.getMessage());
+        }
+    }
+
+    public enum Status {
+        EXECUTED, //Операция выполнена (или отклонена - ответ null)
+        REPLAYED, //Возвращен сохраненный ответ
+        CONFLICT, //Ключ уже использован для другого запроса
+        IN_PROGRESS //Запрос с тем же ключом еще выполняется
+    }
+
+    public record Result(LotOfSocksDto response, Status status) {
+    }
+}
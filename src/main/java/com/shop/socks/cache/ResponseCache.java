@@ -0,0 +1,177 @@
+package com.shop.socks.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+//Кэш сериализованных ответов на выборки остатков по параметрам фильтра (LRU).
+//Запись действительна, пока не изменилась версия цвета из StockVersions (для выборок без цвета -
+//версия всего склада; цвет приводится к каноническому написанию словаря) и не истек TTL, который,
+//как и у StockCache, ограничивает расхождение с изменениями других экземпляров. ETag - SHA-256
+//содержимого ответа, поэтому совпадает у экземпляров с одинаковыми данными, не меняется
+//при перечитывании без изменений и не совпадает у разных ответов (версии StockVersions для этого не годятся:
+//они свои у каждого экземпляра и начинаются заново после перезапуска).
+//Ответы больше socks.response-cache.max-body-bytes хранятся без тела: по ним можно ответить 304,
+//но тело строится заново
+@Component
+@Slf4j
+public class ResponseCache {
+
+    private final StockVersions stockVersions;
+    private final ColorDictionary colorDictionary;
+    private final ObjectMapper objectMapper;
+    private final int maxEntries;
+    private final int maxBodyBytes;
+    private final long maxTotalBytes;
+    private final long ttlNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes; //Под lock
+
+    @Autowired
+    public ResponseCache(StockVersions stockVersions,
+                         ColorDictionary colorDictionary,
+                         ObjectMapper objectMapper,
+                         @Value("${socks.response-cache.max-entries:1000}") int maxEntries,
+                         @Value("${socks.response-cache.max-body-bytes:1048576}") int maxBodyBytes,
+                         @Value("${socks.response-cache.max-total-bytes:67108864}") long maxTotalBytes,
+                         @Value("${socks.response-cache.ttl-seconds:60}") long ttlSeconds) {
+        this.stockVersions = stockVersions;
+        this.colorDictionary = colorDictionary;
+        this.objectMapper = objectMapper;
+        this.maxEntries = maxEntries;
+        this.maxBodyBytes = maxBodyBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    public static String key(String operation, String color, Integer minCotton, Integer maxCotton, String sortBy) {
+        return operation + '|' + normalizeColor(color) + '|' + minCotton + '|' + maxCotton + '|' + sortBy;
+    }
+
+    //ETag действительной записи без обращения к БД; null - записи нет
+    public String etag(String color, String key) {
+        Entry entry = lookup(colorDictionary.lookup(color), key);
+        return entry == null ? null : entry.etag();
+    }
+
+    //Тело ответа из кэша или построенное заново. Версия читается до построения, поэтому изменение,
+    //сделанное во время построения, сделает запись недействительной
+    public CachedResponse get(String color, String key, Supplier<Object> loader) {
+        String normalizedColor = colorDictionary.lookup(color);
+        Entry entry = lookup(normalizedColor, key);
+        if (entry != null && entry.body() != null) {
+            return new CachedResponse(entry.etag(), entry.body());
+        }
+        long version = stockVersions.version(normalizedColor);
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(loader.get());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать ответ", e);
+        }
+        String etag = etag(body);
+        store(key, new Entry(version, System.nanoTime(), etag, body.length <= maxBodyBytes ? body : null));
+        return new CachedResponse(etag, body);
+    }
+
+    //Сравнение с заголовком If-None-Match: список значений через запятую, слабые ETag (W/) и "*"
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Entry lookup(String color, String key) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.version() != stockVersions.version(color) || System.nanoTime() - entry.storedAt() > ttlNanos) {
+                remove(key);
+                return null;
+            }
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void store(String key, Entry entry) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            remove(key);
+            entries.put(key, entry);
+            totalBytes += entry.size();
+            Iterator<Entry> eldest = entries.values().iterator();
+            while ((entries.size() > maxEntries || totalBytes > maxTotalBytes) && eldest.hasNext()) {
+                totalBytes -= eldest.next().size();
+                eldest.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            totalBytes -= removed.size();
+        }
+    }
+
+    //Криптографический хэш тела: совпадение ETag у разных ответов практически исключено, поэтому 304
+    //не вернет клиенту устаревший остаток. Кавычки входят в значение заголовка ETag
+    private static String etag(byte[] body) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e); //Обязателен для любой JVM
+        }
+        return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest(body)) + "\"";
+    }
+
+    private static String normalizeColor(String color) {
+        return color == null || color.isBlank() ? null : color.trim();
+    }
+
+    public record CachedResponse(String etag, byte[] body) {
+    }
+
+    private record Entry(long version, long storedAt, String etag, byte[] body) {
+
+        int size() {
+            return body == null ? 0 : body.length;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.shop.socks.cache;
+
+import com.shop.socks.model.Socks;
+import com.shop.socks.model.SocksKey;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+//Кэш остатков по (color, cotton) с вытеснением давно не используемых позиций (LRU).
+//Изменения остатка выполняются под блокировкой артикула и сразу записываются в кэш (write-through),
+//промах кэша загружается под той же блокировкой, поэтому устаревшее значение не может
+//перезаписать более новое. TTL ограничивает расхождение с изменениями, сделанными другими экземплярами
+@Component
+public class StockCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final StripedLocks stripedLocks;
+    private final ReentrantLock mapLock = new ReentrantLock();
+    private final LinkedHashMap<SocksKey, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final List<StockListener> listeners = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public StockCache(@Value("${socks.cache.max-size:10000}") int maxSize,
+                      @Value("${socks.cache.ttl-seconds:60}") long ttlSeconds) {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.stripedLocks = new StripedLocks(256);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SocksKey, Entry> eldest) {
+                if (size() > StockCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    //Чтение с загрузкой из БД при промахе
+    public CachedStock get(SocksKey key, Function<SocksKey, CachedStock> loader) {
+        CachedStock cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        ReentrantLock lock = stripedLocks.get(key);
+        lock.lock();
+        try {
+            cached = lookup(key); //Пока ждали блокировку, значение мог загрузить другой поток
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+            misses.incrementAndGet();
+            CachedStock loaded = loader.apply(key);
+            store(key, loaded);
+            for (StockListener listener : listeners) {
+                listener.stockLoaded(key, loaded);
+            }
+            return loaded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Изменение остатка с записью результата в кэш. Пустой результат (изменение отклонено)
+    //кэш не трогает: остаток в БД в этом случае не менялся
+    public Optional<Socks> writeThrough(SocksKey key, Supplier<Optional<Socks>> writer) {
+        ReentrantLock lock = stripedLocks.get(key);
+        lock.lock();
+        try {
+            Optional<Socks> result = writer.get();
+            result.ifPresent(socks -> put(key, CachedStock.of(socks)));
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Выполнение действия под блокировками нескольких артикулов (например, смена артикула позиции).
+    //Блокировки берутся в порядке номеров полос, чтобы не возникло взаимоблокировок
+    public <T> T locked(SocksKey first, SocksKey second, Supplier<T> action) {
+        int firstIndex = stripedLocks.index(first);
+        int secondIndex = stripedLocks.index(second);
+        if (firstIndex == secondIndex) {
+            return locked(stripedLocks.get(firstIndex), action);
+        }
+        ReentrantLock outer = stripedLocks.get(Math.min(firstIndex, secondIndex));
+        ReentrantLock inner = stripedLocks.get(Math.max(firstIndex, secondIndex));
+        return locked(outer, () -> locked(inner, action));
+    }
+
+    //Блокировки нескольких артикулов, которые держатся дольше одного вызова (до конца транзакции).
+    //Берутся в порядке номеров полос, как в locked; возвращается действие, снимающее их
+    public Runnable lockAll(Collection<SocksKey> keys) {
+        int[] indexes = keys.stream().mapToInt(stripedLocks::index).distinct().sorted().toArray();
+        for (int index : indexes) {
+            stripedLocks.get(index).lock();
+        }
+        return () -> {
+            for (int i = indexes.length - 1; i >= 0; i--) {
+                stripedLocks.get(indexes[i]).unlock();
+            }
+        };
+    }
+
+    //Запись остатка после его изменения
+    public void put(SocksKey key, CachedStock stock) {
+        store(key, stock);
+        for (StockListener listener : listeners) {
+            listener.stockChanged(key, stock);
+        }
+    }
+
+    //Сброс артикулов после изменения остатков в обход writeThrough (пакетная загрузка)
+    public void invalidate(Collection<SocksKey> keys) {
+        for (SocksKey key : keys) {
+            ReentrantLock lock = stripedLocks.get(key);
+            lock.lock();
+            try {
+                remove(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+        for (StockListener listener : listeners) {
+            listener.stockInvalidated(keys);
+        }
+    }
+
+    //Подписка на изменения и загрузки остатков: put и загрузка выполняются под блокировкой артикула,
+    //поэтому слушатель получает значения одного артикула в порядке их записи
+    public void addListener(StockListener listener) {
+        listeners.add(listener);
+    }
+
+    public CacheStats stats() {
+        mapLock.lock();
+        try {
+            return new CacheStats(hits.get(), misses.get(), evictions.get(), entries.size());
+        } finally {
+            mapLock.unlock();
+        }
+    }
+
+    private CachedStock lookup(SocksKey key) {
+        mapLock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.loadedAt > ttlNanos) {
+                entries.remove(key);
+                evictions.incrementAndGet();
+                return null;
+            }
+            return entry.stock;
+        } finally {
+            mapLock.unlock();
+        }
+    }
+
+    private void store(SocksKey key, CachedStock stock) {
+        mapLock.lock();
+        try {
+            entries.put(key, new Entry(stock, System.nanoTime()));
+        } finally {
+            mapLock.unlock();
+        }
+    }
+
+    private void remove(SocksKey key) {
+        mapLock.lock();
+        try {
+            entries.remove(key);
+        } finally {
+            mapLock.unlock();
+        }
+    }
+
+    private static <T> T locked(ReentrantLock lock, Supplier<T> action) {
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record Entry(CachedStock stock, long loadedAt) {
+    }
+}
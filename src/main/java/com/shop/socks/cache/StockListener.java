@@ -0,0 +1,20 @@
+package com.shop.socks.cache;
+
+import com.shop.socks.model.SocksKey;
+
+import java.util.Collection;
+
+//Получатель изменений остатков, прошедших через StockCache
+public interface StockListener {
+
+    //Актуальный остаток артикула после его изменения
+    void stockChanged(SocksKey key, CachedStock stock);
+
+    //Остаток артикула, загруженный из БД при промахе кэша; сам остаток при этом не менялся
+    default void stockLoaded(SocksKey key, CachedStock stock) {
+        stockChanged(key, stock);
+    }
+
+    //Остатки артикулов изменены в обход кэша и должны быть перечитаны из БД
+    void stockInvalidated(Collection<SocksKey> keys);
+}
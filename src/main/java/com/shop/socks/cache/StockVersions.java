@@ -0,0 +1,56 @@
+package com.shop.socks.cache;
+
+import com.shop.socks.model.SocksKey;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Версии остатков: номер увеличивается при каждом изменении, прошедшем через StockCache
+//(приход, отпуск, изменение позиции, пакеты движений и загрузки партий).
+//Версии цветов хранятся в фиксированном числе полос по хешу цвета: цвета одной полосы делят версию,
+//что дает лишние перечитывания, но не пропущенные изменения. Общая версия меняется при любом изменении
+@Component
+public class StockVersions implements StockListener {
+
+    private static final int STRIPES = 1024;
+
+    private final AtomicLongArray colors = new AtomicLongArray(STRIPES);
+    private final AtomicLong all = new AtomicLong();
+
+    @Autowired
+    public StockVersions(StockCache stockCache) {
+        stockCache.addListener(this);
+    }
+
+    //null - версия всего склада (выборки без фильтра по цвету)
+    public long version(String color) {
+        return color == null ? all.get() : colors.get(stripe(color));
+    }
+
+    @Override
+    public void stockChanged(SocksKey key, CachedStock stock) {
+        colors.incrementAndGet(stripe(key.color()));
+        all.incrementAndGet();
+    }
+
+    //Загрузка при промахе кэша остаток не меняет, готовые ответы остаются действительными
+    @Override
+    public void stockLoaded(SocksKey key, CachedStock stock) {
+    }
+
+    @Override
+    public void stockInvalidated(Collection<SocksKey> keys) {
+        for (SocksKey key : keys) {
+            colors.incrementAndGet(stripe(key.color()));
+        }
+        all.incrementAndGet();
+    }
+
+    private static int stripe(String color) {
+        int hash = color.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,33 @@
+package com.shop.socks.cache;
+
+import com.shop.socks.model.SocksKey;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+//Фиксированный набор блокировок, распределенных по артикулам: операции над одним (color, cotton)
+//выполняются по очереди, разные артикулы почти никогда не ждут друг друга
+public class StripedLocks {
+
+    private final ReentrantLock[] locks;
+
+    public StripedLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1; //Ближайшая степень двойки
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public int index(SocksKey key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (locks.length - 1);
+    }
+
+    public ReentrantLock get(SocksKey key) {
+        return locks[index(key)];
+    }
+
+    public ReentrantLock get(int index) {
+        return locks[index];
+    }
+}
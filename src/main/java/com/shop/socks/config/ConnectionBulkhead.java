@@ -0,0 +1,97 @@
+package com.shop.socks.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//Ограничитель выдачи соединений перед пулом. Виртуальных потоков может быть тысячи, а соединений -
+//десятки: без ограничителя все лишние потоки ждут внутри пула до его connectionTimeout и получают ошибки
+//пачками. Здесь ожидание идет на честном семафоре (виртуальный поток паркуется, не занимая поток-носитель),
+//в пул попадает не больше потоков, чем в нем соединений, а при долгом ожидании запрос быстро отклоняется
+public class ConnectionBulkhead extends DelegatingDataSource {
+
+    private final Semaphore permits;
+    private final long waitMillis;
+
+    public ConnectionBulkhead(DataSource targetDataSource, int permits, long waitMillis) {
+        super(targetDataSource);
+        this.permits = new Semaphore(permits, true);
+        this.waitMillis = waitMillis;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        try {
+            return releasingOnClose(super.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        try {
+            return releasingOnClose(super.getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    public int getQueueLength() {
+        return permits.getQueueLength();
+    }
+
+    private void acquire() throws SQLException {
+        try {
+            if (!permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException(
+                        "Нет свободного соединения с БД за " + waitMillis + " мс");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Ожидание соединения с БД прервано", e);
+        }
+    }
+
+    //Разрешение возвращается при закрытии соединения (возврате его в пул), повторный close() ничего не освобождает
+    private Connection releasingOnClose(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        InvocationHandler handler = (proxy, method, args) -> {
+            if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                } finally {
+                    if (released.compareAndSet(false, true)) {
+                        permits.release();
+                    }
+                }
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, handler);
+    }
+}
@@ -0,0 +1,52 @@
+package com.shop.socks.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+
+//Режим виртуальных потоков (socks.threads.virtual=true, Java 21+): Tomcat обрабатывает каждый запрос
+//в отдельном виртуальном потоке, контроллер, сервис и JPA выполняются в нем же.
+//Пул соединений при этом остается небольшим и фиксированным (spring.datasource.hikari.maximum-pool-size),
+//а очередь за соединениями выносится в ConnectionBulkhead с тем же числом разрешений.
+//Блокировки в коде сервиса построены на ReentrantLock/Semaphore, а не на synchronized,
+//поэтому ожидание не закрепляет виртуальный поток за потоком-носителем (pinning).
+//Фоновые загрузки партий остаются на своем ограниченном пуле платформенных потоков
+@Configuration
+@ConditionalOnProperty(name = "socks.threads.virtual", havingValue = "true")
+@Slf4j
+public class VirtualThreadConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        log.info("Запросы обрабатываются в виртуальных потоках");
+        return protocolHandler -> protocolHandler.setExecutor(VirtualThreads.newPerTaskExecutor());
+    }
+
+    //Оборачивает источник данных ограничителем; число разрешений по умолчанию равно размеру пула Hikari
+    @Bean
+    public static BeanPostProcessor connectionBulkheadPostProcessor(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource dataSource) || bean instanceof ConnectionBulkhead) {
+                    return bean;
+                }
+                int permits = environment.getProperty("socks.threads.db-permits", Integer.class, 0);
+                if (permits <= 0) {
+                    permits = dataSource instanceof HikariDataSource hikari ? hikari.getMaximumPoolSize() : 10;
+                }
+                long waitMillis = environment.getProperty("socks.threads.db-wait-ms", Long.class, 2000L);
+                log.info("Ограничитель соединений для {}: {} разрешений, ожидание до {} мс",
+                        beanName, permits, waitMillis);
+                return new ConnectionBulkhead(dataSource, permits, waitMillis);
+            }
+        };
+    }
+}
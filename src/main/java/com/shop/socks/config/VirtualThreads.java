@@ -0,0 +1,41 @@
+package com.shop.socks.config;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Виртуальные потоки появились в Java 21, а проект собирается и на Java 17,
+//поэтому исполнитель создается через рефлексию и доступен только на новой JVM
+public final class VirtualThreads {
+
+    private static final Method NEW_PER_TASK_EXECUTOR = findFactory();
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return NEW_PER_TASK_EXECUTOR != null;
+    }
+
+    //Исполнитель, запускающий каждую задачу в новом виртуальном потоке
+    public static ExecutorService newPerTaskExecutor() {
+        if (!isSupported()) {
+            throw new IllegalStateException("Виртуальные потоки требуют Java 21 или новее, текущая версия: "
+                    + Runtime.version());
+        }
+        try {
+            return (ExecutorService) NEW_PER_TASK_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Не удалось создать исполнитель виртуальных потоков", e);
+        }
+    }
+
+    private static Method findFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.shop.socks.controller;
+
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.dto.SocksDto;
+import com.shop.socks.service.ReactiveSocksService;
+import io.swagger.v3.oas.annotations.Operation;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+//Неблокирующие версии прихода, отпуска и выборок; ответы и коды те же, что у SocksController
+@RequiredArgsConstructor
+@RestController
+@RequestMapping("/api/reactive/socks")
+@ConditionalOnProperty(name = "socks.reactive.enabled", havingValue = "true")
+public class ReactiveSocksController {
+
+    private final ReactiveSocksService reactiveSocksService;
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveSocksController.class);
+
+    @Operation(summary = "Регистрация прихода носков (неблокирующая)")
+    @PostMapping(path = "/income")
+    public Mono<ResponseEntity<LotOfSocksDto>> arrivalOfSocks(@RequestBody SocksDto socksDto) {
+        logger.debug("Регистрация прихода носков: {}", socksDto);
+        if (socksDto.getCotton() < 0 || socksDto.getCotton() > 100) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return reactiveSocksService.addSocks(socksDto)
+                .map(updated -> new ResponseEntity<>(updated, HttpStatus.CREATED));
+    }
+
+    @Operation(summary = "Регистрация отпуска носков (неблокирующая)")
+    @PostMapping(path = "/outcome")
+    public Mono<ResponseEntity<LotOfSocksDto>> departureOfSocks(@RequestBody SocksDto socksDto) {
+        logger.debug("Регистрация отпуска носков: {}", socksDto);
+        return reactiveSocksService.removeSocks(socksDto)
+                .map(ResponseEntity::ok)
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    logger.warn("Не удалось зарегистрировать отпуск носков: {}", socksDto);
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                }));
+    }
+
+    @Operation(summary = "Получение носков с фильтрацией (неблокирующее)")
+    @GetMapping
+    public Flux<SocksDto> allFilteredSocks(
+            @RequestParam String color,
+            @RequestParam(required = false) Integer minCotton,
+            @RequestParam(required = false) Integer maxCotton,
+            @RequestParam(required = false) String sortBy
+    ) {
+        logger.debug("Получение носков с фильтрацией: color={}, minCotton={}, maxCotton={}, sortBy={}",
+                color, minCotton, maxCotton, sortBy);
+        return reactiveSocksService.getFilteredSocks(color, minCotton, maxCotton, sortBy);
+    }
+
+    @Operation(summary = "Получение суммарного количества носков с фильтрацией (неблокирующее)")
+    @GetMapping(path = "/total")
+    public Mono<Long> totalQuantityOfSocks(
+            @RequestParam String color,
+            @RequestParam(required = false) Integer minCotton,
+            @RequestParam(required = false) Integer maxCotton
+    ) {
+        logger.debug("Получение общего количества носков: color={}, minCotton={}, maxCotton={}",
+                color, minCotton, maxCotton);
+        return reactiveSocksService.getTotalQuantity(color, minCotton, maxCotton);
+    }
+}
@@ -1,18 +1,40 @@
 package com.shop.socks.controller;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.shop.socks.cache.IdempotencyStore;
+import com.shop.socks.cache.ResponseCache;
+import com.shop.socks.dto.BatchJobDto;
+import com.shop.socks.dto.BulkMovementResultDto;
+import com.shop.socks.dto.BulkMovementsDto;
 import com.shop.socks.dto.LotOfSocksDto;
 import com.shop.socks.dto.SocksDto;
+import com.shop.socks.dto.SocksPageDto;
+import com.shop.socks.service.impl.BatchJobServiceImpl;
 import com.shop.socks.service.impl.SocksServiceImpl;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 @RequiredArgsConstructor
 @RestController
@@ -20,61 +42,119 @@ import java.util.List;
 public class SocksController {
 
     private final SocksServiceImpl socksServiceImpl;
+    private final BatchJobServiceImpl batchJobServiceImpl;
+    private final ResponseCache responseCache;
+    private final IdempotencyStore idempotencyStore;
     private static final Logger logger = LoggerFactory.getLogger(SocksController.class);
+    //Поток ответа закрывает контейнер сервлетов
+    private static final JsonFactory JSON = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
 
     @Operation(summary = "Регистрация прихода носков")
     @PostMapping(path = "/income")
-    public ResponseEntity<LotOfSocksDto> arrivalOfSocks(@RequestBody SocksDto socksDto) {
-        logger.info("Регистрация прихода носков: {}", socksDto);
+    public ResponseEntity<LotOfSocksDto> arrivalOfSocks(
+            @RequestBody SocksDto socksDto,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
         // Проверка диапазона для cotton
         if (socksDto.getCotton() < 0 || socksDto.getCotton() > 100) {
             return ResponseEntity.badRequest().body(null); // Возвращаем ошибку, если cotton вне диапазона
         }
-        LotOfSocksDto updateSocks = socksServiceImpl.addSocks(socksDto); //Обработка прихода носков
-        logger.info("Приход носков зарегистрирован: {}", updateSocks);
-        return new ResponseEntity<>(updateSocks, HttpStatus.CREATED); //Возвращаем обновленный список носков
+        //Обработка прихода носков; возвращаем обновленную позицию
+        return idempotent(idempotencyKey, "income", socksDto, HttpStatus.CREATED,
+                () -> socksServiceImpl.addSocks(socksDto));
     }
 
     @Operation(summary = "Регистрация отпуска носков")
     @PostMapping(path = "/outcome")
-    public ResponseEntity<LotOfSocksDto> departureOfSocks(@RequestBody SocksDto socksDto) {
-        logger.info("Регистрация отпуска носков: {}", socksDto);
-        LotOfSocksDto updateSocks = socksServiceImpl.removeSocks(socksDto);
-        if (updateSocks == null) {
-            logger.warn("Не удалось зарегистрировать отпуск носков: {}", socksDto);
+    public ResponseEntity<LotOfSocksDto> departureOfSocks(
+            @RequestBody SocksDto socksDto,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        return idempotent(idempotencyKey, "outcome", socksDto, HttpStatus.OK,
+                () -> socksServiceImpl.removeSocks(socksDto));
+    }
+
+    @Operation(summary = "Пакет движений: приходы и отпуски по многим артикулам одним запросом")
+    @PostMapping(path = "/movements")
+    public ResponseEntity<BulkMovementResultDto> bulkMovementsOfSocks(@RequestBody BulkMovementsDto bulkMovementsDto) {
+        BulkMovementResultDto result;
+        try {
+            result = socksServiceImpl.applyMovements(bulkMovementsDto);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Некорректный пакет движений: {}", e.getMessage());
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
-        logger.info("Отпуск носков зарегистрирован: {}", updateSocks);
-        return new ResponseEntity<>(updateSocks, HttpStatus.OK);
+        if (!result.isApplied()) {
+            logger.warn("Пакет движений не применен");
+            return new ResponseEntity<>(result, HttpStatus.BAD_REQUEST); //Как и при отказе в отпуске
+        }
+        return ResponseEntity.ok(result);
     }
 
     @Operation(summary = "Получение общего количества носков с фильтрацией")
+    @ApiResponse(responseCode = "200", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+            array = @ArraySchema(schema = @Schema(implementation = SocksDto.class))))
     @GetMapping
-    public ResponseEntity<List<SocksDto>> allFilteredSocks(
+    public ResponseEntity<byte[]> allFilteredSocks(
             @RequestParam String color,
             @RequestParam(required = false) Integer minCotton,
             @RequestParam(required = false) Integer maxCotton,
-            @RequestParam(required = false) String sortBy
+            @RequestParam(required = false) String sortBy,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
     ) {
-        logger.info("Получение носков с фильтрацией: color={}, minCotton={}, maxCotton={}, sortBy={}",
-                color, minCotton, maxCotton, sortBy);
-        if (minCotton != null) {
-            logger.debug("minCotton параметр передан: {}", minCotton);
-        } else {
-            logger.debug("minCotton параметр не передан.");
-        }
+        return cachedResponse(color, ResponseCache.key("filtered", color, minCotton, maxCotton, sortBy), ifNoneMatch,
+                () -> socksServiceImpl.getFilteredSocks(color, minCotton, maxCotton, sortBy));
+    }
 
-        if (maxCotton != null) {
-            logger.debug("maxCotton параметр передан: {}", maxCotton);
-        } else {
-            logger.debug("maxCotton параметр не передан.");
+    @Operation(summary = "Постраничное получение носков с фильтрацией")
+    @GetMapping(path = "/page")
+    public ResponseEntity<SocksPageDto> pageOfFilteredSocks(
+            @RequestParam String color,
+            @RequestParam(required = false) Integer minCotton,
+            @RequestParam(required = false) Integer maxCotton,
+            @RequestParam(required = false) String sortBy,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
+    ) {
+        try {
+            return ResponseEntity.ok(socksServiceImpl.getSocksPage(color, minCotton, maxCotton, sortBy, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Некорректный запрос страницы: {}", e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
+    }
 
-        logger.info("Вызов сервиса для получения отфильтрованных носков...");
-        List<SocksDto> filteredSocks = socksServiceImpl.getFilteredSocks(color, minCotton, maxCotton, sortBy);
+    //NDJSON: по объекту на строку, строки пишутся в ответ по мере чтения из БД
+    @Operation(summary = "Потоковое получение носков с фильтрацией (NDJSON)")
+    @GetMapping(path = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamOfFilteredSocks(
+            @RequestParam String color,
+            @RequestParam(required = false) Integer minCotton,
+            @RequestParam(required = false) Integer maxCotton,
+            @RequestParam(required = false) String sortBy
+    ) {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = JSON.createGenerator(outputStream)) {
+                generator.setRootValueSeparator(null);
+                socksServiceImpl.streamFilteredSocks(color, minCotton, maxCotton, sortBy,
+                        (id, rowColor, cotton, quantity) -> writeRow(generator, id, rowColor, cotton, quantity));
+            } catch (UncheckedIOException e) {
+                throw e.getCause(); //Клиент закрыл соединение: чтение из БД прерывается
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
 
-        logger.info("Носки получены: {}", filteredSocks);
-        return ResponseEntity.ok(filteredSocks);
+    @Operation(summary = "Получение суммарного количества носков с фильтрацией")
+    @ApiResponse(responseCode = "200", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+            schema = @Schema(implementation = Long.class)))
+    @GetMapping(path = "/total")
+    public ResponseEntity<byte[]> totalQuantityOfSocks(
+            @RequestParam String color,
+            @RequestParam(required = false) Integer minCotton,
+            @RequestParam(required = false) Integer maxCotton,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        return cachedResponse(color, ResponseCache.key("total", color, minCotton, maxCotton, null), ifNoneMatch,
+                () -> socksServiceImpl.getTotalQuantity(color, minCotton, maxCotton));
     }
 
     @Operation(summary = "Обновление данных носков")
@@ -86,16 +166,107 @@ public class SocksController {
         return ResponseEntity.ok(updatedSocks);
     }
 
-    @Operation(summary = "Загрузка партий носков из Excel файла")
+    @Operation(summary = "Загрузка партий носков из Excel или CSV файла")
     @PostMapping(path = "/batch")
-    public ResponseEntity<LotOfSocksDto> batchOfSocksFromExcel(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<?> batchOfSocksFromExcel(@RequestParam("file") MultipartFile file,
+                                                   @RequestParam(defaultValue = "false") boolean async) {
         if (file.isEmpty()) {
             logger.warn("Попытка загрузки пустого файла");
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
         logger.info("Загрузка партий носков из файла: {}", file.getOriginalFilename());
+        if (async) {
+            try {
+                BatchJobDto job = batchJobServiceImpl.submit(file);
+                logger.info("Загрузка партии поставлена в очередь: {}", job.getId());
+                return ResponseEntity.accepted()
+                        .location(URI.create("/api/socks/batch/" + job.getId()))
+                        .body(job);
+            } catch (RejectedExecutionException e) {
+                return new ResponseEntity<>(HttpStatus.TOO_MANY_REQUESTS); //Очередь загрузок заполнена
+            }
+        }
         LotOfSocksDto lotOfSocksDto = socksServiceImpl.processBatchOfSocks(file);
         logger.info("Партия носков загружена: {}", lotOfSocksDto);
         return ResponseEntity.ok(lotOfSocksDto);
     }
+
+    @Operation(summary = "Состояние фоновой загрузки партии")
+    @GetMapping(path = "/batch/{jobId}")
+    public ResponseEntity<BatchJobDto> batchJobStatus(@PathVariable String jobId) {
+        return batchJobServiceImpl.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    @Operation(summary = "Отчет об отклоненных строках фоновой загрузки партии (CSV)")
+    @GetMapping(path = "/batch/{jobId}/errors", produces = "text/csv")
+    public ResponseEntity<Resource> batchJobErrors(@PathVariable String jobId) {
+        return batchJobServiceImpl.getErrorReport(jobId)
+                .map(report -> ResponseEntity.ok()
+                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + jobId + "-errors.csv\"")
+                        .contentType(MediaType.parseMediaType("text/csv; charset=UTF-8"))
+                        .<Resource>body(new FileSystemResource(report)))
+                .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    //Повтор запроса с тем же Idempotency-Key получает сохраненный ответ без изменения остатков;
+    //ключ, использованный для другого запроса, отклоняется с 422
+    private ResponseEntity<LotOfSocksDto> idempotent(String idempotencyKey, String operation, SocksDto socksDto,
+                                                     HttpStatus status, Supplier<LotOfSocksDto> action) {
+        if (idempotencyKey != null && !IdempotencyStore.isValidKey(idempotencyKey)) {
+            logger.warn("Некорректный ключ идемпотентности");
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        IdempotencyStore.Result result = idempotencyStore.execute(idempotencyKey, operation, socksDto, action);
+        return switch (result.status()) {
+            case REPLAYED -> ResponseEntity.status(status).header(IdempotencyStore.REPLAYED_HEADER, "true")
+                    .body(result.response());
+            case CONFLICT -> {
+                logger.warn("Ключ идемпотентности {} уже использован для другого запроса", idempotencyKey);
+                yield new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
+            }
+            case IN_PROGRESS -> new ResponseEntity<>(HttpStatus.CONFLICT); //Первый запрос с этим ключом еще идет
+            case EXECUTED -> {
+                if (result.response() == null) {
+                    logger.warn("Не удалось зарегистрировать движение носков ({}): {}", operation, socksDto);
+                    yield new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                }
+                yield new ResponseEntity<>(result.response(), status);
+            }
+        };
+    }
+
+    //Условный GET: если остатки не менялись, ETag проверяется без обращения к БД и сериализации,
+    //а неизменившийся ответ берется из кэша готовым
+    private ResponseEntity<byte[]> cachedResponse(String color, String key, String ifNoneMatch,
+                                                  Supplier<Object> loader) {
+        String etag = responseCache.etag(color, key);
+        if (ResponseCache.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        ResponseCache.CachedResponse response = responseCache.get(color, key, loader);
+        if (ResponseCache.matches(ifNoneMatch, response.etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(response.etag()).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(response.etag())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(response.body());
+    }
+
+    //Поля в том же порядке, что и в JSON SocksDto
+    private static void writeRow(JsonGenerator generator, long id, String color, int cotton, int quantity) {
+        try {
+            generator.writeStartObject();
+            generator.writeNumberField("id", id);
+            generator.writeStringField("color", color);
+            generator.writeNumberField("cotton", cotton);
+            generator.writeNumberField("quantity", quantity);
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
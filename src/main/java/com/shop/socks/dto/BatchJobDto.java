@@ -0,0 +1,43 @@
+package com.shop.socks.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchJobDto {
+
+    @Schema(description = "Идентификатор задачи загрузки")
+    private String id;
+
+    @Schema(description = "Имя загруженного файла")
+    private String fileName;
+
+    @Schema(description = "Состояние: QUEUED, RUNNING, COMPLETED, FAILED")
+    private String status;
+
+    @Schema(description = "Прочитано строк")
+    private long rowsParsed;
+
+    @Schema(description = "Сохранено строк")
+    private long rowsPersisted;
+
+    @Schema(description = "Отклонено строк (не заполнены данные, некорректные значения)")
+    private long rowsInvalid;
+
+    @Schema(description = "Ссылка на отчет об отклоненных строках (CSV)")
+    private String errorReport;
+
+    @Schema(description = "Количество ошибок")
+    private long errors;
+
+    @Schema(description = "Скорость обработки, строк в секунду")
+    private double rowsPerSecond;
+
+    @Schema(description = "Описание ошибки")
+    private String message;
+
+    @Schema(description = "Итог загрузки")
+    private LotOfSocksDto result;
+}
@@ -0,0 +1,8 @@
+package com.shop.socks.dto;
+
+//Режим пакета движений: ALL_OR_NOTHING - пакет применяется, только если принята каждая строка;
+//BEST_EFFORT - применяются принятые строки, остальные возвращаются с причиной отказа
+public enum BulkMode {
+    ALL_OR_NOTHING,
+    BEST_EFFORT
+}
@@ -0,0 +1,25 @@
+package com.shop.socks.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BulkMovementResultDto {
+
+    @Schema(description = "Режим применения пакета")
+    private BulkMode mode;
+
+    @Schema(description = "Записаны ли изменения в БД")
+    private boolean applied;
+
+    @Schema(description = "Принято строк")
+    private int accepted;
+
+    @Schema(description = "Отклонено строк")
+    private int rejected;
+
+    @Schema(description = "Итог по каждой строке в порядке запроса")
+    private List<MovementResultDto> results;
+}
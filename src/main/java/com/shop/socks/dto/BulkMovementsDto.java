@@ -0,0 +1,16 @@
+package com.shop.socks.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BulkMovementsDto {
+
+    @Schema(description = "Режим применения: ALL_OR_NOTHING (по умолчанию) или BEST_EFFORT")
+    private BulkMode mode;
+
+    @Schema(description = "Движения по порядку: положительное количество - приход, отрицательное - отпуск")
+    private List<SocksDto> movements;
+}
@@ -1,15 +1,26 @@
 package com.shop.socks.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 
 @Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class LotOfSocksDto {
 
     private String color;
     private int cotton;
     private int quantity;
 
-    public LotOfSocksDto(int size) {
+    //Итоги пакетной загрузки: прочитано строк, создано и пополнено позиций, отклонено строк
+    private Long rows;
+    private Integer inserted;
+    private Integer updated;
+    private Long invalid;
+
+    public LotOfSocksDto(long rows, int inserted, int updated) {
+        this.rows = rows;
+        this.inserted = inserted;
+        this.updated = updated;
     }
 
     public LotOfSocksDto(String color, int cotton, int quantity) {
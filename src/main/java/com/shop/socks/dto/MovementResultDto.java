@@ -0,0 +1,41 @@
+package com.shop.socks.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MovementResultDto {
+
+    @Schema(description = "Номер строки в запросе, с нуля")
+    private int index;
+
+    @Schema(description = "Цвет носков")
+    private String color;
+
+    @Schema(description = "Процент содержания хлопка")
+    private int cotton;
+
+    @Schema(description = "Запрошенное изменение количества")
+    private int quantity;
+
+    @Schema(description = "Итог строки: ACCEPTED, REJECTED, INVALID, NOT_APPLIED")
+    private String status;
+
+    @Schema(description = "Остаток после движения")
+    private Integer remaining;
+
+    @Schema(description = "Причина отказа")
+    private String message;
+
+    public MovementResultDto() {
+    }
+
+    public MovementResultDto(int index, SocksDto movement) {
+        this.index = index;
+        this.color = movement.getColor();
+        this.cotton = movement.getCotton();
+        this.quantity = movement.getQuantity();
+    }
+}
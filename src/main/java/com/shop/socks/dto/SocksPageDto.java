@@ -0,0 +1,16 @@
+package com.shop.socks.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class SocksPageDto {
+
+    @Schema(description = "Позиции страницы")
+    private List<SocksDto> items;
+
+    @Schema(description = "Курсор следующей страницы, null - страница последняя")
+    private String nextCursor;
+}
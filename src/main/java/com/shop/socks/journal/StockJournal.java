@@ -0,0 +1,359 @@
+package com.shop.socks.journal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+//Локальный журнал движений режима write-behind: файлы-сегменты фиксированного размера, отображенные в память.
+//Запись - копирование в отображенную страницу без системного вызова; sync сбрасывает страницы на диск,
+//несколько ожидающих потоков обслуживаются одним force (group commit). Без sync записи переживают
+//падение процесса (страницы остаются в кэше ОС), но не отключение питания.
+//Номера записей сквозные; сегмент с номерами не больше сброшенного в БД удаляется
+@Slf4j
+public final class StockJournal implements Closeable {
+
+    private static final int MAGIC = 0x534A4E4C;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int RECORD_HEADER_BYTES = 8; //Длина и CRC32C данных записи
+    private static final int RECORD_FIXED_BYTES = 20; //Номер, хлопок, изменение, длина цвета
+    private static final String SUFFIX = ".journal";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean fsync;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock forceLock = new ReentrantLock();
+    private final List<Segment> segments = new ArrayList<>(); //Под appendLock, по возрастанию номеров
+    private final CRC32C crc = new CRC32C(); //Под appendLock
+    private Segment active; //null до start
+    private long lastSeq;
+    private volatile long durableSeq;
+
+    private StockJournal(Path directory, int segmentBytes, boolean fsync) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+    }
+
+    public static StockJournal open(Path directory, int segmentBytes, boolean fsync) {
+        if (segmentBytes < 4096) {
+            throw new IllegalArgumentException("Размер сегмента журнала должен быть не меньше 4096 байт");
+        }
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось создать каталог журнала " + directory, e);
+        }
+        return new StockJournal(directory, segmentBytes, fsync);
+    }
+
+    //Чтение записей, оставшихся с прошлого запуска, с номерами больше afterSeq. Сегмент читается
+    //до первой неполной или поврежденной записи: ее запись прервалась вместе с процессом.
+    //Возвращает последний прочитанный номер
+    public long replay(long afterSeq, JournalReader reader) {
+        appendLock.lock();
+        try {
+            for (Path file : segmentFiles()) {
+                Segment segment = Segment.map(file, segmentBytes);
+                segments.add(segment);
+                long seq = segment.scan(crc, (recordSeq, color, cotton, delta) -> {
+                    if (recordSeq > afterSeq) {
+                        reader.record(recordSeq, color, cotton, delta);
+                    }
+                });
+                lastSeq = Math.max(lastSeq, seq);
+            }
+            return lastSeq;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    //Новый сегмент для записи; номера продолжаются после afterSeq, даже если записи до него
+    //не успели попасть на диск, а в БД уже сброшены
+    public void start(long afterSeq) {
+        appendLock.lock();
+        try {
+            lastSeq = Math.max(lastSeq, afterSeq);
+            durableSeq = lastSeq;
+            //Пустые сегменты прошлого запуска не нужны, а имя последнего из них совпало бы с новым
+            segments.removeIf(segment -> {
+                if (segment.lastSeq == segment.baseSeq) {
+                    segment.delete();
+                    return true;
+                }
+                return false;
+            });
+            rotate();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    //Дописывает движение и возвращает его номер; запись видна replay сразу, на диске - после sync
+    public long append(String color, int cotton, int delta) {
+        byte[] colorBytes = color.getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_FIXED_BYTES + colorBytes.length;
+        if (RECORD_HEADER_BYTES + length > segmentBytes - HEADER_BYTES) {
+            throw new IllegalArgumentException("Запись не помещается в сегмент журнала");
+        }
+        appendLock.lock();
+        try {
+            if (active == null) {
+                throw new IllegalStateException("Журнал не открыт для записи");
+            }
+            if (!active.fits(RECORD_HEADER_BYTES + length)) {
+                rotate();
+            }
+            long seq = lastSeq + 1;
+            active.write(crc, seq, cotton, delta, colorBytes);
+            lastSeq = seq;
+            return seq;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    //Ждет, пока записи до seq включительно окажутся на диске. Поток, захвативший forceLock,
+    //сбрасывает все записанное к этому моменту, остальные получают результат его force
+    public void sync(long seq) {
+        if (!fsync || durableSeq >= seq) {
+            return;
+        }
+        forceLock.lock();
+        try {
+            if (durableSeq >= seq) {
+                return;
+            }
+            long target;
+            List<Segment> dirty = new ArrayList<>();
+            appendLock.lock();
+            try {
+                target = lastSeq;
+                for (Segment segment : segments) {
+                    if (segment.lastSeq > durableSeq) {
+                        dirty.add(segment);
+                    }
+                }
+            } finally {
+                appendLock.unlock();
+            }
+            for (Segment segment : dirty) {
+                segment.buffer.force();
+            }
+            durableSeq = target;
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    public long lastSeq() {
+        appendLock.lock();
+        try {
+            return lastSeq;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    //Удаляет закрытые сегменты, все записи которых уже сброшены в БД
+    public void release(long flushedSeq) {
+        List<Segment> released = new ArrayList<>();
+        appendLock.lock();
+        try {
+            while (!segments.isEmpty()) {
+                Segment oldest = segments.get(0);
+                if (oldest == active || oldest.lastSeq > flushedSeq) {
+                    break;
+                }
+                released.add(segments.remove(0));
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        for (Segment segment : released) {
+            segment.delete();
+        }
+    }
+
+    //Число файлов журнала; для мониторинга и тестов
+    public int segmentCount() {
+        appendLock.lock();
+        try {
+            return segments.size();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            for (Segment segment : segments) {
+                if (fsync) {
+                    segment.buffer.force();
+                }
+                segment.close();
+            }
+            segments.clear();
+            active = null;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void rotate() {
+        Path file = directory.resolve(String.format("%020d%s", lastSeq, SUFFIX));
+        Segment segment = Segment.create(file, segmentBytes, lastSeq);
+        segments.add(segment);
+        active = segment;
+        log.debug("Новый сегмент журнала движений: {}", file);
+    }
+
+    private List<Path> segmentFiles() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать каталог журнала " + directory, e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface JournalReader {
+        void record(long seq, String color, int cotton, int delta);
+    }
+
+    //Заголовок: признак, версия, номер перед первой записью. Запись: длина данных, CRC32C данных,
+    //данные (номер, хлопок, изменение, длина цвета, цвет в UTF-8). Номера в сегменте идут подряд,
+    //поэтому хвост от прерванной записи не примется за продолжение
+    private static final class Segment {
+
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final long baseSeq;
+        private int position = HEADER_BYTES;
+        private long lastSeq;
+
+        private Segment(Path file, FileChannel channel, MappedByteBuffer buffer, long baseSeq) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.baseSeq = baseSeq;
+            this.lastSeq = baseSeq;
+        }
+
+        static Segment create(Path file, int segmentBytes, long baseSeq) {
+            Segment segment = map(file, segmentBytes, StandardOpenOption.CREATE_NEW, baseSeq);
+            segment.buffer.putInt(0, MAGIC);
+            segment.buffer.putInt(4, VERSION);
+            segment.buffer.putLong(8, baseSeq);
+            segment.buffer.putInt(HEADER_BYTES, 0);
+            segment.buffer.force();
+            return segment;
+        }
+
+        static Segment map(Path file, int segmentBytes) {
+            Segment segment = map(file, segmentBytes, StandardOpenOption.READ, 0);
+            if (segment.buffer.getInt(0) != MAGIC || segment.buffer.getInt(4) != VERSION) {
+                segment.close();
+                throw new IllegalStateException("Файл " + file + " не является сегментом журнала движений");
+            }
+            return new Segment(file, segment.channel, segment.buffer, segment.buffer.getLong(8));
+        }
+
+        private static Segment map(Path file, int segmentBytes, StandardOpenOption mode, long baseSeq) {
+            try {
+                FileChannel channel = FileChannel.open(file, mode, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                long size = mode == StandardOpenOption.CREATE_NEW ? segmentBytes : channel.size();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                return new Segment(file, channel, buffer, baseSeq);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось открыть сегмент журнала " + file, e);
+            }
+        }
+
+        boolean fits(int recordBytes) {
+            //Место под нулевую длину после записи - признак конца сегмента
+            return position + recordBytes + 4 <= buffer.capacity();
+        }
+
+        void write(CRC32C crc, long seq, int cotton, int delta, byte[] color) {
+            int length = RECORD_FIXED_BYTES + color.length;
+            int data = position + RECORD_HEADER_BYTES;
+            buffer.putLong(data, seq);
+            buffer.putInt(data + 8, cotton);
+            buffer.putInt(data + 12, delta);
+            buffer.putInt(data + 16, color.length);
+            buffer.put(data + RECORD_FIXED_BYTES, color);
+            crc.reset();
+            crc.update(buffer.slice(data, length));
+            buffer.putInt(data + length, 0);
+            buffer.putInt(position + 4, (int) crc.getValue());
+            buffer.putInt(position, length); //Длина пишется последней
+            position = data + length;
+            lastSeq = seq;
+        }
+
+        long scan(CRC32C crc, JournalReader reader) {
+            long expected = baseSeq + 1;
+            while (position + RECORD_HEADER_BYTES <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                int data = position + RECORD_HEADER_BYTES;
+                if (length < RECORD_FIXED_BYTES || data + length > buffer.capacity()) {
+                    break;
+                }
+                crc.reset();
+                crc.update(buffer.slice(data, length));
+                if ((int) crc.getValue() != buffer.getInt(position + 4) || buffer.getLong(data) != expected) {
+                    break;
+                }
+                int colorLength = buffer.getInt(data + 16);
+                if (colorLength != length - RECORD_FIXED_BYTES) {
+                    break;
+                }
+                byte[] color = new byte[colorLength];
+                buffer.get(data + RECORD_FIXED_BYTES, color);
+                reader.record(expected, new String(color, StandardCharsets.UTF_8), buffer.getInt(data + 8),
+                        buffer.getInt(data + 12));
+                lastSeq = expected++;
+                position = data + length;
+            }
+            return lastSeq;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Не удалось закрыть сегмент журнала {}: {}", file, e.getMessage());
+            }
+        }
+
+        void delete() {
+            close();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Не удалось удалить сегмент журнала {}: {}", file, e.getMessage());
+            }
+        }
+    }
+}
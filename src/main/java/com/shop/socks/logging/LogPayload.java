@@ -0,0 +1,42 @@
+package com.shop.socks.logging;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+//Ограниченное представление коллекции для логов: размер и первые N элементов.
+//Строка собирается лениво в toString, то есть только если запись действительно попадет в лог
+public final class LogPayload {
+
+    private final Collection<?> items;
+    private final int limit;
+
+    private LogPayload(Collection<?> items, int limit) {
+        this.items = items;
+        this.limit = limit;
+    }
+
+    public static LogPayload limit(Collection<?> items, int limit) {
+        return new LogPayload(items, Math.max(0, limit));
+    }
+
+    @Override
+    public String toString() {
+        if (items == null) {
+            return "null";
+        }
+        int size = items.size();
+        StringBuilder builder = new StringBuilder();
+        builder.append("size=").append(size).append(" [");
+        Iterator<?> iterator = items.iterator();
+        for (int i = 0; i < limit && iterator.hasNext(); i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(iterator.next());
+        }
+        if (size > limit) {
+            builder.append(limit > 0 ? ", " : "").append("... еще ").append(size - limit);
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,121 @@
+package com.shop.socks.logging;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//Журнал запросов вместо построчного логирования в контроллерах и сервисе: одна структурированная
+//запись key=value на запрос, в выборку попадает заданная доля запросов. Ошибки сервера (5xx)
+//и запросы дольше slow-threshold-ms журналируются всегда. Логгер socks.requests можно
+//направить в отдельный аппендер или отключить уровнем, не трогая остальные логи
+@Component
+public class RequestLogFilter extends OncePerRequestFilter {
+
+    private static final Logger requestLog = LoggerFactory.getLogger("socks.requests");
+
+    private final RequestLogProperties properties;
+
+    @Autowired
+    public RequestLogFilter(RequestLogProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!properties.isEnabled() || !requestLog.isInfoEnabled()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        RequestLogProperties.Endpoint endpoint = properties.resolve(request.getRequestURI());
+        if (endpoint.getVerbosity() == Verbosity.OFF) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        long started = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                //Реактивные эндпоинты и фоновые ответы: статус известен только после завершения.
+                //После тайм-аута или ошибки контейнер еще вызывает onComplete, запись делается один раз
+                AtomicBoolean logged = new AtomicBoolean();
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        if (logged.compareAndSet(false, true)) {
+                            log(request, endpoint, started, response.getStatus(), null);
+                        }
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                        if (logged.compareAndSet(false, true)) {
+                            log(request, endpoint, started, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "timeout");
+                        }
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                        if (logged.compareAndSet(false, true)) {
+                            //Ответ мог уже уйти со статусом 200, но запрос не завершился: это ошибка сервера
+                            int status = Math.max(response.getStatus(), HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                            Throwable error = event.getThrowable();
+                            log(request, endpoint, started, status,
+                                    error == null ? "error" : error.getClass().getSimpleName());
+                        }
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                log(request, endpoint, started, response.getStatus(), null);
+            }
+        }
+    }
+
+    //error - причина незавершенного асинхронного запроса (тайм-аут, класс исключения), null - запрос завершен
+    private void log(HttpServletRequest request, RequestLogProperties.Endpoint endpoint, long started,
+                     int status, String error) {
+        long durationMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+        boolean forced = status >= 500 || durationMicros >= properties.getSlowThresholdMs() * 1000;
+        if (!forced && ThreadLocalRandom.current().nextDouble() >= endpoint.getSampleRate()) {
+            return;
+        }
+
+        if (error != null) {
+            requestLog.info("method={} path={} status={} durationMs={} sampled={} error={}",
+                    request.getMethod(), request.getRequestURI(), status, durationMicros / 1000.0, !forced, error);
+        } else if (endpoint.getVerbosity() == Verbosity.DETAILED) {
+            requestLog.info("method={} path={} status={} durationMs={} sampled={} query={} contentLength={} client={}",
+                    request.getMethod(), request.getRequestURI(), status, durationMicros / 1000.0, !forced,
+                    truncate(request.getQueryString()), request.getContentLengthLong(), request.getRemoteAddr());
+        } else {
+            requestLog.info("method={} path={} status={} durationMs={} sampled={}",
+                    request.getMethod(), request.getRequestURI(), status, durationMicros / 1000.0, !forced);
+        }
+    }
+
+    private String truncate(String query) {
+        if (query == null || query.length() <= properties.getMaxQueryLength()) {
+            return query;
+        }
+        return query.substring(0, properties.getMaxQueryLength()) + "...";
+    }
+}
@@ -0,0 +1,54 @@
+package com.shop.socks.logging;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//Настройки журнала запросов (socks.request-log.*). Эндпоинты задаются префиксом пути,
+//действует самый длинный подходящий префикс, например:
+//socks.request-log.endpoints[/api/socks/batch].sample-rate=1
+//socks.request-log.endpoints[/api/socks/batch].verbosity=DETAILED
+@Data
+@Component
+@ConfigurationProperties(prefix = "socks.request-log")
+public class RequestLogProperties {
+
+    private boolean enabled = true;
+
+    //Доля журналируемых запросов (0..1); ошибки сервера и медленные запросы журналируются всегда
+    private double sampleRate = 0.01;
+
+    private Verbosity verbosity = Verbosity.SUMMARY;
+
+    private long slowThresholdMs = 1000;
+
+    private int maxQueryLength = 256;
+
+    private Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+
+    //Пустые поля наследуются от общих настроек
+    @Data
+    public static class Endpoint {
+        private Double sampleRate;
+        private Verbosity verbosity;
+    }
+
+    public Endpoint resolve(String path) {
+        Endpoint matched = null;
+        int matchedLength = -1;
+        for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+            String prefix = entry.getKey();
+            if (prefix.length() > matchedLength && path.startsWith(prefix)) {
+                matched = entry.getValue();
+                matchedLength = prefix.length();
+            }
+        }
+        Endpoint resolved = new Endpoint();
+        resolved.setSampleRate(matched != null && matched.getSampleRate() != null ? matched.getSampleRate() : sampleRate);
+        resolved.setVerbosity(matched != null && matched.getVerbosity() != null ? matched.getVerbosity() : verbosity);
+        return resolved;
+    }
+}
@@ -0,0 +1,8 @@
+package com.shop.socks.logging;
+
+//Подробность журнала запросов для эндпоинта
+public enum Verbosity {
+    OFF,     //Запросы эндпоинта не журналируются совсем
+    SUMMARY, //Метод, путь, статус, длительность
+    DETAILED //Дополнительно строка запроса (не длиннее max-query-length), размер тела и адрес клиента
+}
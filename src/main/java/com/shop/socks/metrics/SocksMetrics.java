@@ -0,0 +1,111 @@
+package com.shop.socks.metrics;
+
+import com.shop.socks.cache.StockCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+//Метрики склада для Prometheus (/actuator/prometheus):
+//socks.operation - гистограмма задержек операций сервиса (теги operation, outcome),
+//socks.outcome.rejected - отпуски, отклоненные из-за нехватки остатка,
+//socks.batch.rows - прочитанные и сохраненные строки загрузок (тег stage, скорость - rate()),
+//socks.batch.phase - время разбора файла и записи в БД (теги phase, format),
+//socks.cache.* - попадания, промахи, вытеснения и размер кэша остатков
+@Component
+public class SocksMetrics {
+
+    public static final String ADD = "add";
+    public static final String REMOVE = "remove";
+    public static final String FILTER = "filter";
+    public static final String PAGE = "page";
+    public static final String STREAM = "stream";
+    public static final String TOTAL = "total";
+    public static final String UPDATE = "update";
+    public static final String MOVEMENTS = "movements";
+    public static final String BATCH = "batch";
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Counter outcomeRejected;
+    private final Counter rowsParsed;
+    private final Counter rowsPersisted;
+
+    @Autowired
+    public SocksMetrics(MeterRegistry registry, StockCache stockCache) {
+        this.registry = registry;
+        this.outcomeRejected = Counter.builder("socks.outcome.rejected")
+                .description("Отпуски, отклоненные из-за недостаточного остатка")
+                .register(registry);
+        this.rowsParsed = Counter.builder("socks.batch.rows")
+                .description("Строки загрузок партий")
+                .tag("stage", "parsed")
+                .register(registry);
+        this.rowsPersisted = Counter.builder("socks.batch.rows")
+                .description("Строки загрузок партий")
+                .tag("stage", "persisted")
+                .register(registry);
+
+        FunctionCounter.builder("socks.cache.hits", stockCache, cache -> cache.stats().hits()).register(registry);
+        FunctionCounter.builder("socks.cache.misses", stockCache, cache -> cache.stats().misses()).register(registry);
+        FunctionCounter.builder("socks.cache.evictions", stockCache, cache -> cache.stats().evictions()).register(registry);
+        Gauge.builder("socks.cache.size", stockCache, cache -> cache.stats().size()).register(registry);
+    }
+
+    //Выполняет операцию и записывает ее длительность; исключение помечается тегом outcome=error
+    public <T> T record(String operation, Supplier<T> action) {
+        long started = System.nanoTime();
+        String outcome = "error";
+        try {
+            T result = action.get();
+            outcome = "success";
+            return result;
+        } finally {
+            timer(operation, outcome).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void outcomeRejected() {
+        outcomeRejected.increment();
+    }
+
+    public void rowsParsed(long rows) {
+        rowsParsed.increment(rows);
+    }
+
+    public void rowsPersisted(long rows) {
+        rowsPersisted.increment(rows);
+    }
+
+    //Разделение времени загрузки: разбор файла и запись в БД
+    public void batchPhases(String format, long parseNanos, long persistNanos) {
+        phaseTimer("parse", format).record(parseNanos, TimeUnit.NANOSECONDS);
+        phaseTimer("persist", format).record(persistNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(String operation, String outcome) {
+        return timers.computeIfAbsent(operation + '/' + outcome, key -> Timer.builder("socks.operation")
+                .description("Длительность операций склада")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    private Timer phaseTimer(String phase, String format) {
+        return timers.computeIfAbsent("phase/" + phase + '/' + format, key -> Timer.builder("socks.batch.phase")
+                .description("Время разбора и записи загрузок партий")
+                .tag("phase", phase)
+                .tag("format", format)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+}
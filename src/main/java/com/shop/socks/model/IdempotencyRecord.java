@@ -0,0 +1,74 @@
+package com.shop.socks.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.OffsetDateTime;
+
+//Выполненный приход или отпуск с ключом Idempotency-Key: запрос (для проверки, что ключ повторен
+//с тем же телом) и ответ, который возвращается повтору без изменения остатков. Запись без ответа -
+//ключ занят запросом, который еще выполняется (или прерван аварийной остановкой).
+//Записи пишутся и читаются запросами JDBC, сущность описывает схему
+@Entity
+@Data
+@Table(name = "socks_idempotency",
+        indexes = @Index(name = "ix_socks_idempotency_created_at", columnList = "created_at"))
+public class IdempotencyRecord {
+
+    @Id
+    @Column(name = "idempotency_key", length = 255)
+    private String idempotencyKey;
+
+    @Column(name = "operation", nullable = false, length = 16)
+    private String operation;
+
+    @Column(name = "color")
+    private String color;
+
+    @Column(name = "cotton", nullable = false)
+    private int cotton;
+
+    @Column(name = "quantity", nullable = false)
+    private int quantity;
+
+    @Column(name = "response_color")
+    private String responseColor;
+
+    @Column(name = "response_cotton")
+    private Integer responseCotton;
+
+    @Column(name = "response_quantity")
+    private Integer responseQuantity;
+
+    @Column(name = "created_at", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "timestamp with time zone default now()")
+    private OffsetDateTime createdAt;
+
+    public IdempotencyRecord() {
+    }
+
+    //Занятый ключ, ответа еще нет
+    public IdempotencyRecord(String idempotencyKey, String operation, String color, int cotton, int quantity) {
+        this.idempotencyKey = idempotencyKey;
+        this.operation = operation;
+        this.color = color;
+        this.cotton = cotton;
+        this.quantity = quantity;
+    }
+
+    public IdempotencyRecord(String idempotencyKey, String operation, String color, int cotton, int quantity,
+                             String responseColor, int responseCotton, int responseQuantity) {
+        this.idempotencyKey = idempotencyKey;
+        this.operation = operation;
+        this.color = color;
+        this.cotton = cotton;
+        this.quantity = quantity;
+        this.responseColor = responseColor;
+        this.responseCotton = responseCotton;
+        this.responseQuantity = responseQuantity;
+    }
+
+    public boolean hasResponse() {
+        return responseQuantity != null;
+    }
+}
@@ -0,0 +1,20 @@
+package com.shop.socks.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+//Последняя запись локального журнала экземпляра (режим write-behind), изменения которой уже внесены
+//в строки socks. Обновляется в одной транзакции с ними, поэтому повтор журнала после перезапуска
+//не применяет движение дважды
+@Entity
+@Data
+@Table(name = "socks_journal_state")
+public class JournalState {
+
+    @Id
+    @Column(name = "node_id")
+    private String nodeId;
+
+    @Column(name = "flushed_seq", nullable = false)
+    private long flushedSeq;
+}
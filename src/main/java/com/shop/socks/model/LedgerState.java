@@ -0,0 +1,18 @@
+package com.shop.socks.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+//Граница свертки журнала: движения с id не больше appliedId уже учтены в количестве строк socks.
+//Таблица из одной строки (id = 1)
+@Entity
+@Data
+@Table(name = "socks_ledger_state")
+public class LedgerState {
+
+    @Id
+    private Integer id;
+
+    @Column(name = "applied_id", nullable = false)
+    private long appliedId;
+}
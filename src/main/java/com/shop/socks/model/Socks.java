@@ -7,7 +7,8 @@ import java.util.Objects;
 
 @Entity
 @Data
-@Table(name = "socks")
+@Table(name = "socks",
+        uniqueConstraints = @UniqueConstraint(name = "uk_socks_color_cotton", columnNames = {"color", "cotton"}))
 public class Socks {
 
     @Id
@@ -0,0 +1,28 @@
+package com.shop.socks.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+//Цвет из словаря цветов: name - написание, под которым цвет хранится в socks (первое встреченное,
+//без лишних пробелов), normalized - ключ сравнения (нижний регистр, одиночные пробелы) и первичный ключ.
+//Записи пишутся и читаются запросами JDBC, сущность описывает схему
+@Entity
+@Data
+@Table(name = "socks_colors")
+public class SocksColor {
+
+    @Id
+    @Column(name = "normalized")
+    private String normalized;
+
+    @Column(name = "name", nullable = false)
+    private String name;
+
+    public SocksColor() {
+    }
+
+    public SocksColor(String name, String normalized) {
+        this.name = name;
+        this.normalized = normalized;
+    }
+}
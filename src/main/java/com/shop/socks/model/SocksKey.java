@@ -0,0 +1,5 @@
+package com.shop.socks.model;
+
+//Артикул носков: позиция на складе однозначно определяется цветом и процентом хлопка
+public record SocksKey(String color, int cotton) {
+}
@@ -0,0 +1,31 @@
+package com.shop.socks.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.OffsetDateTime;
+
+//Запись журнала движений (socks.stock.write-mode=ledger). Журнал только дописывается:
+//остаток позиции - количество в строке socks (снимок) плюс движения с id больше свернутого
+//(LedgerState.appliedId). Записи пишутся и читаются запросами JDBC, сущность описывает схему
+@Entity
+@Data
+@Table(name = "socks_movements",
+        indexes = @Index(name = "ix_socks_movements_socks_id", columnList = "socks_id, id"))
+public class StockMovement {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "socks_id", nullable = false)
+    private Long socksId;
+
+    //Положительное - приход, отрицательное - отпуск или списание при исправлении остатка
+    @Column(name = "delta", nullable = false)
+    private int delta;
+
+    @Column(name = "created_at", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "timestamp with time zone default now()")
+    private OffsetDateTime createdAt;
+}
@@ -0,0 +1,21 @@
+package com.shop.socks.parser;
+
+import java.util.Locale;
+
+//Формат файла партии
+public enum BatchFormat {
+
+    EXCEL,
+    CSV;
+
+    //CSV определяется по типу содержимого или по расширению файла, все остальное читается как XLSX
+    public static BatchFormat detect(String contentType, String filename) {
+        if (contentType != null && (contentType.startsWith("text/csv") || contentType.startsWith("application/csv"))) {
+            return CSV;
+        }
+        if (filename != null && filename.toLowerCase(Locale.ROOT).endsWith(".csv")) {
+            return CSV;
+        }
+        return EXCEL;
+    }
+}
@@ -0,0 +1,298 @@
+package com.shop.socks.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+//Потоковый разбор CSV прямо из байтового потока: файл не буферизуется целиком,
+//числа разбираются из байтов без создания строк, повторяющиеся цвета берутся из кэша.
+//Первая строка - заголовок, если в ней есть имена столбцов ID, Color, Cotton, Quantity (регистр не важен):
+//тогда столбцы ищутся по именам. Иначе первая строка - уже данные, как в прежнем формате без заголовка:
+//четыре и больше столбцов - "ID,Color,Cotton,Quantity", меньше - "Color,Cotton,Quantity".
+//Неполная строка или нечитаемое число передаются обработчику как ошибка строки, ошибки формата файла
+//(незакрытая кавычка, в заголовке нет нужного столбца) прерывают чтение
+public final class CsvSocksReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_FIELD_LENGTH = 64 * 1024;
+
+    private final SocksRowHandler handler;
+    private final ColorCache colorCache = new ColorCache();
+
+    private byte[] field = new byte[128];
+    private int fieldLength;
+    private boolean inQuotes;
+    private boolean quoteClosed;
+
+    private int column;
+    private boolean header = true; //Первая непустая строка: заголовок или данные
+    private boolean namedColumns;
+    private final List<String> firstRecord = new ArrayList<>(4);
+    private int colorColumn = -1;
+    private int cottonColumn = -1;
+    private int quantityColumn = -1;
+
+    private long lineNumber = 1;
+    private long rows;
+    private String color;
+    private int cotton;
+    private int quantity;
+    private int filledColumns;
+    private boolean recordHasData;
+    private boolean invalidNumber;
+
+    private CsvSocksReader(SocksRowHandler handler) {
+        this.handler = handler;
+    }
+
+    //Возвращает количество прочитанных строк данных (без заголовка), включая ошибочные
+    public static long read(InputStream inputStream, SocksRowHandler handler) throws IOException {
+        CsvSocksReader reader = new CsvSocksReader(handler);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            reader.consume(buffer, read);
+        }
+        reader.finish();
+        return reader.rows;
+    }
+
+    private void consume(byte[] buffer, int length) {
+        for (int i = 0; i < length; i++) {
+            byte b = buffer[i];
+            if (inQuotes) {
+                if (b == '"') {
+                    inQuotes = false;
+                    quoteClosed = true; //Либо конец поля, либо экранированная кавычка ""
+                } else {
+                    append(b);
+                }
+                continue;
+            }
+            if (quoteClosed) {
+                quoteClosed = false;
+                if (b == '"') {
+                    append(b);
+                    inQuotes = true;
+                    continue;
+                }
+            }
+            switch (b) {
+                case ',' -> endField();
+                case '\n' -> {
+                    endField();
+                    endRecord();
+                }
+                case '\r' -> {
+                }
+                case '"' -> {
+                    if (fieldLength == 0) {
+                        inQuotes = true;
+                    } else {
+                        append(b);
+                    }
+                }
+                default -> append(b);
+            }
+        }
+    }
+
+    private void finish() {
+        if (inQuotes) {
+            throw new IllegalArgumentException("Незакрытая кавычка в строке " + lineNumber);
+        }
+        if (column > 0 || fieldLength > 0) { //Последняя строка без перевода строки
+            endField();
+            endRecord();
+        }
+    }
+
+    private void append(byte b) {
+        if (fieldLength == field.length) {
+            if (field.length >= MAX_FIELD_LENGTH) {
+                throw new IllegalArgumentException("Слишком длинное значение в строке " + lineNumber);
+            }
+            field = Arrays.copyOf(field, field.length * 2);
+        }
+        field[fieldLength++] = b;
+        recordHasData = true;
+    }
+
+    private void endField() {
+        int from = 0;
+        int to = fieldLength;
+        while (from < to && isBlank(field[from])) {
+            from++;
+        }
+        while (to > from && isBlank(field[to - 1])) {
+            to--;
+        }
+
+        if (header) {
+            headerField(new String(field, from, to - from, StandardCharsets.UTF_8).replace("\uFEFF", "").strip());
+        } else if (from == to) {
+            //Пустое значение: строка либо пустая целиком, либо будет отклонена как неполная
+        } else if (column == colorColumn) {
+            color = colorCache.get(field, from, to);
+            filledColumns++;
+        } else if (column == cottonColumn) {
+            cotton = parseInt(from, to);
+            filledColumns++;
+        } else if (column == quantityColumn) {
+            quantity = parseInt(from, to);
+            filledColumns++;
+        }
+        column++;
+        fieldLength = 0;
+    }
+
+    //Значение первой строки запоминается: если имен столбцов в строке не окажется, это данные
+    private void headerField(String name) {
+        firstRecord.add(name);
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "color" -> colorColumn = column;
+            case "cotton" -> cottonColumn = column;
+            case "quantity" -> quantityColumn = column;
+            case "id" -> {
+            }
+            default -> {
+                return;
+            }
+        }
+        namedColumns = true;
+    }
+
+    private void endRecord() {
+        if (header) {
+            if (recordHasData) { //Пустые строки до заголовка пропускаются
+                header = false;
+                if (namedColumns) {
+                    requireColumns();
+                } else {
+                    readFirstRecordAsData();
+                    emitRecord();
+                }
+            }
+            firstRecord.clear();
+        } else if (!recordHasData) {
+            //Пустая строка (в том числе ",,,") пропускается
+        } else {
+            emitRecord();
+        }
+        lineNumber++;
+        column = 0;
+        filledColumns = 0;
+        recordHasData = false;
+        invalidNumber = false;
+        color = null;
+    }
+
+    private void emitRecord() {
+        if (invalidNumber) {
+            handler.onInvalidRow(lineNumber - 1, "Некорректное число в строке " + lineNumber);
+        } else if (filledColumns < 3) {
+            handler.onInvalidRow(lineNumber - 1, "Не заполнены данные в строке " + lineNumber);
+        } else {
+            handler.onRow(lineNumber - 1, color, cotton, quantity);
+        }
+        rows++;
+    }
+
+    private void requireColumns() {
+        if (colorColumn < 0 || cottonColumn < 0 || quantityColumn < 0) {
+            throw new IllegalArgumentException("В заголовке должны быть столбцы Color, Cotton и Quantity: " +
+                    String.join(",", firstRecord));
+        }
+    }
+
+    //Файл без заголовка: столбцы определяются по их числу, уже прочитанные значения разбираются как данные
+    private void readFirstRecordAsData() {
+        int offset = firstRecord.size() >= 4 ? 1 : 0; //Первый столбец прежнего формата - ID
+        colorColumn = offset;
+        cottonColumn = offset + 1;
+        quantityColumn = offset + 2;
+        column = 0;
+        for (String value : firstRecord) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > field.length) {
+                field = Arrays.copyOf(field, bytes.length);
+            }
+            System.arraycopy(bytes, 0, field, 0, bytes.length);
+            fieldLength = bytes.length;
+            endField();
+        }
+    }
+
+    //Целое число из байтов поля; дробная часть ("50.0") отбрасывается, как и при чтении Excel.
+    //Нечитаемое число помечает строку ошибочной
+    private int parseInt(int from, int to) {
+        boolean negative = field[from] == '-';
+        int i = negative ? from + 1 : from;
+        long value = 0;
+        boolean digits = false;
+        for (; i < to; i++) {
+            byte b = field[i];
+            if (b == '.') {
+                break;
+            }
+            if (b < '0' || b > '9' || value > Integer.MAX_VALUE) {
+                invalidNumber = true;
+                return 0;
+            }
+            value = value * 10 + (b - '0');
+            digits = true;
+        }
+        for (i++; i < to; i++) {
+            if (field[i] < '0' || field[i] > '9') {
+                invalidNumber = true;
+                return 0;
+            }
+        }
+        value = negative ? -value : value;
+        if (!digits || value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            invalidNumber = true;
+            return 0;
+        }
+        return (int) value;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    //Кэш цветов с открытой адресацией: повторяющийся цвет не создает новый String на каждую строку
+    private static final class ColorCache {
+
+        private static final int CAPACITY = 1024; //Степень двойки
+        private static final int MAX_SIZE = CAPACITY * 3 / 4;
+
+        private final byte[][] keys = new byte[CAPACITY][];
+        private final String[] values = new String[CAPACITY];
+        private int size;
+
+        String get(byte[] bytes, int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            int index = (hash ^ (hash >>> 16)) & (CAPACITY - 1);
+            while (keys[index] != null) {
+                if (Arrays.equals(keys[index], 0, keys[index].length, bytes, from, to)) {
+                    return values[index];
+                }
+                index = (index + 1) & (CAPACITY - 1);
+            }
+            String value = new String(bytes, from, to - from, StandardCharsets.UTF_8);
+            if (size < MAX_SIZE) { //Заполненный кэш не растет, редкие цвета просто создаются заново
+                keys[index] = Arrays.copyOfRange(bytes, from, to);
+                values[index] = value;
+                size++;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.shop.socks.parser;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.NumberToTextConverter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.Iterator;
+
+//Потоковое (SAX) чтение первого листа XLSX: в памяти находится только текущая строка,
+//поэтому расход heap не зависит от размера файла. Числовые ячейки читаются по значению, а не по формату
+//отображения ("1,000", "1.00E+03"). Неполная строка или нечитаемое число (например, текст в столбце хлопка,
+//дробь или значение вне int) передаются обработчику как ошибка строки, чтение продолжается
+public final class ExcelSocksReader {
+
+    private static final int COLOR_COLUMN = 0;
+    private static final int COTTON_COLUMN = 1;
+    private static final int QUANTITY_COLUMN = 2;
+
+    private ExcelSocksReader() {
+    }
+
+    //Возвращает количество прочитанных строк данных (без заголовка), включая ошибочные
+    public static long read(File file, SocksRowHandler handler) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return 0;
+            }
+            try (InputStream sheet = sheets.next()) { //Обрабатываем только первый лист
+                RowCollector collector = new RowCollector(handler);
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(
+                        styles, null, strings, collector, new RawValueFormatter(), false));
+                parser.parse(new InputSource(sheet));
+                return collector.rows;
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Некорректный формат Excel файла", e);
+        }
+    }
+
+    //Столбец по ссылке на ячейку ("B17" -> 1) без создания CellReference
+    static int columnIndex(String cellReference) {
+        int column = 0;
+        for (int i = 0; i < cellReference.length(); i++) {
+            char ch = cellReference.charAt(i);
+            if (ch < 'A' || ch > 'Z') {
+                break;
+            }
+            column = column * 26 + (ch - 'A' + 1);
+        }
+        return column - 1;
+    }
+
+    //Целое значение ячейки: "50" и "50.0" читаются, дробь и значение вне int - как нечитаемое число
+    static int parseNumber(String value) {
+        try {
+            return new BigDecimal(value.strip()).intValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Не целое число: " + value);
+        }
+    }
+
+    //Значение числовой ячейки без формата отображения. Процентный формат - исключение: ячейка "50%"
+    //хранит 0.5, а в столбце хлопка означает 50, поэтому значение читается так, как показано
+    private static final class RawValueFormatter extends DataFormatter {
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            return toText(value, formatString);
+        }
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString,
+                                            boolean use1904Windowing) {
+            return toText(value, formatString);
+        }
+
+        private static String toText(double value, String formatString) {
+            boolean percent = formatString != null && formatString.indexOf('%') >= 0;
+            return percent
+                    ? BigDecimal.valueOf(value).movePointRight(2).toPlainString()
+                    : NumberToTextConverter.toText(value);
+        }
+    }
+
+    private static final class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final SocksRowHandler handler;
+        private long rows;
+        private String color;
+        private String cotton;
+        private String quantity;
+
+        private RowCollector(SocksRowHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            color = null;
+            cotton = null;
+            quantity = null;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (rowNum == 0) {
+                return; //Пропускаем заголовок
+            }
+            if (color == null && cotton == null && quantity == null) {
+                return; //Пустая строка, например оформленная, но без значений
+            }
+            rows++;
+            if (color == null || cotton == null || quantity == null) {
+                handler.onInvalidRow(rowNum, "Не заполнены данные в строке " + (rowNum + 1));
+                return;
+            }
+            int cottonValue;
+            int quantityValue;
+            try {
+                cottonValue = parseNumber(cotton);
+                quantityValue = parseNumber(quantity);
+            } catch (NumberFormatException e) {
+                handler.onInvalidRow(rowNum, "Некорректное число в строке " + (rowNum + 1));
+                return;
+            }
+            handler.onRow(rowNum, color, cottonValue, quantityValue);
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            switch (columnIndex(cellReference)) {
+                case COLOR_COLUMN -> color = formattedValue;
+                case COTTON_COLUMN -> cotton = formattedValue;
+                case QUANTITY_COLUMN -> quantity = formattedValue;
+                default -> {
+                }
+            }
+        }
+    }
+}
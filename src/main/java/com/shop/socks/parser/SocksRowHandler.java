@@ -0,0 +1,14 @@
+package com.shop.socks.parser;
+
+//Получает строки файла партии по одной, без промежуточных коллекций
+@FunctionalInterface
+public interface SocksRowHandler {
+
+    void onRow(long rowNumber, String color, int cotton, int quantity);
+
+    //Строка, которую не удалось разобрать (не заполнены данные, число не читается). По умолчанию
+    //загрузка прерывается; обработчик, собирающий отчет об ошибках, продолжает чтение со следующей строки
+    default void onInvalidRow(long rowNumber, String message) {
+        throw new IllegalArgumentException(message);
+    }
+}
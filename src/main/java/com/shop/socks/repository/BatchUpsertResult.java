@@ -0,0 +1,5 @@
+package com.shop.socks.repository;
+
+//Итог слияния партии со складом: сколько позиций создано и сколько пополнено
+public record BatchUpsertResult(int inserted, int updated) {
+}
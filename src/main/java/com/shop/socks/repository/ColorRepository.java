@@ -0,0 +1,53 @@
+package com.shop.socks.repository;
+
+import com.shop.socks.model.SocksColor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+//Словарь цветов (socks_colors). Цвет регистрируется один раз; при одновременной регистрации
+//вариантов одного цвета разными экземплярами все получают написание, записанное первым
+@Repository
+public class ColorRepository {
+
+    private static final String LOAD = "SELECT name, normalized FROM socks_colors";
+    //Пустое обновление нужно, чтобы RETURNING вернул уже записанную строку
+    private static final String REGISTER = "INSERT INTO socks_colors (name, normalized) VALUES (?, ?) " +
+            "ON CONFLICT (normalized) DO UPDATE SET normalized = EXCLUDED.normalized RETURNING name, normalized";
+    private static final String STOCK_COLORS = "SELECT DISTINCT color FROM socks ORDER BY color";
+    private static final String SEED = "INSERT INTO socks_colors (name, normalized) VALUES (?, ?) " +
+            "ON CONFLICT (normalized) DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public ColorRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void forEach(Consumer<SocksColor> consumer) {
+        jdbcTemplate.query(LOAD, (RowCallbackHandler) rs ->
+                consumer.accept(new SocksColor(rs.getString(1), rs.getString(2))));
+    }
+
+    public SocksColor register(String name, String normalized) {
+        return jdbcTemplate.queryForObject(REGISTER, (rs, rowNum) ->
+                new SocksColor(rs.getString(1), rs.getString(2)), name, normalized);
+    }
+
+    //Различные цвета таблицы socks, в том числе записанные до появления словаря
+    public void forEachStockColor(Consumer<String> consumer) {
+        jdbcTemplate.query(STOCK_COLORS, (RowCallbackHandler) rs -> consumer.accept(rs.getString(1)));
+    }
+
+    public void seed(Collection<SocksColor> colors) {
+        jdbcTemplate.batchUpdate(SEED, colors, colors.size(), (statement, color) -> {
+            statement.setString(1, color.getName());
+            statement.setString(2, color.getNormalized());
+        });
+    }
+}
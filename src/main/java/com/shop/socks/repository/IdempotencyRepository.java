@@ -0,0 +1,84 @@
+package com.shop.socks.repository;
+
+import com.shop.socks.model.IdempotencyRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Optional;
+
+//Ключи идемпотентности всех экземпляров. Ключ занимается строкой без ответа до выполнения операции,
+//ответы дописываются в нее пачками, по ключу записи читаются точечно, устаревшие удаляются по created_at.
+//Строка без ответа старше аренды считается брошенной (экземпляр остановился до записи ответа)
+//и занимается заново тем же INSERT
+@Repository
+public class IdempotencyRepository {
+
+    private static final String RESERVE = "INSERT INTO socks_idempotency (idempotency_key, operation, color, " +
+            "cotton, quantity) VALUES (?, ?, ?, ?, ?) ON CONFLICT (idempotency_key) DO UPDATE SET " +
+            "operation = EXCLUDED.operation, color = EXCLUDED.color, cotton = EXCLUDED.cotton, " +
+            "quantity = EXCLUDED.quantity, created_at = now() " +
+            "WHERE socks_idempotency.response_quantity IS NULL " +
+            "AND socks_idempotency.created_at < now() - make_interval(secs => ?)";
+    private static final String RELEASE = "DELETE FROM socks_idempotency " +
+            "WHERE idempotency_key = ? AND response_quantity IS NULL";
+    //Ответ записывается в строку занятого ключа; ответ, записанный раньше, не перезаписывается
+    private static final String INSERT = "INSERT INTO socks_idempotency (idempotency_key, operation, color, " +
+            "cotton, quantity, response_color, response_cotton, response_quantity) VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (idempotency_key) DO UPDATE SET response_color = EXCLUDED.response_color, " +
+            "response_cotton = EXCLUDED.response_cotton, response_quantity = EXCLUDED.response_quantity " +
+            "WHERE socks_idempotency.response_quantity IS NULL";
+    private static final String FIND = "SELECT idempotency_key, operation, color, cotton, quantity, " +
+            "response_color, response_cotton, response_quantity FROM socks_idempotency WHERE idempotency_key = ?";
+    private static final String DELETE_EXPIRED = "DELETE FROM socks_idempotency " +
+            "WHERE created_at < now() - make_interval(secs => ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public IdempotencyRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    //false - ключ уже выполнен или занят другим запросом этого или другого экземпляра не дольше leaseMs
+    public boolean reserve(IdempotencyRecord reservation, long leaseMs) {
+        return jdbcTemplate.update(RESERVE, reservation.getIdempotencyKey(), reservation.getOperation(),
+                reservation.getColor(), reservation.getCotton(), reservation.getQuantity(), leaseMs / 1000.0) > 0;
+    }
+
+    //Освобождение ключа, операция по которому не выполнилась; ключ с ответом не удаляется
+    public void release(String key) {
+        jdbcTemplate.update(RELEASE, key);
+    }
+
+    public void saveAll(Collection<IdempotencyRecord> records) {
+        jdbcTemplate.batchUpdate(INSERT, records, records.size(), (statement, record) -> {
+            statement.setString(1, record.getIdempotencyKey());
+            statement.setString(2, record.getOperation());
+            statement.setString(3, record.getColor());
+            statement.setInt(4, record.getCotton());
+            statement.setInt(5, record.getQuantity());
+            statement.setString(6, record.getResponseColor());
+            statement.setInt(7, record.getResponseCotton());
+            statement.setInt(8, record.getResponseQuantity());
+        });
+    }
+
+    public Optional<IdempotencyRecord> find(String key) {
+        return jdbcTemplate.query(FIND, (rs, rowNum) -> {
+                    IdempotencyRecord record = new IdempotencyRecord(rs.getString(1), rs.getString(2),
+                            rs.getString(3), rs.getInt(4), rs.getInt(5));
+                    record.setResponseColor(rs.getString(6));
+                    record.setResponseCotton(rs.getObject(7, Integer.class));
+                    record.setResponseQuantity(rs.getObject(8, Integer.class));
+                    return record;
+                }, key)
+                .stream()
+                .findFirst();
+    }
+
+    public int deleteExpired(long maxAgeSeconds) {
+        return jdbcTemplate.update(DELETE_EXPIRED, maxAgeSeconds);
+    }
+}
@@ -0,0 +1,144 @@
+package com.shop.socks.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+//Параллельный обход большой выборки без фильтра по цвету: диапазон хлопка делится на части,
+//каждая часть читается отдельным запросом в пуле fork/join, результаты сливаются деревом задач.
+//Для sortBy=color части сливаются по (color, cotton), для остальных сортировок - склеиваются
+//по порядку диапазонов хлопка. Число одновременных запросов ограничено размером пула
+//(socks.scan.parallelism) для всех запросов приложения сразу, выборки меньше
+//socks.scan.parallel-threshold-rows строк читаются одним запросом
+@Component
+@Slf4j
+public class ParallelStockScanner implements DisposableBean {
+
+    private static final int MIN_COTTON = 0;
+    private static final int MAX_COTTON = 100;
+
+    private final int parallelism;
+    private final long thresholdRows;
+    private final ForkJoinPool pool; //null - параллельный обход отключен
+
+    @Autowired
+    public ParallelStockScanner(@Value("${socks.scan.parallelism:4}") int parallelism,
+                                @Value("${socks.scan.parallel-threshold-rows:200000}") long thresholdRows) {
+        this.parallelism = parallelism;
+        this.thresholdRows = thresholdRows;
+        //Задачи блокируются на запросах к БД, поэтому пул не добавляет компенсирующих потоков
+        this.pool = parallelism > 1
+                ? new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, false,
+                0, parallelism, 1, p -> true, 60, TimeUnit.SECONDS)
+                : null;
+    }
+
+    //Размер выборки оценивается по числу строк таблицы при равномерном распределении хлопка
+    public boolean shouldSplit(Integer minCotton, Integer maxCotton, long tableRows) {
+        if (pool == null) {
+            return false;
+        }
+        int from = lower(minCotton);
+        int to = upper(maxCotton);
+        if (to <= from) {
+            return false;
+        }
+        long expectedRows = tableRows * (to - from + 1) / (MAX_COTTON - MIN_COTTON + 1);
+        return expectedRows >= thresholdRows;
+    }
+
+    public void scan(Integer minCotton, Integer maxCotton, String sortBy,
+                     RangeScanner rangeScanner, StockRowCallback callback) {
+        List<CottonRange> ranges = split(minCotton, maxCotton);
+        log.debug("Параллельный обход: {} частей по хлопку {}..{}", ranges.size(), minCotton, maxCotton);
+        StockRows rows = pool.invoke(new ScanTask(ranges, 0, ranges.size(), "color".equalsIgnoreCase(sortBy),
+                sortBy, rangeScanner));
+        rows.forEach(callback);
+    }
+
+    //Крайние части наследуют исходные границы, в том числе открытые (null),
+    //поэтому позиции с хлопком вне 0..100 тоже попадают в выборку
+    private List<CottonRange> split(Integer minCotton, Integer maxCotton) {
+        int from = lower(minCotton);
+        int to = upper(maxCotton);
+        int parts = Math.min(parallelism, to - from + 1);
+        List<CottonRange> ranges = new ArrayList<>(parts);
+        int start = from;
+        for (int part = 0; part < parts; part++) {
+            int end = from + (int) ((long) (to - from + 1) * (part + 1) / parts) - 1;
+            ranges.add(new CottonRange(part == 0 ? minCotton : Integer.valueOf(start),
+                    part == parts - 1 ? maxCotton : Integer.valueOf(end)));
+            start = end + 1;
+        }
+        return ranges;
+    }
+
+    private static int lower(Integer minCotton) {
+        return minCotton == null ? MIN_COTTON : Math.max(minCotton, MIN_COTTON);
+    }
+
+    private static int upper(Integer maxCotton) {
+        return maxCotton == null ? MAX_COTTON : Math.min(maxCotton, MAX_COTTON);
+    }
+
+    @Override
+    public void destroy() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    //Чтение одной части выборки; вызывается из потоков пула
+    @FunctionalInterface
+    public interface RangeScanner {
+        void scan(Integer minCotton, Integer maxCotton, String sortBy, StockRowCallback callback);
+    }
+
+    //null - граница не задана
+    private record CottonRange(Integer min, Integer max) {
+    }
+
+    private static final class ScanTask extends RecursiveTask<StockRows> {
+
+        private final List<CottonRange> ranges;
+        private final int from;
+        private final int to;
+        private final boolean mergeByColor;
+        private final String sortBy;
+        private final RangeScanner rangeScanner;
+
+        private ScanTask(List<CottonRange> ranges, int from, int to, boolean mergeByColor, String sortBy,
+                         RangeScanner rangeScanner) {
+            this.ranges = ranges;
+            this.from = from;
+            this.to = to;
+            this.mergeByColor = mergeByColor;
+            this.sortBy = sortBy;
+            this.rangeScanner = rangeScanner;
+        }
+
+        @Override
+        protected StockRows compute() {
+            if (to - from == 1) {
+                StockRows rows = new StockRows();
+                CottonRange range = ranges.get(from);
+                rangeScanner.scan(range.min(), range.max(), sortBy, rows);
+                return rows;
+            }
+            int middle = (from + to) >>> 1;
+            ScanTask left = new ScanTask(ranges, from, middle, mergeByColor, sortBy, rangeScanner);
+            left.fork();
+            StockRows right = new ScanTask(ranges, middle, to, mergeByColor, sortBy, rangeScanner).compute();
+            StockRows leftRows = left.join();
+            return mergeByColor ? StockRows.mergeByColor(leftRows, right) : StockRows.concat(leftRows, right);
+        }
+    }
+}
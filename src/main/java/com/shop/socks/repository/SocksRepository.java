@@ -1,16 +1,56 @@
 package com.shop.socks.repository;
 
 import com.shop.socks.model.Socks;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface SocksRepository extends JpaRepository<Socks, Long> {
+public interface SocksRepository extends JpaRepository<Socks, Long>, SocksRepositoryCustom {
 
     Optional<Socks> findByColorAndCotton(String color, int cotton);
 
     List<Socks> findByColor(String color);
+
+    //Приход одним запросом: новая позиция вставляется, у существующей количество увеличивается
+    @Query(value = "INSERT INTO socks (color, cotton, quantity) VALUES (:color, :cotton, :quantity) " +
+            "ON CONFLICT (color, cotton) DO UPDATE SET quantity = socks.quantity + EXCLUDED.quantity " +
+            "RETURNING *", nativeQuery = true)
+    @Transactional
+    Socks incrementQuantity(@Param("color") String color,
+                            @Param("cotton") int cotton,
+                            @Param("quantity") int quantity);
+
+    //Отпуск одним запросом: строка не изменяется, если на складе меньше носков, чем запрошено
+    @Query(value = "UPDATE socks SET quantity = quantity - :quantity " +
+            "WHERE color = :color AND cotton = :cotton AND quantity >= :quantity " +
+            "RETURNING *", nativeQuery = true)
+    @Transactional
+    Optional<Socks> decrementQuantity(@Param("color") String color,
+                                      @Param("cotton") int cotton,
+                                      @Param("quantity") int quantity);
+
+    //Текущий остаток с блокировкой строки до конца транзакции
+    @Query(value = "SELECT id, quantity FROM socks WHERE color = :color AND cotton = :cotton FOR UPDATE",
+            nativeQuery = true)
+    Optional<StockRow> lockStock(@Param("color") String color, @Param("cotton") int cotton);
+
+    @Query(value = "INSERT INTO socks (color, cotton, quantity) VALUES (:color, :cotton, :quantity) " +
+            "ON CONFLICT (color, cotton) DO UPDATE SET quantity = socks.quantity + EXCLUDED.quantity " +
+            "RETURNING id, quantity", nativeQuery = true)
+    @Transactional
+    StockRow upsertStock(@Param("color") String color,
+                         @Param("cotton") int cotton,
+                         @Param("quantity") int quantity);
+
+    @Modifying
+    @Query(value = "UPDATE socks SET quantity = quantity + :delta WHERE id = :id", nativeQuery = true)
+    @Transactional
+    int addQuantity(@Param("id") Long id, @Param("delta") int delta);
 }
@@ -0,0 +1,27 @@
+package com.shop.socks.repository;
+
+import com.shop.socks.model.SocksKey;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface SocksRepositoryCustom {
+
+    //Потоковый обход выборки без создания сущностей; цвета в переданных строках интернированы в пределах обхода,
+    //так что строки одного цвета ссылаются на один объект String
+    void scanFiltered(String color, Integer minCotton, Integer maxCotton, String sortBy, StockRowCallback callback);
+
+    //То же одним запросом с курсором БД: память не зависит от размера выборки (для потоковой выдачи ответа)
+    void streamFiltered(String color, Integer minCotton, Integer maxCotton, String sortBy, StockRowCallback callback);
+
+    //Не больше limit строк после курсора (null - с начала) в порядке (color, cotton, id) или (cotton, color, id)
+    void scanPage(String color, Integer minCotton, Integer maxCotton, boolean byCotton, StockCursor after,
+                  int limit, StockRowCallback callback);
+
+    long sumQuantity(String color, Integer minCotton, Integer maxCotton);
+
+    BatchUpsertResult upsertQuantities(Map<SocksKey, Integer> quantities, int chunkSize);
+
+    //Остатки существующих артикулов из списка; строки блокируются до конца транзакции
+    Map<SocksKey, Integer> lockQuantities(Collection<SocksKey> keys);
+}
@@ -0,0 +1,284 @@
+package com.shop.socks.repository;
+
+import com.shop.socks.model.Socks;
+import com.shop.socks.model.SocksKey;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class SocksRepositoryImpl implements SocksRepositoryCustom {
+
+    //PostgreSQL ограничивает запрос 65535 параметрами, на строку приходится три
+    private static final int MAX_UPSERT_ROWS = 65535 / 3;
+    private static final String UPSERT_PREFIX = "INSERT INTO socks (color, cotton, quantity) VALUES ";
+    private static final String UPSERT_SUFFIX = " ON CONFLICT (color, cotton) " +
+            "DO UPDATE SET quantity = socks.quantity + EXCLUDED.quantity RETURNING (xmax = 0)";
+    private static final String LOCK_QUANTITIES = "SELECT s.id FROM socks s " +
+            "JOIN unnest(?::text[], ?::int[]) AS k(color, cotton) ON s.color = k.color AND s.cotton = k.cotton " +
+            "ORDER BY s.color COLLATE \"C\", s.cotton FOR UPDATE OF s";
+    //Остаток читается отдельным запросом после блокировки, чтобы учесть движения журнала,
+    //зафиксированные, пока пакет ждал блокировку (socks.stock.write-mode=ledger)
+    private static final String READ_QUANTITIES = "SELECT s.color, s.cotton, " + StockLedgerRepository.BALANCE +
+            " FROM socks s " +
+            "JOIN unnest(?::text[], ?::int[]) AS k(color, cotton) ON s.color = k.color AND s.cotton = k.cotton";
+    private static final String SCAN_PREFIX = "SELECT id, color, cotton, quantity FROM socks";
+    //Драйвер PostgreSQL читает результат порциями по fetchSize только внутри транзакции
+    private static final int SCAN_FETCH_SIZE = 10_000;
+    //Оценка числа строк по статистике планировщика, без полного подсчета
+    private static final String ESTIMATE_ROWS =
+            "SELECT GREATEST(reltuples, 0)::bigint FROM pg_class WHERE oid = 'socks'::regclass";
+    private static final long ESTIMATE_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    //Порядок блокировки строк: COLLATE "C" в LOCK_QUANTITIES сравнивает цвета по кодам символов, как String
+    private static final Comparator<SocksKey> LOCK_ORDER =
+            Comparator.comparing(SocksKey::color).thenComparingInt(SocksKey::cotton);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ParallelStockScanner parallelStockScanner;
+
+    private volatile long tableRowsEstimate;
+    private volatile long estimatedAt = System.nanoTime() - ESTIMATE_TTL_NANOS - 1;
+
+    public SocksRepositoryImpl(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                               ParallelStockScanner parallelStockScanner) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.parallelStockScanner = parallelStockScanner;
+    }
+
+    //Выборка читается порциями по fetchSize прямо в поля строки, без сущностей Hibernate
+    //и промежуточных списков. Большая выборка без цвета читается параллельно по диапазонам хлопка:
+    //каждая часть читается в своей транзакции на своем соединении, поэтому вызывающий поток не должен
+    //держать соединение, пока ждет части, - иначе одновременные выборки занимают весь пул и ждут друг друга.
+    //Внутри уже открытой транзакции выборка читается одним запросом на ее соединении.
+    //Части - разные снимки БД: строка, у которой между чтениями частей изменили хлопок (PUT), может
+    //попасть в выборку дважды или не попасть совсем
+    @Override
+    public void scanFiltered(String color, Integer minCotton, Integer maxCotton, String sortBy,
+                             StockRowCallback callback) {
+        if (color == null && !TransactionSynchronizationManager.isActualTransactionActive()
+                && parallelStockScanner.shouldSplit(minCotton, maxCotton, tableRowsEstimate())) {
+            parallelStockScanner.scan(minCotton, maxCotton, sortBy, (min, max, sort, rows) -> readOnlyTransaction
+                    .executeWithoutResult(status -> scanRange(null, min, max, sort, rows)), callback);
+            return;
+        }
+        readOnlyTransaction.executeWithoutResult(status -> scanRange(color, minCotton, maxCotton, sortBy, callback));
+    }
+
+    @Override
+    public void streamFiltered(String color, Integer minCotton, Integer maxCotton, String sortBy,
+                               StockRowCallback callback) {
+        readOnlyTransaction.executeWithoutResult(status -> scanRange(color, minCotton, maxCotton, sortBy, callback));
+    }
+
+    //Ключ страницы совпадает с порядком сортировки и уникален, сравнение кортежей в PostgreSQL
+    //продолжает выборку сразу за курсором. Порядок по цвету обслуживается индексом uk_socks_color_cotton,
+    //поэтому цвета здесь сравниваются в правилах сортировки БД, а не побайтово
+    @Override
+    public void scanPage(String color, Integer minCotton, Integer maxCotton, boolean byCotton, StockCursor after,
+                         int limit, StockRowCallback callback) {
+        StringBuilder sql = new StringBuilder(SCAN_PREFIX);
+        List<Object> params = new ArrayList<>(7);
+        appendFilter(sql, params, color, minCotton, maxCotton);
+        String key = byCotton ? "(cotton, color, id)" : "(color, cotton, id)";
+        if (after != null) {
+            sql.append(params.isEmpty() ? " WHERE " : " AND ").append(key).append(" > (?, ?, ?)");
+            params.add(byCotton ? after.cotton() : after.color());
+            params.add(byCotton ? after.color() : after.cotton());
+            params.add(after.id());
+        }
+        sql.append(" ORDER BY ").append(key, 1, key.length() - 1).append(" LIMIT ?");
+        params.add(limit);
+        query(sql.toString(), params, callback);
+    }
+
+    //Цвета сортируются побайтово (COLLATE "C"), чтобы порядок совпадал при последовательном и параллельном чтении
+    private void scanRange(String color, Integer minCotton, Integer maxCotton, String sortBy,
+                           StockRowCallback callback) {
+        StringBuilder sql = new StringBuilder(SCAN_PREFIX);
+        List<Object> params = new ArrayList<>(3);
+        appendFilter(sql, params, color, minCotton, maxCotton);
+        if ("color".equalsIgnoreCase(sortBy)) {
+            sql.append(" ORDER BY color COLLATE \"C\", cotton");
+        } else if ("cotton".equalsIgnoreCase(sortBy)) {
+            sql.append(" ORDER BY cotton, color");
+        }
+        query(sql.toString(), params, callback);
+    }
+
+    //Условия в запрос попадают только переданные, как в filter
+    private static void appendFilter(StringBuilder sql, List<Object> params,
+                                     String color, Integer minCotton, Integer maxCotton) {
+        if (color != null) {
+            sql.append(params.isEmpty() ? " WHERE " : " AND ").append("color = ?");
+            params.add(color);
+        }
+        if (minCotton != null) {
+            sql.append(params.isEmpty() ? " WHERE " : " AND ").append("cotton >= ?");
+            params.add(minCotton);
+        }
+        if (maxCotton != null) {
+            sql.append(params.isEmpty() ? " WHERE " : " AND ").append("cotton <= ?");
+            params.add(maxCotton);
+        }
+    }
+
+    private void query(String sql, List<Object> params, StockRowCallback callback) {
+        Map<String, String> colors = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setFetchSize(SCAN_FETCH_SIZE);
+            for (int i = 0; i < params.size(); i++) {
+                statement.setObject(i + 1, params.get(i));
+            }
+            return statement;
+        }, (RowCallbackHandler) rs -> {
+            String rowColor = rs.getString(2);
+            String interned = colors.putIfAbsent(rowColor, rowColor);
+            callback.row(rs.getLong(1), interned != null ? interned : rowColor, rs.getInt(3), rs.getInt(4));
+        });
+    }
+
+    private long tableRowsEstimate() {
+        if (System.nanoTime() - estimatedAt > ESTIMATE_TTL_NANOS) {
+            Long estimate = jdbcTemplate.queryForObject(ESTIMATE_ROWS, Long.class);
+            tableRowsEstimate = estimate == null ? 0 : estimate;
+            estimatedAt = System.nanoTime();
+        }
+        return tableRowsEstimate;
+    }
+
+    @Override
+    public long sumQuantity(String color, Integer minCotton, Integer maxCotton) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Socks> root = query.from(Socks.class);
+        query.select(cb.coalesce(cb.sumAsLong(root.get("quantity")), 0L))
+                .where(filter(cb, root, color, minCotton, maxCotton));
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    //Многострочный upsert: на чанк уходит один INSERT ... ON CONFLICT вместо отдельного запроса на строку.
+    //xmax = 0 у возвращенной строки означает, что она была вставлена, а не обновлена.
+    //Строки блокируются в порядке (color, cotton), как и в lockQuantities, поэтому параллельные загрузки
+    //и пакеты с пересекающимися артикулами не взаимоблокируются
+    @Override
+    @Transactional
+    public BatchUpsertResult upsertQuantities(Map<SocksKey, Integer> quantities, int chunkSize) {
+        int size = Math.max(1, Math.min(chunkSize, MAX_UPSERT_ROWS));
+        List<Map.Entry<SocksKey, Integer>> sorted = new ArrayList<>(quantities.entrySet());
+        sorted.sort(Map.Entry.comparingByKey(LOCK_ORDER));
+        List<Map.Entry<SocksKey, Integer>> chunk = new ArrayList<>(size);
+        int inserted = 0;
+        int updated = 0;
+        for (Map.Entry<SocksKey, Integer> entry : sorted) {
+            chunk.add(entry);
+            if (chunk.size() == size) {
+                int chunkInserted = upsertChunk(chunk);
+                inserted += chunkInserted;
+                updated += chunk.size() - chunkInserted;
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            int chunkInserted = upsertChunk(chunk);
+            inserted += chunkInserted;
+            updated += chunk.size() - chunkInserted;
+        }
+        return new BatchUpsertResult(inserted, updated);
+    }
+
+    //Два запроса на весь список: артикулы передаются двумя массивами. Строки блокируются в порядке
+    //(color, cotton), как и в upsertQuantities, поэтому параллельные пакеты и загрузки с пересекающимися
+    //артикулами не взаимоблокируются
+    @Override
+    @Transactional
+    public Map<SocksKey, Integer> lockQuantities(Collection<SocksKey> keys) {
+        Map<SocksKey, Integer> quantities = new HashMap<>();
+        if (keys.isEmpty()) {
+            return quantities;
+        }
+        String[] colors = new String[keys.size()];
+        Integer[] cottons = new Integer[keys.size()];
+        int i = 0;
+        for (SocksKey key : keys) {
+            colors[i] = key.color();
+            cottons[i++] = key.cotton();
+        }
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(LOCK_QUANTITIES);
+            statement.setArray(1, connection.createArrayOf("text", colors));
+            statement.setArray(2, connection.createArrayOf("int4", cottons));
+            return statement;
+        }, (RowCallbackHandler) rs -> { });
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(READ_QUANTITIES);
+            statement.setArray(1, connection.createArrayOf("text", colors));
+            statement.setArray(2, connection.createArrayOf("int4", cottons));
+            return statement;
+        }, (RowCallbackHandler) rs -> quantities.put(new SocksKey(rs.getString(1), rs.getInt(2)), rs.getInt(3)));
+        return quantities;
+    }
+
+    //Возвращает количество вставленных строк чанка
+    private int upsertChunk(List<Map.Entry<SocksKey, Integer>> chunk) {
+        StringBuilder sql = new StringBuilder(UPSERT_PREFIX.length() + UPSERT_SUFFIX.length() + chunk.size() * 11);
+        sql.append(UPSERT_PREFIX);
+        Object[] params = new Object[chunk.size() * 3];
+        int i = 0;
+        for (Map.Entry<SocksKey, Integer> entry : chunk) {
+            sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+            params[i++] = entry.getKey().color();
+            params[i++] = entry.getKey().cotton();
+            params[i++] = entry.getValue();
+        }
+        sql.append(UPSERT_SUFFIX);
+        List<Boolean> insertedFlags = jdbcTemplate.queryForList(sql.toString(), Boolean.class, params);
+        int inserted = 0;
+        for (Boolean flag : insertedFlags) {
+            if (Boolean.TRUE.equals(flag)) {
+                inserted++;
+            }
+        }
+        return inserted;
+    }
+
+    //В запрос попадают только переданные условия, поэтому при заданном цвете
+    //используется индекс uk_socks_color_cotton (color, cotton)
+    private Predicate[] filter(CriteriaBuilder cb, Root<Socks> root,
+                               String color, Integer minCotton, Integer maxCotton) {
+        List<Predicate> predicates = new ArrayList<>(3);
+        if (color != null) {
+            predicates.add(cb.equal(root.get("color"), color));
+        }
+        if (minCotton != null) {
+            predicates.add(cb.greaterThanOrEqualTo(root.get("cotton"), minCotton));
+        }
+        if (maxCotton != null) {
+            predicates.add(cb.lessThanOrEqualTo(root.get("cotton"), maxCotton));
+        }
+        return predicates.toArray(new Predicate[0]);
+    }
+}
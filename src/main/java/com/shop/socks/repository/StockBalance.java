@@ -0,0 +1,5 @@
+package com.shop.socks.repository;
+
+//Остаток позиции в журнальном режиме: снимок в строке socks плюс еще не свернутые движения журнала
+public record StockBalance(long socksId, int quantity) {
+}
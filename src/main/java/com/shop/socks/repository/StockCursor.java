@@ -0,0 +1,28 @@
+package com.shop.socks.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+//Позиция постраничного обхода: последняя отданная строка по ключу (color, cotton, id).
+//Для клиента кодируется непрозрачной строкой вместе с порядком сортировки, под который выдана
+public record StockCursor(boolean byCotton, String color, int cotton, long id) {
+
+    public String encode() {
+        String raw = (byCotton ? "t:" : "c:") + cotton + ":" + id + ":" + color;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    //Цвет идет последним, поэтому может содержать двоеточия
+    public static StockCursor decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 4);
+            if (parts.length == 4 && (parts[0].equals("t") || parts[0].equals("c"))) {
+                return new StockCursor(parts[0].equals("t"), parts[3],
+                        Integer.parseInt(parts[1]), Long.parseLong(parts[2]));
+            }
+        } catch (IllegalArgumentException e) { //В том числе NumberFormatException и ошибки Base64
+            throw new IllegalArgumentException("Некорректный курсор: " + cursor, e);
+        }
+        throw new IllegalArgumentException("Некорректный курсор: " + cursor);
+    }
+}
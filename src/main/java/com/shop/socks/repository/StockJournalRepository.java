@@ -0,0 +1,71 @@
+package com.shop.socks.repository;
+
+import com.shop.socks.model.SocksKey;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.Map;
+
+//Сброс локального журнала движений (socks.stock.write-mode=write-behind) в таблицу socks:
+//суммарные изменения артикулов и номер последней учтенной записи пишутся одной транзакцией
+@Repository
+public class StockJournalRepository {
+
+    private static final String INIT_STATE = "INSERT INTO socks_journal_state (node_id, flushed_seq) VALUES (?, 0) " +
+            "ON CONFLICT (node_id) DO NOTHING";
+    private static final String LOCK_STATE = "SELECT flushed_seq FROM socks_journal_state WHERE node_id = ? " +
+            "FOR UPDATE";
+    private static final String FLUSHED_SEQ = "SELECT flushed_seq FROM socks_journal_state WHERE node_id = ?";
+    //Строка артикула создается при первом приходе, upsert нужен для повтора журнала на пустой БД
+    private static final String APPLY = "INSERT INTO socks (color, cotton, quantity) " +
+            "SELECT * FROM unnest(?::text[], ?::int[], ?::int[]) " +
+            "ON CONFLICT (color, cotton) DO UPDATE SET quantity = socks.quantity + EXCLUDED.quantity";
+    private static final String SET_STATE = "UPDATE socks_journal_state SET flushed_seq = ? WHERE node_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public StockJournalRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public long flushedSeq(String nodeId) {
+        List<Long> flushed = jdbcTemplate.queryForList(FLUSHED_SEQ, Long.class, nodeId);
+        return flushed.isEmpty() ? 0 : flushed.get(0);
+    }
+
+    //Изменения до записи seq включительно. Уже учтенная граница повторно не применяется
+    //(например, если ответ на фиксацию потерялся и сброс повторяется). false - изменения не внесены
+    @Transactional
+    public boolean apply(String nodeId, long seq, Map<SocksKey, Integer> deltas) {
+        jdbcTemplate.update(INIT_STATE, nodeId);
+        Long flushedSeq = jdbcTemplate.queryForObject(LOCK_STATE, Long.class, nodeId);
+        if (flushedSeq != null && flushedSeq >= seq) {
+            return false;
+        }
+        if (!deltas.isEmpty()) {
+            String[] colors = new String[deltas.size()];
+            Integer[] cottons = new Integer[deltas.size()];
+            Integer[] values = new Integer[deltas.size()];
+            int i = 0;
+            for (Map.Entry<SocksKey, Integer> entry : deltas.entrySet()) {
+                colors[i] = entry.getKey().color();
+                cottons[i] = entry.getKey().cotton();
+                values[i++] = entry.getValue();
+            }
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(APPLY);
+                statement.setArray(1, connection.createArrayOf("text", colors));
+                statement.setArray(2, connection.createArrayOf("int4", cottons));
+                statement.setArray(3, connection.createArrayOf("int4", values));
+                return statement;
+            });
+        }
+        jdbcTemplate.update(SET_STATE, seq, nodeId);
+        return true;
+    }
+}
@@ -0,0 +1,157 @@
+package com.shop.socks.repository;
+
+import com.shop.socks.model.SocksKey;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+//Запросы журнала движений (socks.stock.write-mode=ledger). Остаток позиции - количество в строке socks
+//плюс движения после границы свертки; оба значения читаются одним запросом, то есть из одного снимка БД.
+//Дописывающие транзакции держат разделяемую рекомендательную блокировку журнала, а свертка
+//фиксирует свою границу под исключительной: к этому моменту все движения с меньшими id уже зафиксированы,
+//и движение, зафиксированное позже, не окажется ниже границы
+@Repository
+public class StockLedgerRepository {
+
+    //Пространство рекомендательных блокировок из двух int не пересекается с блокировками по одному bigint
+    private static final int LEDGER_LOCK_CLASS = 0x736F636B;
+    private static final String SHARED_LOCK = "SELECT pg_advisory_xact_lock_shared(?, 0)";
+    private static final String EXCLUSIVE_LOCK = "SELECT pg_advisory_xact_lock(?, 0)";
+    private static final String KEYS_JOIN = " JOIN unnest(?::text[], ?::int[]) AS k(color, cotton) " +
+            "ON s.color = k.color AND s.cotton = k.cotton";
+    private static final String APPLIED_ID = "COALESCE((SELECT applied_id FROM socks_ledger_state WHERE id = 1), 0)";
+    //Остаток с учетом несвернутых движений; используется и пакетами движений (SocksRepositoryImpl)
+    static final String BALANCE = "s.quantity + COALESCE((SELECT SUM(m.delta) FROM socks_movements m " +
+            "WHERE m.socks_id = s.id AND m.id > " + APPLIED_ID + "), 0)";
+    private static final String BALANCES = "SELECT s.id, s.color, s.cotton, " + BALANCE + " FROM socks s" + KEYS_JOIN;
+    private static final String LOCK_ROWS = "SELECT s.id FROM socks s" + KEYS_JOIN + " ORDER BY s.id FOR UPDATE OF s";
+    private static final String CREATE_ROWS = "INSERT INTO socks (color, cotton, quantity) " +
+            "SELECT color, cotton, 0 FROM unnest(?::text[], ?::int[]) AS k(color, cotton) " +
+            "ON CONFLICT (color, cotton) DO NOTHING";
+    private static final String APPEND = "INSERT INTO socks_movements (socks_id, delta) " +
+            "SELECT * FROM unnest(?::bigint[], ?::int[])";
+    private static final String MAX_ID = "SELECT COALESCE(MAX(id), 0) FROM socks_movements";
+    private static final String INIT_STATE = "INSERT INTO socks_ledger_state (id, applied_id) VALUES (1, 0) " +
+            "ON CONFLICT (id) DO NOTHING";
+    private static final String LOCK_STATE = "SELECT applied_id FROM socks_ledger_state WHERE id = 1 FOR UPDATE";
+    private static final String FOLD = "UPDATE socks s SET quantity = s.quantity + t.delta " +
+            "FROM (SELECT socks_id, SUM(delta) AS delta FROM socks_movements WHERE id > ? AND id <= ? " +
+            "GROUP BY socks_id) t WHERE s.id = t.socks_id AND t.delta <> 0 RETURNING s.color, s.cotton";
+    private static final String SET_STATE = "UPDATE socks_ledger_state SET applied_id = ? WHERE id = 1";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public StockLedgerRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    //Начало дописывающей транзакции
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void beginAppend() {
+        jdbcTemplate.queryForList(SHARED_LOCK, LEDGER_LOCK_CLASS);
+    }
+
+    //Строки артикулов блокируются в порядке id, как и в пакетах движений, поэтому отпуски
+    //из журнала и пакеты не взаимоблокируются и не списывают один остаток дважды
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void lockRows(Collection<SocksKey> keys) {
+        if (!keys.isEmpty()) {
+            jdbcTemplate.query(connection -> keysStatement(connection, LOCK_ROWS, keys),
+                    (RowCallbackHandler) rs -> { });
+        }
+    }
+
+    //Строки с нулевым снимком для новых артикулов: движения журнала ссылаются на id позиции
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void createRows(Collection<SocksKey> keys) {
+        if (!keys.isEmpty()) {
+            jdbcTemplate.update(connection -> keysStatement(connection, CREATE_ROWS, keys));
+        }
+    }
+
+    //Вызывается после lockRows: запрос видит движения, зафиксированные до получения блокировок
+    public Map<SocksKey, StockBalance> balances(Collection<SocksKey> keys) {
+        Map<SocksKey, StockBalance> balances = new HashMap<>();
+        if (!keys.isEmpty()) {
+            jdbcTemplate.query(connection -> keysStatement(connection, BALANCES, keys), (RowCallbackHandler) rs ->
+                    balances.put(new SocksKey(rs.getString(2), rs.getInt(3)),
+                            new StockBalance(rs.getLong(1), rs.getInt(4))));
+        }
+        return balances;
+    }
+
+    public Optional<StockBalance> balance(SocksKey key) {
+        return Optional.ofNullable(balances(List.of(key)).get(key));
+    }
+
+    //Все движения пачки одним запросом
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void append(long[] socksIds, int[] deltas) {
+        Long[] ids = new Long[socksIds.length];
+        Integer[] values = new Integer[deltas.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = socksIds[i];
+            values[i] = deltas[i];
+        }
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(APPEND);
+            statement.setArray(1, connection.createArrayOf("int8", ids));
+            statement.setArray(2, connection.createArrayOf("int4", values));
+            return statement;
+        });
+    }
+
+    //Граница следующей свертки: движения с id не больше нее зафиксированы
+    @Transactional
+    public long sealedId() {
+        jdbcTemplate.queryForList(EXCLUSIVE_LOCK, LEDGER_LOCK_CLASS);
+        Long maxId = jdbcTemplate.queryForObject(MAX_ID, Long.class);
+        return maxId == null ? 0 : maxId;
+    }
+
+    //Перенос движений до границы в количество строк socks; остатки при этом не меняются.
+    //Строка состояния блокируется, поэтому экземпляры приложения сворачивают журнал по очереди.
+    //Возвращает артикулы, у которых изменился снимок
+    @Transactional
+    public List<SocksKey> fold(long upToId) {
+        jdbcTemplate.update(INIT_STATE);
+        Long appliedId = jdbcTemplate.queryForObject(LOCK_STATE, Long.class);
+        List<SocksKey> folded = new ArrayList<>();
+        if (appliedId == null || appliedId >= upToId) {
+            return folded;
+        }
+        jdbcTemplate.query(FOLD, (RowCallbackHandler) rs -> folded.add(new SocksKey(rs.getString(1), rs.getInt(2))),
+                appliedId, upToId);
+        jdbcTemplate.update(SET_STATE, upToId);
+        return folded;
+    }
+
+    private static PreparedStatement keysStatement(Connection connection, String sql, Collection<SocksKey> keys)
+            throws SQLException {
+        String[] colors = new String[keys.size()];
+        Integer[] cottons = new Integer[keys.size()];
+        int i = 0;
+        for (SocksKey key : keys) {
+            colors[i] = key.color();
+            cottons[i++] = key.cotton();
+        }
+        PreparedStatement statement = connection.prepareStatement(sql);
+        statement.setArray(1, connection.createArrayOf("text", colors));
+        statement.setArray(2, connection.createArrayOf("int4", cottons));
+        return statement;
+    }
+}
@@ -0,0 +1,10 @@
+package com.shop.socks.repository;
+
+//Остаток строки склада без загрузки сущности: значения всегда берутся из ответа БД,
+//а не из контекста персистентности
+public interface StockRow {
+
+    Long getId();
+
+    int getQuantity();
+}
@@ -0,0 +1,8 @@
+package com.shop.socks.repository;
+
+//Строка остатков, переданная по полям: при обходе больших выборок не создаются промежуточные объекты
+@FunctionalInterface
+public interface StockRowCallback {
+
+    void row(long id, String color, int cotton, int quantity);
+}
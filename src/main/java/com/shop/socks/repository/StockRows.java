@@ -0,0 +1,112 @@
+package com.shop.socks.repository;
+
+import java.util.Arrays;
+
+//Буфер строк выборки по столбцам: части параллельного обхода собираются без объекта на строку
+final class StockRows implements StockRowCallback {
+
+    private long[] ids;
+    private String[] colors;
+    private int[] cottons;
+    private int[] quantities;
+    private int size;
+
+    StockRows() {
+        this(64);
+    }
+
+    private StockRows(int capacity) {
+        ids = new long[capacity];
+        colors = new String[capacity];
+        cottons = new int[capacity];
+        quantities = new int[capacity];
+    }
+
+    @Override
+    public void row(long id, String color, int cotton, int quantity) {
+        if (size == ids.length) {
+            int capacity = Math.max(64, size + (size >> 1));
+            ids = Arrays.copyOf(ids, capacity);
+            colors = Arrays.copyOf(colors, capacity);
+            cottons = Arrays.copyOf(cottons, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+        }
+        ids[size] = id;
+        colors[size] = color;
+        cottons[size] = cotton;
+        quantities[size] = quantity;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(StockRowCallback callback) {
+        for (int i = 0; i < size; i++) {
+            callback.row(ids[i], colors[i], cottons[i], quantities[i]);
+        }
+    }
+
+    static StockRows concat(StockRows first, StockRows second) {
+        if (second.size == 0) {
+            return first;
+        }
+        if (first.size == 0) {
+            return second;
+        }
+        StockRows result = new StockRows(first.size + second.size);
+        first.forEach(result);
+        second.forEach(result);
+        return result;
+    }
+
+    //Слияние двух частей, упорядоченных по (color, cotton) в порядке кодовых точек цвета
+    static StockRows mergeByColor(StockRows first, StockRows second) {
+        if (second.size == 0) {
+            return first;
+        }
+        if (first.size == 0) {
+            return second;
+        }
+        StockRows result = new StockRows(first.size + second.size);
+        int i = 0;
+        int j = 0;
+        while (i < first.size && j < second.size) {
+            int order = compareCodePoints(first.colors[i], second.colors[j]);
+            if (order == 0) {
+                order = Integer.compare(first.cottons[i], second.cottons[j]);
+            }
+            if (order <= 0) {
+                result.row(first.ids[i], first.colors[i], first.cottons[i], first.quantities[i]);
+                i++;
+            } else {
+                result.row(second.ids[j], second.colors[j], second.cottons[j], second.quantities[j]);
+                j++;
+            }
+        }
+        for (; i < first.size; i++) {
+            result.row(first.ids[i], first.colors[i], first.cottons[i], first.quantities[i]);
+        }
+        for (; j < second.size; j++) {
+            result.row(second.ids[j], second.colors[j], second.cottons[j], second.quantities[j]);
+        }
+        return result;
+    }
+
+    //Порядок кодовых точек совпадает с побайтовым порядком UTF-8, то есть с COLLATE "C" в PostgreSQL
+    static int compareCodePoints(String first, String second) {
+        int i = 0;
+        int j = 0;
+        while (i < first.length() && j < second.length()) {
+            int a = first.codePointAt(i);
+            int b = second.codePointAt(j);
+            if (a != b) {
+                return Integer.compare(a, b);
+            }
+            i += Character.charCount(a);
+            j += Character.charCount(b);
+        }
+        return Integer.compare(first.length() - i, second.length() - j);
+    }
+}
@@ -0,0 +1,16 @@
+package com.shop.socks.service;
+
+import com.shop.socks.dto.BatchJobDto;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+public interface BatchJobService {
+
+    BatchJobDto submit(MultipartFile file);
+
+    Optional<BatchJobDto> getJob(String jobId);
+
+    Optional<Path> getErrorReport(String jobId);
+}
@@ -0,0 +1,19 @@
+package com.shop.socks.service;
+
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.dto.SocksDto;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+//Неблокирующий вариант контракта SocksService для прихода, отпуска и выборок
+public interface ReactiveSocksService {
+
+    Mono<LotOfSocksDto> addSocks(SocksDto socksDto);
+
+    //Пустой результат - на складе недостаточно носков
+    Mono<LotOfSocksDto> removeSocks(SocksDto socksDto);
+
+    Flux<SocksDto> getFilteredSocks(String color, Integer minCotton, Integer maxCotton, String sortBy);
+
+    Mono<Long> getTotalQuantity(String color, Integer minCotton, Integer maxCotton);
+}
@@ -1,7 +1,11 @@
 package com.shop.socks.service;
 
+import com.shop.socks.dto.BulkMovementResultDto;
+import com.shop.socks.dto.BulkMovementsDto;
 import com.shop.socks.dto.LotOfSocksDto;
 import com.shop.socks.dto.SocksDto;
+import com.shop.socks.dto.SocksPageDto;
+import com.shop.socks.repository.StockRowCallback;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
@@ -14,7 +18,17 @@ public interface SocksService {
 
     List<SocksDto> getFilteredSocks(String color, Integer minCotton, Integer maxCotton, String sortBy);
 
+    SocksPageDto getSocksPage(String color, Integer minCotton, Integer maxCotton, String sortBy,
+                              String cursor, Integer limit);
+
+    void streamFilteredSocks(String color, Integer minCotton, Integer maxCotton, String sortBy,
+                             StockRowCallback callback);
+
+    long getTotalQuantity(String color, Integer minCotton, Integer maxCotton);
+
     SocksDto updateSocks(Long id, SocksDto socksDto);
 
+    BulkMovementResultDto applyMovements(BulkMovementsDto bulkMovementsDto);
+
     LotOfSocksDto processBatchOfSocks(MultipartFile file);
 }
@@ -0,0 +1,30 @@
+package com.shop.socks.service;
+
+import com.shop.socks.cache.CachedStock;
+import com.shop.socks.model.Socks;
+import com.shop.socks.model.SocksKey;
+
+import java.util.Collection;
+import java.util.Optional;
+
+//Способ изменения остатка при приходе и отпуске; реализация выбирается свойством socks.stock.write-mode
+public interface StockWriter {
+
+    Socks increment(SocksKey key, int quantity);
+
+    //Пустой результат - на складе недостаточно носков, остаток не изменен
+    Optional<Socks> decrement(SocksKey key, int quantity);
+
+    //Текущий остаток артикула для загрузки в кэш
+    CachedStock load(SocksKey key);
+
+    //Вызывается под блокировкой артикула перед перезаписью количества в строке socks (изменение данных носков).
+    //Режимы, у которых часть остатка хранится вне строки, переносят ее в строку
+    default void settle(SocksKey key) {
+    }
+
+    //Вызывается в транзакции пакета движений до блокировки строк его артикулов. Режимы, у которых часть
+    //остатка хранится вне строки, переносят ее в строку и не меняют остатки этих артикулов до конца транзакции
+    default void settleForTransaction(Collection<SocksKey> keys) {
+    }
+}
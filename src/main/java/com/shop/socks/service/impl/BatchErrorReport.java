@@ -0,0 +1,73 @@
+package com.shop.socks.service.impl;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+//Отчет об отклоненных строках загрузки в CSV: строка файла (считая заголовок), значения и причина.
+//Пишется потоково по мере записи порций; файл открывается при первой отклоненной строке
+final class BatchErrorReport implements Closeable {
+
+    private static final String HEADER = "line,color,cotton,quantity,error\n";
+
+    private final Path path; //null - отчет не ведется
+    private BufferedWriter writer;
+
+    BatchErrorReport(Path path) {
+        this.path = path;
+    }
+
+    void write(BatchRowChunk rows) throws IOException {
+        if (path == null) {
+            return;
+        }
+        if (writer == null) {
+            writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+            writer.write(HEADER);
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            String message = rows.message(i);
+            if (message == null) {
+                continue;
+            }
+            writer.write(Long.toString(rows.rowNumber(i) + 1));
+            writer.write(',');
+            if (rows.parsed(i)) {
+                writeField(rows.color(i));
+                writer.write(',');
+                writer.write(Integer.toString(rows.cotton(i)));
+                writer.write(',');
+                writer.write(Integer.toString(rows.quantity(i)));
+            } else {
+                writer.write(",,");
+            }
+            writer.write(',');
+            writeField(message);
+            writer.write('\n');
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    private void writeField(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,105 @@
+package com.shop.socks.service.impl;
+
+import com.shop.socks.dto.BatchJobDto;
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.parser.BatchFormat;
+
+import java.nio.file.Path;
+
+//Фоновая загрузка одного файла партии
+class BatchJob {
+
+    enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id;
+    private final String fileName;
+    private final Path file;
+    private final BatchFormat format;
+    private final BatchProgress progress;
+
+    private volatile Status status = Status.QUEUED;
+    private volatile long startedNanos;
+    private volatile long finishedNanos;
+    private volatile LotOfSocksDto result;
+    private volatile String message;
+
+    BatchJob(String id, String fileName, Path file, BatchFormat format, Path errorReport) {
+        this.id = id;
+        this.fileName = fileName;
+        this.file = file;
+        this.format = format;
+        this.progress = new BatchProgress(errorReport);
+    }
+
+    String getId() {
+        return id;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    BatchFormat getFormat() {
+        return format;
+    }
+
+    BatchProgress getProgress() {
+        return progress;
+    }
+
+    //Отчет доступен после завершения задачи, если в файле были отклоненные строки
+    Path getErrorReport() {
+        return isFinished() && progress.getRowsInvalid() > 0 ? progress.getErrorReport() : null;
+    }
+
+    boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    long getFinishedNanos() {
+        return finishedNanos;
+    }
+
+    void started() {
+        startedNanos = System.nanoTime();
+        status = Status.RUNNING;
+    }
+
+    void completed(LotOfSocksDto result) {
+        this.result = result;
+        finishedNanos = System.nanoTime();
+        status = Status.COMPLETED;
+    }
+
+    void failed(String message) {
+        this.message = message;
+        progress.error();
+        finishedNanos = System.nanoTime();
+        status = Status.FAILED;
+    }
+
+    BatchJobDto toDto() {
+        BatchJobDto dto = new BatchJobDto();
+        dto.setId(id);
+        dto.setFileName(fileName);
+        dto.setStatus(status.name());
+        dto.setRowsParsed(progress.getRowsParsed());
+        dto.setRowsPersisted(progress.getRowsPersisted());
+        dto.setRowsInvalid(progress.getRowsInvalid());
+        if (getErrorReport() != null) {
+            dto.setErrorReport("/api/socks/batch/" + id + "/errors");
+        }
+        dto.setErrors(progress.getErrors());
+        dto.setMessage(message);
+        dto.setResult(result);
+        long started = startedNanos;
+        if (started != 0) {
+            long end = isFinished() ? finishedNanos : System.nanoTime();
+            double seconds = Math.max(end - started, 1) / 1e9;
+            dto.setRowsPerSecond(progress.getRowsParsed() / seconds);
+        }
+        return dto;
+    }
+}
@@ -0,0 +1,164 @@
+package com.shop.socks.service.impl;
+
+import com.shop.socks.dto.BatchJobDto;
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.parser.BatchFormat;
+import com.shop.socks.service.BatchJobService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Фоновые загрузки партий. Пул ограничен: одновременно выполняется не больше maxConcurrentJobs задач,
+//поэтому загрузки занимают не больше стольких же соединений из пула БД и не вытесняют приход/отпуск.
+//Место (поток или очередь) занимается до копирования файла: когда заняты и потоки, и очередь, новая задача
+//отклоняется (RejectedExecutionException) без записи загрузки на диск
+@Service
+@Slf4j
+public class BatchJobServiceImpl implements BatchJobService {
+
+    private final SocksServiceImpl socksServiceImpl;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore slots; //Выполняемые и ожидающие задачи
+    private final int maxRetainedJobs;
+    private final Map<String, BatchJob> jobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public BatchJobServiceImpl(SocksServiceImpl socksServiceImpl,
+                               @Value("${socks.batch.async.max-concurrent-jobs:2}") int maxConcurrentJobs,
+                               @Value("${socks.batch.async.queue-capacity:8}") int queueCapacity,
+                               @Value("${socks.batch.async.max-retained-jobs:100}") int maxRetainedJobs) {
+        this.socksServiceImpl = socksServiceImpl;
+        this.maxRetainedJobs = maxRetainedJobs;
+        this.slots = new Semaphore(maxConcurrentJobs + queueCapacity);
+        AtomicInteger threadNumber = new AtomicInteger();
+        //Очередь ограничена местами slots, поэтому сама очередь пула без лимита
+        this.executor = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "socks-batch-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Override
+    public BatchJobDto submit(MultipartFile file) {
+        log.info("Постановка в очередь загрузки партии из файла: {}", file.getOriginalFilename());
+        if (file.isEmpty()) {
+            log.error("Файл пустой: {}", file.getOriginalFilename());
+            throw new IllegalArgumentException("Файл не должен быть пустым");
+        }
+
+        if (!slots.tryAcquire()) {
+            log.warn("Очередь загрузок заполнена, файл отклонен: {}", file.getOriginalFilename());
+            throw new RejectedExecutionException("Очередь загрузок заполнена");
+        }
+        Path tempFile = null;
+        Path errorReport = null;
+        boolean queued = false;
+        try {
+            //Временные файлы multipart удаляются после ответа, поэтому загрузка копируется до постановки в очередь
+            tempFile = socksServiceImpl.copyToTempFile(file);
+            errorReport = Files.createTempFile("socks-batch-errors-", ".csv");
+
+            BatchJob job = new BatchJob(UUID.randomUUID().toString(), file.getOriginalFilename(), tempFile,
+                    BatchFormat.detect(file.getContentType(), file.getOriginalFilename()), errorReport);
+            evictFinishedJobs();
+            jobs.put(job.getId(), job);
+            try {
+                executor.execute(() -> run(job));
+            } catch (RejectedExecutionException e) { //Пул остановлен
+                jobs.remove(job.getId());
+                throw e;
+            }
+            queued = true;
+            return job.toDto();
+        } catch (IOException e) {
+            log.error("Ошибка при чтении файла: {}", e.getMessage());
+            throw new RuntimeException("Ошибка при чтении файла", e);
+        } finally {
+            if (!queued) {
+                slots.release();
+                socksServiceImpl.deleteQuietly(tempFile);
+                socksServiceImpl.deleteQuietly(errorReport);
+            }
+        }
+    }
+
+    @Override
+    public Optional<BatchJobDto> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(BatchJob::toDto);
+    }
+
+    @Override
+    public Optional<Path> getErrorReport(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId))
+                .map(BatchJob::getErrorReport)
+                .filter(Files::exists);
+    }
+
+    private void run(BatchJob job) {
+        job.started();
+        log.info("Загрузка партии {} начата", job.getId());
+        try {
+            LotOfSocksDto result = socksServiceImpl.importBatch(job.getFile(), job.getFormat(), job.getProgress());
+            job.completed(result);
+            log.info("Загрузка партии {} завершена: {}", job.getId(), result);
+            if (job.getProgress().getRowsInvalid() > 0) {
+                log.warn("Загрузка партии {}: отклонено строк {}, отчет {}", job.getId(),
+                        job.getProgress().getRowsInvalid(), job.getProgress().getErrorReport());
+            }
+        } catch (Exception e) {
+            log.error("Ошибка при загрузке партии {}: {}", job.getId(), e.getMessage());
+            job.failed(e.getMessage());
+        } finally {
+            slots.release();
+            socksServiceImpl.deleteQuietly(job.getFile());
+        }
+    }
+
+    //Храним не больше maxRetainedJobs задач, в первую очередь удаляя давно завершенные вместе с отчетами
+    private void evictFinishedJobs() {
+        int excess = jobs.size() - maxRetainedJobs + 1;
+        if (excess <= 0) {
+            return;
+        }
+        jobs.values().stream()
+                .filter(BatchJob::isFinished)
+                .sorted(Comparator.comparingLong(BatchJob::getFinishedNanos))
+                .limit(excess)
+                .toList()
+                .forEach(this::remove);
+    }
+
+    private void remove(BatchJob job) {
+        jobs.remove(job.getId());
+        socksServiceImpl.deleteQuietly(job.getProgress().getErrorReport());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        jobs.values().forEach(this::remove);
+    }
+}
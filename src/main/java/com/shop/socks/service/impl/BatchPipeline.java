@@ -0,0 +1,233 @@
+package com.shop.socks.service.impl;
+
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.model.SocksKey;
+import com.shop.socks.parser.SocksRowHandler;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Загрузка партии тремя стадиями. Поток разбора читает файл и собирает строки в порции
+//по socks.batch.pipeline.chunk-rows, пул проверки (socks.batch.pipeline.validators потоков) проверяет порции
+//и суммирует их по артикулу, вызывающий поток в порядке порций сливает суммы со складом и дописывает
+//отклоненные строки в отчет. Очередь порций ограничена (socks.batch.pipeline.queue-chunks): разбор
+//не уходит вперед записи больше чем на queue-chunks порций. Ошибочная строка не прерывает загрузку
+@Component
+public class BatchPipeline implements DisposableBean {
+
+    //Признак конца разбора в очереди порций
+    private static final Future<CheckedChunk> END = CompletableFuture.completedFuture(null);
+    private static final String QUANTITY_OVERFLOW = "Суммарное количество артикула слишком велико";
+
+    private final ExecutorService parsers;
+    private final ExecutorService validators;
+    private final int queueChunks;
+    private final int chunkRows;
+
+    @Autowired
+    public BatchPipeline(@Value("${socks.batch.pipeline.validators:2}") int validators,
+                         @Value("${socks.batch.pipeline.queue-chunks:8}") int queueChunks,
+                         @Value("${socks.batch.pipeline.chunk-rows:4096}") int chunkRows) {
+        this.queueChunks = Math.max(2, queueChunks);
+        this.chunkRows = chunkRows;
+        //Число потоков разбора ограничено числом одновременных загрузок
+        this.parsers = Executors.newCachedThreadPool(daemonThreads("socks-batch-parse-"));
+        this.validators = Executors.newFixedThreadPool(validators, daemonThreads("socks-batch-check-"));
+    }
+
+    //Разбор файла; выполняется в потоке разбора
+    @FunctionalInterface
+    interface Parser {
+        void parse(SocksRowHandler handler) throws IOException;
+    }
+
+    LotOfSocksDto run(Parser parser, SocksBatchIngest ingest, BatchProgress progress) throws IOException {
+        BlockingQueue<Future<CheckedChunk>> checked = new ArrayBlockingQueue<>(queueChunks);
+        Chunker chunker = new Chunker(checked, progress);
+        Future<?> parsing = parsers.submit(() -> {
+            try {
+                parser.parse(chunker);
+                chunker.finish();
+            } finally {
+                chunker.end();
+            }
+            return null;
+        });
+
+        boolean completed = false;
+        try (BatchErrorReport report = new BatchErrorReport(progress.getErrorReport())) {
+            Future<CheckedChunk> next;
+            while ((next = checked.take()) != END) {
+                CheckedChunk chunk = next.get();
+                ingest.accept(chunk.deltas(), chunk.rows().size() - chunk.invalid(), chunk.invalid());
+                if (chunk.invalid() > 0) {
+                    report.write(chunk.rows());
+                    progress.rowsInvalid(chunk.invalid());
+                }
+            }
+            parsing.get(); //Ошибка формата файла прерывает загрузку; уже слитые со складом порции остаются
+            LotOfSocksDto result = ingest.complete();
+            completed = true;
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Загрузка партии прервана", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Ошибка при загрузке партии", e.getCause());
+        } finally {
+            if (!completed) {
+                chunker.stop();
+                parsing.cancel(true);
+                checked.clear(); //Освобождает поток разбора, ждущий места в очереди
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        parsers.shutdownNow();
+        validators.shutdownNow();
+    }
+
+    //Проверка порции в пуле: строки, разобранные без ошибок, проверяются так же, как приход
+    private static CheckedChunk check(BatchRowChunk rows) {
+        Map<SocksKey, Integer> deltas = new HashMap<>();
+        int invalid = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            String message = rows.message(i);
+            if (message == null) {
+                message = validate(rows.color(i), rows.cotton(i), rows.quantity(i));
+                if (message == null && !add(deltas, new SocksKey(rows.color(i), rows.cotton(i)), rows.quantity(i))) {
+                    message = QUANTITY_OVERFLOW;
+                }
+                rows.reject(i, message);
+            }
+            if (message != null) {
+                invalid++;
+            }
+        }
+        return new CheckedChunk(rows, deltas, invalid);
+    }
+
+    //false - сумма артикула в порции не помещается в int, строка не учитывается
+    private static boolean add(Map<SocksKey, Integer> deltas, SocksKey key, int quantity) {
+        Integer previous = deltas.get(key);
+        try {
+            deltas.put(key, previous == null ? quantity : Math.addExact(previous, quantity));
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    private static String validate(String color, int cotton, int quantity) {
+        if (color == null || color.isBlank()) {
+            return "Не указан цвет";
+        }
+        if (cotton < 0 || cotton > 100) {
+            return "Значение хлопка должно быть в диапазоне: 0-100";
+        }
+        if (quantity <= 0) {
+            return "Количество должно быть положительным";
+        }
+        return null;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private record CheckedChunk(BatchRowChunk rows, Map<SocksKey, Integer> deltas, int invalid) {
+    }
+
+    //Стадия разбора: собирает строки в порции и ставит их проверку в очередь
+    private final class Chunker implements SocksRowHandler {
+
+        private final BlockingQueue<Future<CheckedChunk>> checked;
+        private final BatchProgress progress;
+        private BatchRowChunk chunk = new BatchRowChunk(chunkRows);
+        private volatile boolean stopped;
+
+        private Chunker(BlockingQueue<Future<CheckedChunk>> checked, BatchProgress progress) {
+            this.checked = checked;
+            this.progress = progress;
+        }
+
+        @Override
+        public void onRow(long rowNumber, String color, int cotton, int quantity) {
+            chunk.add(rowNumber, color, cotton, quantity);
+            rowAdded();
+        }
+
+        @Override
+        public void onInvalidRow(long rowNumber, String message) {
+            chunk.addInvalid(rowNumber, message);
+            rowAdded();
+        }
+
+        void finish() {
+            if (chunk.size() > 0) {
+                submit();
+            }
+        }
+
+        void end() throws InterruptedException {
+            if (stopped) {
+                checked.offer(END);
+            } else {
+                checked.put(END);
+            }
+        }
+
+        void stop() {
+            stopped = true;
+        }
+
+        private void rowAdded() {
+            progress.rowParsed();
+            if (chunk.size() == chunkRows) {
+                submit();
+            }
+        }
+
+        private void submit() {
+            if (stopped) {
+                throw new CancellationException("Загрузка партии остановлена");
+            }
+            BatchRowChunk full = chunk;
+            chunk = new BatchRowChunk(chunkRows);
+            try {
+                checked.put(validators.submit(() -> check(full)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Загрузка партии остановлена");
+            }
+        }
+    }
+}
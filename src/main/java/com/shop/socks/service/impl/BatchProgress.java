@@ -0,0 +1,58 @@
+package com.shop.socks.service.impl;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Счетчики хода загрузки партии; читаются конкурентно, пока загрузка идет в фоне
+public class BatchProgress {
+
+    private final AtomicLong rowsParsed = new AtomicLong();
+    private final AtomicLong rowsPersisted = new AtomicLong();
+    private final AtomicLong rowsInvalid = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final Path errorReport; //null - отклоненные строки только подсчитываются
+
+    public BatchProgress() {
+        this(null);
+    }
+
+    public BatchProgress(Path errorReport) {
+        this.errorReport = errorReport;
+    }
+
+    void rowParsed() {
+        rowsParsed.lazySet(rowsParsed.get() + 1); //Пишет только поток разбора
+    }
+
+    void rowsPersisted(long rows) {
+        rowsPersisted.addAndGet(rows);
+    }
+
+    void rowsInvalid(long rows) {
+        rowsInvalid.addAndGet(rows);
+    }
+
+    void error() {
+        errors.incrementAndGet();
+    }
+
+    Path getErrorReport() {
+        return errorReport;
+    }
+
+    public long getRowsParsed() {
+        return rowsParsed.get();
+    }
+
+    public long getRowsPersisted() {
+        return rowsPersisted.get();
+    }
+
+    public long getRowsInvalid() {
+        return rowsInvalid.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+}
@@ -0,0 +1,77 @@
+package com.shop.socks.service.impl;
+
+//Порция строк файла партии по столбцам. Заполняется потоком разбора, затем передается
+//одному потоку проверки и дальше вызывающему потоку через очередь, поэтому синхронизация не нужна
+final class BatchRowChunk {
+
+    private final long[] rowNumbers;
+    private final String[] colors;
+    private final int[] cottons;
+    private final int[] quantities;
+    private final boolean[] parsed;
+    private String[] messages; //Создается при первой отклоненной строке
+    private int size;
+
+    BatchRowChunk(int capacity) {
+        rowNumbers = new long[capacity];
+        colors = new String[capacity];
+        cottons = new int[capacity];
+        quantities = new int[capacity];
+        parsed = new boolean[capacity];
+    }
+
+    void add(long rowNumber, String color, int cotton, int quantity) {
+        rowNumbers[size] = rowNumber;
+        colors[size] = color;
+        cottons[size] = cotton;
+        quantities[size] = quantity;
+        parsed[size] = true;
+        size++;
+    }
+
+    //Строка, которую не удалось разобрать: значения столбцов неизвестны
+    void addInvalid(long rowNumber, String message) {
+        rowNumbers[size] = rowNumber;
+        reject(size, message);
+        size++;
+    }
+
+    void reject(int index, String message) {
+        if (message == null) {
+            return;
+        }
+        if (messages == null) {
+            messages = new String[rowNumbers.length];
+        }
+        messages[index] = message;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long rowNumber(int index) {
+        return rowNumbers[index];
+    }
+
+    boolean parsed(int index) {
+        return parsed[index];
+    }
+
+    String color(int index) {
+        return colors[index];
+    }
+
+    int cotton(int index) {
+        return cottons[index];
+    }
+
+    int quantity(int index) {
+        return quantities[index];
+    }
+
+    //null - строка принята
+    String message(int index) {
+        return messages == null ? null : messages[index];
+    }
+}
@@ -0,0 +1,217 @@
+package com.shop.socks.service.impl;
+
+import com.shop.socks.cache.CachedStock;
+import com.shop.socks.cache.StockCache;
+import com.shop.socks.model.Socks;
+import com.shop.socks.model.SocksKey;
+import com.shop.socks.repository.SocksRepository;
+import com.shop.socks.repository.StockRow;
+import com.shop.socks.service.StockWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+//Объединение записей по горячему артикулу (flat combining). Движения по одному (color, cotton)
+//становятся в очередь артикула; первый освободившийся поток-запросчик забирает накопившиеся
+//за короткое окно движения и применяет их одной транзакцией: блокирует строку, по очереди
+//принимает или отклоняет каждое движение по текущему итогу и записывает в БД одно суммарное изменение.
+//Каждый вызывающий получает собственный результат, отпуск сверх остатка отклоняется так же,
+//как при прямой записи. Включается свойством socks.stock.write-mode=coalescing
+@Component
+@ConditionalOnProperty(name = "socks.stock.write-mode", havingValue = "coalescing")
+@Slf4j
+public class CoalescingStockWriter implements StockWriter {
+
+    private final SocksRepository socksRepository;
+    private final StockCache stockCache;
+    private final TransactionOperations transactionOperations;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final long waitNanos;
+
+    //Число артикулов ограничено (цвет x 101 значение хлопка), поэтому очереди не удаляются
+    private final ConcurrentHashMap<SocksKey, SkuQueue> queues = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CoalescingStockWriter(SocksRepository socksRepository,
+                                 StockCache stockCache,
+                                 TransactionOperations transactionOperations,
+                                 @Value("${socks.coalescing.window-micros:200}") long windowMicros,
+                                 @Value("${socks.coalescing.max-batch-size:256}") int maxBatchSize) {
+        this.socksRepository = socksRepository;
+        this.stockCache = stockCache;
+        this.transactionOperations = transactionOperations;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatchSize = maxBatchSize;
+        this.waitNanos = Math.max(windowNanos, TimeUnit.MICROSECONDS.toNanos(100));
+    }
+
+    //Приход отклоняется только при переполнении остатка, и тогда исключением, поэтому результат всегда есть
+    @Override
+    public Socks increment(SocksKey key, int quantity) {
+        return submit(key, quantity).orElseThrow();
+    }
+
+    @Override
+    public Optional<Socks> decrement(SocksKey key, int quantity) {
+        return submit(key, -quantity);
+    }
+
+    @Override
+    public CachedStock load(SocksKey key) {
+        return socksRepository.findByColorAndCotton(key.color(), key.cotton())
+                .map(CachedStock::of)
+                .orElse(CachedStock.ABSENT);
+    }
+
+    private Optional<Socks> submit(SocksKey key, int delta) {
+        Movement movement = new Movement(delta);
+        SkuQueue queue = queues.computeIfAbsent(key, k -> new SkuQueue());
+        queue.pending.add(movement);
+        while (!movement.result.isDone()) {
+            if (queue.combining.compareAndSet(false, true)) {
+                try {
+                    if (windowNanos > 0) {
+                        LockSupport.parkNanos(windowNanos); //Даем попутным движениям встать в очередь
+                    }
+                    combine(key, queue);
+                } finally {
+                    queue.combining.set(false);
+                }
+            } else {
+                awaitResult(movement);
+            }
+        }
+        try {
+            return movement.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание записи остатка прервано", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Ошибка при записи остатка", e.getCause());
+        }
+    }
+
+    //Движение применит текущий объединяющий поток; если оно не попало в его пачку,
+    //после тайм-аута поток сам попробует стать объединяющим
+    private void awaitResult(Movement movement) {
+        try {
+            movement.result.get(waitNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            //Результат или ошибка будут получены в submit
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание записи остатка прервано", e);
+        }
+    }
+
+    private void combine(SocksKey key, SkuQueue queue) {
+        List<Movement> batch = new ArrayList<>();
+        Movement next;
+        while (batch.size() < maxBatchSize && (next = queue.pending.poll()) != null) {
+            batch.add(next);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        BatchOutcome outcome;
+        try {
+            outcome = stockCache.locked(key, key, () -> {
+                BatchOutcome applied = transactionOperations.execute(status -> apply(key, batch));
+                if (applied.stockId() != null) {
+                    stockCache.put(key, new CachedStock(applied.stockId(), applied.finalQuantity()));
+                }
+                return applied;
+            });
+        } catch (RuntimeException e) {
+            log.error("Ошибка при записи {} движений по артикулу {}: {}", batch.size(), key, e.getMessage());
+            batch.forEach(movement -> movement.result.completeExceptionally(e));
+            return;
+        }
+        log.debug("Объединено движений по артикулу {}: {}", key, batch.size());
+
+        //Результаты отдаются только после фиксации транзакции
+        for (int i = 0; i < batch.size(); i++) {
+            Integer quantityAfter = outcome.quantitiesAfter()[i];
+            if (quantityAfter == null && batch.get(i).delta > 0) {
+                batch.get(i).result.completeExceptionally(
+                        new IllegalArgumentException("Остаток превысит допустимое количество"));
+            } else if (quantityAfter == null) {
+                batch.get(i).result.complete(Optional.empty());
+            } else {
+                Socks socks = new Socks(key.color(), key.cotton(), quantityAfter);
+                socks.setId(outcome.stockId());
+                batch.get(i).result.complete(Optional.of(socks));
+            }
+        }
+    }
+
+    private BatchOutcome apply(SocksKey key, List<Movement> batch) {
+        Optional<StockRow> row = socksRepository.lockStock(key.color(), key.cotton());
+        int initial = row.map(StockRow::getQuantity).orElse(0);
+        int quantity = initial;
+        boolean accepted = false;
+        Integer[] quantitiesAfter = new Integer[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            int delta = batch.get(i).delta;
+            //Приход, переполняющий int, отклоняется так же, как отпуск сверх остатка, - только это движение
+            if (delta >= 0 ? quantity <= Integer.MAX_VALUE - delta : quantity + delta >= 0) {
+                quantity += delta;
+                quantitiesAfter[i] = quantity;
+                accepted = true;
+            }
+        }
+
+        if (row.isPresent()) {
+            if (quantity != initial) {
+                socksRepository.addQuantity(row.get().getId(), quantity - initial);
+            }
+            return new BatchOutcome(row.get().getId(), quantity, quantitiesAfter);
+        }
+        if (!accepted) {
+            return new BatchOutcome(null, 0, quantitiesAfter);
+        }
+        //Строки не было: приняты только движения, покрытые приходами этой же пачки.
+        //Upsert прибавляет итог, даже если строку успел вставить другой экземпляр приложения
+        StockRow inserted = socksRepository.upsertStock(key.color(), key.cotton(), quantity - initial);
+        return new BatchOutcome(inserted.getId(), inserted.getQuantity(), quantitiesAfter);
+    }
+
+    private static final class SkuQueue {
+        private final Queue<Movement> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean combining = new AtomicBoolean();
+    }
+
+    private static final class Movement {
+        private final int delta;
+        private final CompletableFuture<Optional<Socks>> result = new CompletableFuture<>();
+
+        private Movement(int delta) {
+            this.delta = delta;
+        }
+    }
+
+    //quantitiesAfter[i] - остаток после i-го движения пачки, null - движение отклонено
+    private record BatchOutcome(Long stockId, int finalQuantity, Integer[] quantitiesAfter) {
+    }
+}
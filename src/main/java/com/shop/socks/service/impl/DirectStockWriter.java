@@ -0,0 +1,49 @@
+package com.shop.socks.service.impl;
+
+import com.shop.socks.cache.CachedStock;
+import com.shop.socks.cache.StockCache;
+import com.shop.socks.model.Socks;
+import com.shop.socks.model.SocksKey;
+import com.shop.socks.repository.SocksRepository;
+import com.shop.socks.service.StockWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+//Режим по умолчанию: каждое движение - один атомарный запрос к БД под блокировкой артикула,
+//результат сразу записывается в кэш остатков
+@Component
+@ConditionalOnProperty(name = "socks.stock.write-mode", havingValue = "direct", matchIfMissing = true)
+public class DirectStockWriter implements StockWriter {
+
+    private final SocksRepository socksRepository;
+    private final StockCache stockCache;
+
+    @Autowired
+    public DirectStockWriter(SocksRepository socksRepository, StockCache stockCache) {
+        this.socksRepository = socksRepository;
+        this.stockCache = stockCache;
+    }
+
+    @Override
+    public Socks increment(SocksKey key, int quantity) {
+        return stockCache.writeThrough(key, () -> Optional.of(socksRepository
+                        .incrementQuantity(key.color(), key.cotton(), quantity)))
+                .orElseThrow();
+    }
+
+    @Override
+    public Optional<Socks> decrement(SocksKey key, int quantity) {
+        return stockCache.writeThrough(key, () -> socksRepository
+                .decrementQuantity(key.color(), key.cotton(), quantity));
+    }
+
+    @Override
+    public CachedStock load(SocksKey key) {
+        return socksRepository.findByColorAndCotton(key.color(), key.cotton())
+                .map(CachedStock::of)
+                .orElse(CachedStock.ABSENT);
+    }
+}
@@ -0,0 +1,273 @@
+package com.shop.socks.service.impl;
+
+import com.shop.socks.cache.CachedStock;
+import com.shop.socks.cache.StockCache;
+import com.shop.socks.model.Socks;
+import com.shop.socks.model.SocksKey;
+import com.shop.socks.repository.StockBalance;
+import com.shop.socks.repository.StockLedgerRepository;
+import com.shop.socks.service.StockWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Журнальный режим (socks.stock.write-mode=ledger): приход и отпуск не изменяют строку socks,
+//а дописываются в журнал движений socks_movements. Остаток - снимок в строке socks плюс несвернутые движения;
+//фоновая свертка раз в socks.ledger.snapshot-interval-ms переносит движения в снимок.
+//Движения всех артикулов, накопившиеся за время предыдущей записи, пишутся одной транзакцией
+//(group commit): приходы только дописываются, для отпусков строки артикулов блокируются на время
+//проверки остатка. Списки и суммы, читаемые из таблицы, отстают от журнала не больше чем на интервал свертки
+@Component
+@ConditionalOnProperty(name = "socks.stock.write-mode", havingValue = "ledger")
+@Slf4j
+public class LedgerStockWriter implements StockWriter, DisposableBean {
+
+    private final StockLedgerRepository ledgerRepository;
+    private final StockCache stockCache;
+    private final TransactionOperations transactionOperations;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService snapshots;
+
+    private final Queue<Movement> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean combining = new AtomicBoolean();
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+
+    @Autowired
+    public LedgerStockWriter(StockLedgerRepository ledgerRepository,
+                             StockCache stockCache,
+                             TransactionOperations transactionOperations,
+                             @Value("${socks.ledger.max-batch-size:512}") int maxBatchSize,
+                             @Value("${socks.ledger.snapshot-interval-ms:1000}") long snapshotIntervalMs) {
+        this.ledgerRepository = ledgerRepository;
+        this.stockCache = stockCache;
+        this.transactionOperations = transactionOperations;
+        this.maxBatchSize = maxBatchSize;
+        this.snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "socks-ledger-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (snapshotIntervalMs > 0) {
+            snapshots.scheduleWithFixedDelay(this::scheduledSnapshot, snapshotIntervalMs, snapshotIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public Socks increment(SocksKey key, int quantity) {
+        return submit(key, quantity).orElseThrow();
+    }
+
+    @Override
+    public Optional<Socks> decrement(SocksKey key, int quantity) {
+        return submit(key, -quantity);
+    }
+
+    @Override
+    public CachedStock load(SocksKey key) {
+        return ledgerRepository.balance(key)
+                .map(balance -> new CachedStock(balance.socksId(), balance.quantity()))
+                .orElse(CachedStock.ABSENT);
+    }
+
+    //Перед перезаписью количества журнал сворачивается целиком: иначе движения, записанные до нее,
+    //прибавились бы к новому значению
+    @Override
+    public void settle(SocksKey key) {
+        snapshot();
+    }
+
+    //Свертка журнала: граница фиксируется отдельной короткой транзакцией, затем движения до нее
+    //переносятся в снимок. Артикулы со свернутыми движениями сбрасываются в кэше, чтобы индекс
+    //и кэш ответов перечитали обновленный снимок. Остатки при свертке не меняются, поэтому сброс
+    //выполняется в фоне: settle вызывается под блокировками артикулов и не должен ждать чужих
+    public int snapshot() {
+        List<SocksKey> folded;
+        snapshotLock.lock();
+        try {
+            long sealedId = ledgerRepository.sealedId();
+            folded = ledgerRepository.fold(sealedId);
+            log.debug("Журнал движений свернут до {}: {} артикулов", sealedId, folded.size());
+        } finally {
+            snapshotLock.unlock();
+        }
+        if (!folded.isEmpty()) {
+            snapshots.execute(() -> stockCache.invalidate(folded));
+        }
+        return folded.size();
+    }
+
+    @Override
+    public void destroy() {
+        snapshots.shutdownNow();
+    }
+
+    private void scheduledSnapshot() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            log.error("Ошибка свертки журнала движений: {}", e.getMessage());
+        }
+    }
+
+    //Как и в CoalescingStockWriter, пачку записывает один из ожидающих потоков; пока идет запись,
+    //очередь накапливает следующую пачку
+    private Optional<Socks> submit(SocksKey key, int delta) {
+        Movement movement = new Movement(key, delta);
+        pending.add(movement);
+        while (!movement.result.isDone()) {
+            if (combining.compareAndSet(false, true)) {
+                try {
+                    combine();
+                } finally {
+                    combining.set(false);
+                }
+            } else {
+                awaitResult(movement);
+            }
+        }
+        try {
+            return movement.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание записи движения прервано", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Ошибка при записи движения", e.getCause());
+        }
+    }
+
+    private void awaitResult(Movement movement) {
+        try {
+            movement.result.get(100, TimeUnit.MICROSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            //Результат или ошибка будут получены в submit
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание записи движения прервано", e);
+        }
+    }
+
+    private void combine() {
+        List<Movement> batch = new ArrayList<>();
+        Movement next;
+        while (batch.size() < maxBatchSize && (next = pending.poll()) != null) {
+            batch.add(next);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Map<SocksKey, StockBalance> balances;
+        try {
+            balances = transactionOperations.execute(status -> append(batch));
+        } catch (RuntimeException e) {
+            log.error("Ошибка при записи {} движений в журнал: {}", batch.size(), e.getMessage());
+            batch.forEach(movement -> movement.result.completeExceptionally(e));
+            return;
+        }
+        //Пачки пишутся по очереди, поэтому итоговые остатки попадают в кэш в порядке фиксации
+        balances.forEach((key, balance) -> stockCache.locked(key, key, () -> {
+            stockCache.put(key, new CachedStock(balance.socksId(), balance.quantity()));
+            return null;
+        }));
+        for (Movement movement : batch) {
+            if (movement.quantityAfter == null) {
+                movement.result.complete(Optional.empty());
+            } else {
+                Socks socks = new Socks(movement.key.color(), movement.key.cotton(), movement.quantityAfter);
+                socks.setId(movement.socksId);
+                movement.result.complete(Optional.of(socks));
+            }
+        }
+        log.debug("Записано движений в журнал: {}, артикулов: {}", batch.size(), balances.size());
+    }
+
+    //Возвращает итоговые остатки артикулов пачки; результат каждого движения записывается в него самого
+    private Map<SocksKey, StockBalance> append(List<Movement> batch) {
+        Set<SocksKey> keys = new LinkedHashSet<>();
+        Set<SocksKey> outcomeKeys = new LinkedHashSet<>();
+        for (Movement movement : batch) {
+            keys.add(movement.key);
+            if (movement.delta < 0) {
+                outcomeKeys.add(movement.key);
+            }
+        }
+        ledgerRepository.beginAppend();
+        ledgerRepository.lockRows(outcomeKeys);
+        Map<SocksKey, StockBalance> balances = new HashMap<>(ledgerRepository.balances(keys));
+        //Новым артикулам с приходами нужна строка-снимок, на id которой ссылаются движения
+        Set<SocksKey> created = new LinkedHashSet<>();
+        for (Movement movement : batch) {
+            if (movement.delta >= 0 && !balances.containsKey(movement.key)) {
+                created.add(movement.key);
+            }
+        }
+        if (!created.isEmpty()) {
+            ledgerRepository.createRows(created);
+            balances.putAll(ledgerRepository.balances(created));
+        }
+
+        Map<SocksKey, StockBalance> changed = new LinkedHashMap<>();
+        long[] socksIds = new long[batch.size()];
+        int[] deltas = new int[batch.size()];
+        int accepted = 0;
+        for (Movement movement : batch) {
+            StockBalance balance = balances.get(movement.key);
+            if (balance == null || (movement.delta < 0 && balance.quantity() + movement.delta < 0)) {
+                continue; //Отпуск сверх остатка или по отсутствующему артикулу отклоняется
+            }
+            balance = new StockBalance(balance.socksId(), balance.quantity() + movement.delta);
+            balances.put(movement.key, balance);
+            changed.put(movement.key, balance);
+            movement.socksId = balance.socksId();
+            movement.quantityAfter = balance.quantity();
+            socksIds[accepted] = balance.socksId();
+            deltas[accepted++] = movement.delta;
+        }
+        if (accepted > 0) {
+            ledgerRepository.append(Arrays.copyOf(socksIds, accepted), Arrays.copyOf(deltas, accepted));
+        }
+        return changed;
+    }
+
+    private static final class Movement {
+        private final SocksKey key;
+        private final int delta;
+        private final CompletableFuture<Optional<Socks>> result = new CompletableFuture<>();
+        //Заполняются при записи пачки, до фиксации транзакции; null - движение отклонено
+        private Long socksId;
+        private Integer quantityAfter;
+
+        private Movement(SocksKey key, int delta) {
+            this.key = key;
+            this.delta = delta;
+        }
+    }
+}
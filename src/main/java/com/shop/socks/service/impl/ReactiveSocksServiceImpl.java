@@ -0,0 +1,160 @@
+package com.shop.socks.service.impl;
+
+import com.shop.socks.cache.StockCache;
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.dto.SocksDto;
+import com.shop.socks.model.SocksKey;
+import com.shop.socks.service.ReactiveSocksService;
+import io.r2dbc.spi.Readable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+
+//Реализация на реактивном драйвере PostgreSQL (R2DBC): запросы те же, что у блокирующей версии,
+//но поток не ждет ответа БД, поэтому один экземпляр держит гораздо больше одновременных запросов.
+//Таблица общая с JPA-версией, поэтому после записи артикул сбрасывается из кэша остатков. Сброс берет
+//блокировку артикула (ее держат блокирующие записи на время запроса к БД) и вызывает слушателей кэша,
+//поэтому выполняется в пуле boundedElastic, а не в потоке событий R2DBC.
+//Включается свойством socks.reactive.enabled=true (нужны настройки spring.r2dbc.*). Отпуск проверяет
+//остаток по строке socks, поэтому с режимами ledger и write-behind, где часть остатка хранится вне строки,
+//приложение не запускается: иначе отпуск мог бы уйти в минус
+@Service
+@ConditionalOnProperty(name = "socks.reactive.enabled", havingValue = "true")
+@Slf4j
+public class ReactiveSocksServiceImpl implements ReactiveSocksService {
+
+    private final DatabaseClient databaseClient;
+    private final StockCache stockCache;
+
+    @Autowired
+    public ReactiveSocksServiceImpl(DatabaseClient databaseClient, StockCache stockCache,
+                                    @Value("${socks.stock.write-mode:direct}") String writeMode) {
+        if ("ledger".equals(writeMode) || "write-behind".equals(writeMode)) {
+            throw new IllegalStateException("Неблокирующие эндпоинты несовместимы с режимом записи остатков "
+                    + writeMode + ": отключите socks.reactive.enabled или выберите direct или coalescing");
+        }
+        this.databaseClient = databaseClient;
+        this.stockCache = stockCache;
+    }
+
+    @Override
+    public Mono<LotOfSocksDto> addSocks(SocksDto socksDto) {
+        if (socksDto.getCotton() < 0 || socksDto.getCotton() > 100) {
+            return Mono.error(new IllegalArgumentException("Значение хлопка должно быть в диапазоне: 0-100"));
+        }
+        return databaseClient.sql("INSERT INTO socks (color, cotton, quantity) VALUES (:color, :cotton, :quantity) " +
+                        "ON CONFLICT (color, cotton) DO UPDATE SET quantity = socks.quantity + EXCLUDED.quantity " +
+                        "RETURNING color, cotton, quantity")
+                .bind("color", socksDto.getColor())
+                .bind("cotton", socksDto.getCotton())
+                .bind("quantity", socksDto.getQuantity())
+                .map(ReactiveSocksServiceImpl::toLotOfSocks)
+                .one()
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(updated -> {
+                    invalidate(socksDto);
+                    log.info("Количество носков обновлено: {}", updated);
+                });
+    }
+
+    @Override
+    public Mono<LotOfSocksDto> removeSocks(SocksDto socksDto) {
+        return databaseClient.sql("UPDATE socks SET quantity = quantity - :quantity " +
+                        "WHERE color = :color AND cotton = :cotton AND quantity >= :quantity " +
+                        "RETURNING color, cotton, quantity")
+                .bind("color", socksDto.getColor())
+                .bind("cotton", socksDto.getCotton())
+                .bind("quantity", socksDto.getQuantity())
+                .map(ReactiveSocksServiceImpl::toLotOfSocks)
+                .one()
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(updated -> {
+                    invalidate(socksDto);
+                    log.info("Носки удалены: {}", updated);
+                });
+    }
+
+    @Override
+    public Flux<SocksDto> getFilteredSocks(String color, Integer minCotton, Integer maxCotton, String sortBy) {
+        String orderBy = "";
+        if ("color".equalsIgnoreCase(sortBy)) {
+            orderBy = " ORDER BY color, cotton";
+        } else if ("cotton".equalsIgnoreCase(sortBy)) {
+            orderBy = " ORDER BY cotton, color";
+        }
+        String normalizedColor = normalizeColor(color);
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("SELECT id, color, cotton, quantity FROM socks"
+                + where(normalizedColor, minCotton, maxCotton) + orderBy);
+        return bindFilter(spec, normalizedColor, minCotton, maxCotton)
+                .map(row -> {
+                    SocksDto socksDto = new SocksDto(row.get("color", String.class),
+                            row.get("cotton", Integer.class), row.get("quantity", Integer.class));
+                    socksDto.setId(row.get("id", Long.class));
+                    return socksDto;
+                })
+                .all();
+    }
+
+    @Override
+    public Mono<Long> getTotalQuantity(String color, Integer minCotton, Integer maxCotton) {
+        String normalizedColor = normalizeColor(color);
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("SELECT COALESCE(SUM(quantity), 0) AS total FROM socks"
+                + where(normalizedColor, minCotton, maxCotton));
+        return bindFilter(spec, normalizedColor, minCotton, maxCotton)
+                .map(row -> row.get("total", Long.class))
+                .one();
+    }
+
+    private void invalidate(SocksDto socksDto) {
+        stockCache.invalidate(List.of(new SocksKey(socksDto.getColor(), socksDto.getCotton())));
+    }
+
+    //Условия добавляются только для переданных фильтров, как в SocksRepositoryImpl
+    private static String where(String color, Integer minCotton, Integer maxCotton) {
+        StringBuilder where = new StringBuilder();
+        if (color != null) {
+            where.append(" AND color = :color");
+        }
+        if (minCotton != null) {
+            where.append(" AND cotton >= :minCotton");
+        }
+        if (maxCotton != null) {
+            where.append(" AND cotton <= :maxCotton");
+        }
+        return where.length() == 0 ? "" : " WHERE" + where.substring(4);
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindFilter(DatabaseClient.GenericExecuteSpec spec,
+                                                                String color, Integer minCotton, Integer maxCotton) {
+        if (color != null) {
+            spec = spec.bind("color", color);
+        }
+        if (minCotton != null) {
+            spec = spec.bind("minCotton", minCotton);
+        }
+        if (maxCotton != null) {
+            spec = spec.bind("maxCotton", maxCotton);
+        }
+        return spec;
+    }
+
+    private static LotOfSocksDto toLotOfSocks(Readable row) {
+        return new LotOfSocksDto(row.get("color", String.class),
+                row.get("cotton", Integer.class), row.get("quantity", Integer.class));
+    }
+
+    private static String normalizeColor(String color) {
+        if (color == null || color.trim().isEmpty()) {
+            return null;
+        }
+        return color.trim();
+    }
+}
@@ -0,0 +1,95 @@
+package com.shop.socks.service.impl;
+
+import com.shop.socks.cache.ColorDictionary;
+import com.shop.socks.cache.StockCache;
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.metrics.SocksMetrics;
+import com.shop.socks.model.SocksKey;
+import com.shop.socks.parser.BatchFormat;
+import com.shop.socks.repository.BatchUpsertResult;
+import com.shop.socks.repository.SocksRepository;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//Стадия записи одной загрузки (BatchPipeline): суммирует проверенные порции по (color, cotton) и сливает
+//их со складом многострочными upsert-ами. Размер карты ограничен числом различных артикулов, а не строк файла
+class SocksBatchIngest {
+
+    private final SocksRepository socksRepository;
+    private final StockCache stockCache;
+    private final ColorDictionary colorDictionary;
+    private final int chunkSize;
+    private final int maxPendingSkus;
+    private final BatchProgress progress;
+    private final SocksMetrics socksMetrics;
+    private final BatchFormat format;
+    private final Map<SocksKey, Integer> pending = new HashMap<>();
+    private final long startedNanos = System.nanoTime();
+
+    private long rows;
+    private long invalidRows;
+    private long pendingRows;
+    private int inserted;
+    private int updated;
+    private long persistNanos;
+
+    SocksBatchIngest(SocksRepository socksRepository, StockCache stockCache, ColorDictionary colorDictionary,
+                     int chunkSize, int maxPendingSkus, BatchProgress progress,
+                     SocksMetrics socksMetrics, BatchFormat format) {
+        this.socksRepository = socksRepository;
+        this.stockCache = stockCache;
+        this.colorDictionary = colorDictionary;
+        this.chunkSize = chunkSize;
+        this.maxPendingSkus = maxPendingSkus;
+        this.progress = progress;
+        this.socksMetrics = socksMetrics;
+        this.format = format;
+    }
+
+    //Суммы принятых строк порции; отклоненные строки только подсчитываются.
+    //Варианты написания цвета сливаются в одну позицию
+    void accept(Map<SocksKey, Integer> deltas, int acceptedRows, int rejectedRows) {
+        deltas.forEach((key, quantity) -> {
+            SocksKey canonical = new SocksKey(colorDictionary.canonical(key.color()), key.cotton());
+            Integer previous = pending.get(canonical);
+            if (previous != null && (long) previous + quantity > Integer.MAX_VALUE) {
+                flush(); //Сумма не помещается в int: накопленное записывается, артикул начинается заново
+            }
+            pending.merge(canonical, quantity, Math::addExact);
+        });
+        rows += acceptedRows + rejectedRows;
+        invalidRows += rejectedRows;
+        pendingRows += acceptedRows;
+        socksMetrics.rowsParsed(acceptedRows + rejectedRows);
+        if (pending.size() >= maxPendingSkus) {
+            flush(); //Защита от файлов с огромным числом разных артикулов
+        }
+    }
+
+    void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long flushStarted = System.nanoTime();
+        BatchUpsertResult result = socksRepository.upsertQuantities(pending, chunkSize);
+        inserted += result.inserted();
+        updated += result.updated();
+        stockCache.invalidate(pending.keySet()); //Остатки изменены в обход кэша
+        pending.clear();
+        persistNanos += System.nanoTime() - flushStarted;
+        progress.rowsPersisted(pendingRows);
+        socksMetrics.rowsPersisted(pendingRows);
+        pendingRows = 0;
+    }
+
+    //Завершение загрузки: запись остатка накопленного и время разбора/записи в метрики
+    LotOfSocksDto complete() {
+        flush();
+        long totalNanos = System.nanoTime() - startedNanos;
+        socksMetrics.batchPhases(format.name().toLowerCase(), totalNanos - persistNanos, persistNanos);
+        LotOfSocksDto result = new LotOfSocksDto(rows, inserted, updated);
+        result.setInvalid(invalidRows);
+        return result;
+    }
+}
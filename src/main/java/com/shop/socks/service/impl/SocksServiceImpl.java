@@ -1,245 +1,550 @@
 package com.shop.socks.service.impl;
 
+import com.shop.socks.cache.CachedStock;
+import com.shop.socks.cache.ColorDictionary;
+import com.shop.socks.cache.ColorHistogramIndex;
+import com.shop.socks.cache.StockCache;
+import com.shop.socks.dto.BulkMode;
+import com.shop.socks.dto.BulkMovementResultDto;
+import com.shop.socks.dto.BulkMovementsDto;
 import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.dto.MovementResultDto;
 import com.shop.socks.dto.SocksDto;
+import com.shop.socks.dto.SocksPageDto;
+import com.shop.socks.logging.LogPayload;
+import com.shop.socks.metrics.SocksMetrics;
 import com.shop.socks.model.Socks;
+import com.shop.socks.model.SocksKey;
+import com.shop.socks.parser.BatchFormat;
+import com.shop.socks.parser.CsvSocksReader;
+import com.shop.socks.parser.ExcelSocksReader;
 import com.shop.socks.repository.SocksRepository;
+import com.shop.socks.repository.StockCursor;
+import com.shop.socks.repository.StockRowCallback;
 import com.shop.socks.service.SocksService;
-import lombok.Setter;
+import com.shop.socks.service.StockWriter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVRecord;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class SocksServiceImpl implements SocksService {
 
     private final SocksRepository socksRepository;
+    private final StockCache stockCache;
+    private final StockWriter stockWriter;
+    private final SocksMetrics socksMetrics;
+    private final ColorHistogramIndex colorIndex; //null, если индекс отключен (socks.index.enabled=false)
+    private final BatchPipeline batchPipeline;
+    private final ColorDictionary colorDictionary;
 
-    @Setter
-    private List<SocksDto> socksList = new ArrayList<>();
+    @Value("${socks.batch.chunk-size:1000}")
+    private int batchChunkSize = 1000;
+
+    @Value("${socks.batch.max-pending-skus:100000}")
+    private int batchMaxPendingSkus = 100_000;
+
+    @Value("${socks.bulk.max-movements:1000}")
+    private int bulkMaxMovements = 1000;
+
+    @Value("${socks.page.default-limit:100}")
+    private int pageDefaultLimit = 100;
+
+    @Value("${socks.page.max-limit:1000}")
+    private int pageMaxLimit = 1000;
+
+    //Сколько элементов списков попадает в отладочный лог
+    @Value("${socks.logging.max-payload-elements:10}")
+    private int logPayloadLimit = 10;
 
     @Autowired
-    public SocksServiceImpl(SocksRepository socksRepository) {
+    public SocksServiceImpl(SocksRepository socksRepository, StockCache stockCache, StockWriter stockWriter,
+                            SocksMetrics socksMetrics, Optional<ColorHistogramIndex> colorIndex,
+                            BatchPipeline batchPipeline, ColorDictionary colorDictionary) {
         this.socksRepository = socksRepository;
+        this.stockCache = stockCache;
+        this.stockWriter = stockWriter;
+        this.socksMetrics = socksMetrics;
+        this.colorIndex = colorIndex.orElse(null);
+        this.batchPipeline = batchPipeline;
+        this.colorDictionary = colorDictionary;
     }
 
     @Override
     public LotOfSocksDto removeSocks(SocksDto socksDto) {
-        log.info("Попытка удалить носки: {}", socksDto);
-        Optional<Socks> existingSocksOpt = socksRepository
-                .findByColorAndCotton(socksDto.getColor(), socksDto.getCotton());
-        if (existingSocksOpt.isEmpty() || existingSocksOpt.get().getQuantity() < socksDto.getQuantity()) {
-            log.warn("Недостаточно носков на складе для удаления: {}", socksDto);
-            return null;
-        }
+        return socksMetrics.record(SocksMetrics.REMOVE, () -> {
+            log.debug("Попытка удалить носки: {}", socksDto);
+            requireNonNegative(socksDto.getQuantity());
+            //Отпуск не регистрирует цвет: по неизвестному цвету остатка нет
+            SocksKey key = new SocksKey(colorDictionary.lookup(socksDto.getColor()), socksDto.getCotton());
+            //Проверка остатка и списание выполняются атомарно без промежуточного чтения;
+            //новый остаток сразу попадает в кэш
+            Optional<Socks> updatedSocksOpt = stockWriter.decrement(key, socksDto.getQuantity());
+            if (updatedSocksOpt.isEmpty()) {
+                log.warn("Недостаточно носков на складе для удаления: {}", socksDto);
+                socksMetrics.outcomeRejected();
+                return null;
+            }
 
-        Socks existingSocks = existingSocksOpt.get();
-        existingSocks.setQuantity(existingSocks.getQuantity() - socksDto.getQuantity());
-        socksRepository.save(existingSocks);
-        log.info("Носки удалены: {}", existingSocks);
-        return convertToLotOfSocks(existingSocks);
+            Socks updatedSocks = updatedSocksOpt.get();
+            log.debug("Носки удалены: {}", updatedSocks);
+            return convertToLotOfSocks(updatedSocks);
+        });
     }
 
     @Override
     public LotOfSocksDto addSocks(SocksDto socksDto) {
-        log.info("Попытка добавить носки: {}", socksDto);
-        if (socksDto.getCotton() < 0 || socksDto.getCotton() > 100) { // Проверка диапазона для cotton
-            throw new IllegalArgumentException("Значение хлопка должно быть в диапазоне: 0-100");
-        }
-        Optional<Socks> existingSocksOpt = socksRepository
-                .findByColorAndCotton(socksDto.getColor(), socksDto.getCotton());
-        Socks socksToReturn;
-        if (existingSocksOpt.isPresent()) {
-            Socks socks = existingSocksOpt.get();
-            socks.setQuantity(socks.getQuantity() + socksDto.getQuantity());
-            socksRepository.save(socks);
-            log.info("Количество носков обновлено: {}", socks);
-            socksToReturn = socks;
-        } else {
-            socksToReturn = new Socks();
-            socksToReturn.setColor(socksDto.getColor());
-            socksToReturn.setCotton(socksDto.getCotton());
-            socksToReturn.setQuantity(socksDto.getQuantity());
-            socksRepository.save(socksToReturn);
-            log.info("Носки добавлены: {}", socksToReturn);
-        }
-        return convertToLotOfSocks(socksToReturn);
+        return socksMetrics.record(SocksMetrics.ADD, () -> {
+            log.debug("Попытка добавить носки: {}", socksDto);
+            if (socksDto.getCotton() < 0 || socksDto.getCotton() > 100) { // Проверка диапазона для cotton
+                throw new IllegalArgumentException("Значение хлопка должно быть в диапазоне: 0-100");
+            }
+            requireNonNegative(socksDto.getQuantity());
+            //Варианты написания цвета приходят в одну позицию
+            SocksKey key = new SocksKey(colorDictionary.canonical(socksDto.getColor()), socksDto.getCotton());
+            //Атомарный upsert: параллельные приходы по одной позиции не теряют обновления
+            Socks updatedSocks = stockWriter.increment(key, socksDto.getQuantity());
+            log.debug("Количество носков обновлено: {}", updatedSocks);
+            return convertToLotOfSocks(updatedSocks);
+        });
     }
 
+    //Без общей транзакции: выборка открывает транзакции сама, а параллельное чтение частей
+    //не должно ждать соединений, пока этот поток держит свое
     @Override
     public List<SocksDto> getFilteredSocks(String color, Integer minCotton, Integer maxCotton, String sortBy) {
-        log.info("Получение носков с фильтрацией: color={}, minCotton={}, maxCotton={}, sortBy={}",
-                color, minCotton, maxCotton, sortBy);
+        return socksMetrics.record(SocksMetrics.FILTER, () -> {
+            log.debug("Получение носков с фильтрацией: color={}, minCotton={}, maxCotton={}, sortBy={}",
+                    color, minCotton, maxCotton, sortBy);
 
-        if (socksList.isEmpty()) {
-            log.warn("Список носков пуст!");
-            return Collections.emptyList(); // Возвращаем пустой список
-        }
+            String normalizedColor = normalizeColor(color);
+            if (isSingleSku(normalizedColor, minCotton, maxCotton)) {
+                //Запрос одного артикула обслуживается кэшем остатков
+                CachedStock stock = stockCache.get(new SocksKey(normalizedColor, minCotton), this::loadStock);
+                List<SocksDto> result = new ArrayList<>(1);
+                if (stock.isPresent()) {
+                    SocksDto socksDto = new SocksDto(normalizedColor, minCotton, stock.quantity());
+                    socksDto.setId(stock.id());
+                    result.add(socksDto);
+                }
+                return result;
+            }
 
-        List<SocksDto> filteredList = new ArrayList<>(socksList);
+            //Строки передаются по полям, объект создается только для DTO ответа
+            List<SocksDto> filteredList = new ArrayList<>();
+            StockRowCallback collector = (id, rowColor, cotton, quantity) -> {
+                SocksDto socksDto = new SocksDto(rowColor, cotton, quantity);
+                socksDto.setId(id);
+                filteredList.add(socksDto);
+            };
+            //Диапазон хлопка одного цвета обслуживается индексом; позиции идут по возрастанию хлопка,
+            //что совпадает с обеими сортировками при фиксированном цвете
+            boolean indexed = normalizedColor != null && colorIndex != null
+                    && colorIndex.scanCottonRange(normalizedColor, minCotton, maxCotton, collector);
+            if (!indexed) {
+                //Фильтрация и сортировка выполняются одним запросом в БД
+                socksRepository.scanFiltered(normalizedColor, minCotton, maxCotton, sortBy, collector);
+            }
+            log.debug("Фильтрованные носки: {}", LogPayload.limit(filteredList, logPayloadLimit));
+            return filteredList;
+        });
+    }
 
-        //Фильтрация по цвету
-        if (color != null && !color.trim().isEmpty()) {
-            filteredList = filteredList.stream()
-                    .filter(sock -> sock.getColor().equalsIgnoreCase(color.trim()))
-                    .collect(Collectors.toList());
-            log.info("После фильтрации по цвету: {}", filteredList.size());
-        }
+    //Постраничная выборка по ключу (color, cotton, id), для sortBy=cotton - (cotton, color, id).
+    //Каждая страница читается запросом от курсора, без OFFSET, поэтому ее стоимость не зависит от номера;
+    //запрашивается на строку больше limit, чтобы знать, есть ли следующая страница
+    @Override
+    @Transactional(readOnly = true)
+    public SocksPageDto getSocksPage(String color, Integer minCotton, Integer maxCotton, String sortBy,
+                                     String cursor, Integer limit) {
+        return socksMetrics.record(SocksMetrics.PAGE, () -> {
+            int pageSize = limit == null ? pageDefaultLimit : limit;
+            if (pageSize < 1 || pageSize > pageMaxLimit) {
+                throw new IllegalArgumentException("Размер страницы должен быть в диапазоне: 1-" + pageMaxLimit);
+            }
+            boolean byCotton = "cotton".equalsIgnoreCase(sortBy);
+            StockCursor after = cursor == null || cursor.isBlank() ? null : StockCursor.decode(cursor);
+            if (after != null && after.byCotton() != byCotton) {
+                throw new IllegalArgumentException("Курсор выдан для другой сортировки");
+            }
+            log.debug("Страница носков: color={}, minCotton={}, maxCotton={}, sortBy={}, after={}, limit={}",
+                    color, minCotton, maxCotton, sortBy, after, pageSize);
 
-        //Фильтрация по диапазону хлопка
-        if (minCotton != null) {
-            filteredList = filteredList.stream()
-                    .filter(sock -> sock.getCotton() >= minCotton)
-                    .collect(Collectors.toList());
-            log.info("После фильтрации по minCotton: {}", filteredList.size());
-        }
-        if (maxCotton != null) {
-            filteredList = filteredList.stream()
-                    .filter(sock -> sock.getCotton() <= maxCotton)
-                    .collect(Collectors.toList());
-            log.info("После фильтрации по maxCotton: {}", filteredList.size());
-        }
+            String normalizedColor = normalizeColor(color);
+            List<SocksDto> items = new ArrayList<>();
+            StockRowCallback collector = (id, rowColor, cotton, quantity) -> {
+                SocksDto socksDto = new SocksDto(rowColor, cotton, quantity);
+                socksDto.setId(id);
+                items.add(socksDto);
+            };
+            //Внутри одного цвета оба ключа упорядочены по хлопку, а хлопок в цвете уникален,
+            //поэтому страница цвета читается из индекса с хлопка после курсора
+            Integer fromCotton = after == null || (minCotton != null && minCotton > after.cotton())
+                    ? minCotton
+                    : Integer.valueOf(after.cotton() + 1);
+            boolean indexed = normalizedColor != null && colorIndex != null
+                    && (after == null || after.color().equals(normalizedColor))
+                    && colorIndex.scanCottonRange(normalizedColor, fromCotton, maxCotton, collector);
+            if (!indexed) {
+                socksRepository.scanPage(normalizedColor, minCotton, maxCotton, byCotton, after, pageSize + 1,
+                        collector);
+            }
 
-        if ("color".equalsIgnoreCase(sortBy)) {
-            filteredList.sort(Comparator.comparing(SocksDto::getColor));
-        } else if ("cotton".equalsIgnoreCase(sortBy)) {
-            filteredList.sort(Comparator.comparing(SocksDto::getCotton));
-        }
-        log.info("Фильтрованные носки: {}", filteredList);
-        return filteredList;
+            SocksPageDto page = new SocksPageDto();
+            if (items.size() > pageSize) {
+                SocksDto last = items.get(pageSize - 1);
+                page.setNextCursor(new StockCursor(byCotton, last.getColor(), last.getCotton(), last.getId())
+                        .encode());
+                items.subList(pageSize, items.size()).clear();
+            }
+            page.setItems(items);
+            return page;
+        });
+    }
+
+    //Строки передаются получателю по мере чтения курсора БД, без списка в памяти. Выборка по цвету
+    //берется из индекса: в ней не больше 101 позиции
+    @Override
+    public void streamFilteredSocks(String color, Integer minCotton, Integer maxCotton, String sortBy,
+                                    StockRowCallback callback) {
+        socksMetrics.record(SocksMetrics.STREAM, () -> {
+            log.debug("Потоковая выборка носков: color={}, minCotton={}, maxCotton={}, sortBy={}",
+                    color, minCotton, maxCotton, sortBy);
+            String normalizedColor = normalizeColor(color);
+            boolean indexed = normalizedColor != null && colorIndex != null
+                    && colorIndex.scanCottonRange(normalizedColor, minCotton, maxCotton, callback);
+            if (!indexed) {
+                socksRepository.streamFiltered(normalizedColor, minCotton, maxCotton, sortBy, callback);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long getTotalQuantity(String color, Integer minCotton, Integer maxCotton) {
+        return socksMetrics.record(SocksMetrics.TOTAL, () -> {
+            log.debug("Подсчет общего количества носков: color={}, minCotton={}, maxCotton={}",
+                    color, minCotton, maxCotton);
+            String normalizedColor = normalizeColor(color);
+            long total;
+            if (isSingleSku(normalizedColor, minCotton, maxCotton)) {
+                total = stockCache.get(new SocksKey(normalizedColor, minCotton), this::loadStock).quantity();
+            } else {
+                OptionalLong indexed = normalizedColor != null && colorIndex != null
+                        ? colorIndex.sumQuantity(normalizedColor, minCotton, maxCotton)
+                        : OptionalLong.empty();
+                total = indexed.isPresent()
+                        ? indexed.getAsLong()
+                        : socksRepository.sumQuantity(normalizedColor, minCotton, maxCotton);
+            }
+            log.debug("Общее количество носков: {}", total);
+            return total;
+        });
     }
 
     @Override
     public SocksDto updateSocks(Long id, SocksDto socksDto) {
-        log.info("Обновление носков с ID: {} и данными: {}", id, socksDto);
-        Optional<Socks> optionalSocks = socksRepository.findById(id);
-
-        if (optionalSocks.isPresent()) {
-            Socks socks = optionalSocks.get();
-            socks.setColor(socksDto.getColor());
-            socks.setCotton(socksDto.getCotton());
-            socks.setQuantity(socksDto.getQuantity());
-
-            socksRepository.save(socks);
-            log.info("Носки обновлены: {}", socks);
-            return new SocksDto(socks.getColor(), socks.getCotton(), socks.getQuantity());
-        } else {
-            log.error("Носки с ID: {} не найдены", id);
-            throw new RuntimeException("Носки с ID: " + id + " не найдены");
-        }
+        return socksMetrics.record(SocksMetrics.UPDATE, () -> {
+            log.info("Обновление носков с ID: {} и данными: {}", id, socksDto);
+            Optional<Socks> optionalSocks = socksRepository.findById(id);
+
+            if (optionalSocks.isPresent()) {
+                Socks socks = optionalSocks.get();
+                SocksKey oldKey = new SocksKey(socks.getColor(), socks.getCotton());
+                String color = colorDictionary.canonical(socksDto.getColor());
+                SocksKey newKey = new SocksKey(color, socksDto.getCotton());
+                //Позиция может сменить артикул, поэтому кэш обновляется под блокировками обоих
+                stockCache.locked(oldKey, newKey, () -> {
+                    stockWriter.settle(oldKey);
+                    socks.setColor(color);
+                    socks.setCotton(socksDto.getCotton());
+                    socks.setQuantity(socksDto.getQuantity());
+
+                    socksRepository.save(socks);
+                    if (!oldKey.equals(newKey)) {
+                        stockCache.put(oldKey, CachedStock.ABSENT);
+                    }
+                    stockCache.put(newKey, CachedStock.of(socks));
+                    return socks;
+                });
+                log.info("Носки обновлены: {}", socks);
+                return new SocksDto(socks.getColor(), socks.getCotton(), socks.getQuantity());
+            } else {
+                log.error("Носки с ID: {} не найдены", id);
+                throw new RuntimeException("Носки с ID: " + id + " не найдены");
+            }
+        });
     }
 
-//    @Override
-//    public LotOfSocksDto processBatchOfSocks(MultipartFile file) {
-//        log.info("Обработка партии носков из файла: {}", file.getOriginalFilename());
-//        List<Socks> socksList = new ArrayList<>();
-//
-//        try (Workbook workbook = WorkbookFactory.create(file.getInputStream())) {
-//            Sheet sheet = workbook.getSheetAt(0); //Получаем первый лист
-//
-//            for (Row row : sheet) {
-//                if (row.getRowNum() == 0) continue; //Пропускаем заголовок
-//
-//                String color = row.getCell(0).getStringCellValue();
-//                int cotton = (int) row.getCell(1).getNumericCellValue();
-//                int quantity = (int) row.getCell(2).getNumericCellValue();
-//
-//                Socks socks = new Socks();
-//                socks.setColor(color);
-//                socks.setCotton(cotton);
-//                socks.setQuantity(quantity);
-//
-//                socksList.add(socks);
-//            }
-//            socksRepository.saveAll(socksList); //Сохраняем все носки в Базе данных
-//            log.info("Партия носков успешно загружена, количество: {}", socksList.size());
-//        } catch (IOException e) {
-//            log.error("Ошибка при чтении файла: {}", e.getMessage());
-//            throw new RuntimeException("Ошибка при чтении файла", e);
-//        }
-//        return new LotOfSocksDto(socksList.size());
-//    }
+    //Пакет движений за постоянное число запросов к БД: остатки всех артикулов пакета читаются
+    //одним SELECT ... FOR UPDATE, строки принимаются или отклоняются по порядку, а суммарные изменения
+    //записываются многострочным upsert. Кэш сбрасывается после фиксации транзакции
+    @Override
+    @Transactional
+    public BulkMovementResultDto applyMovements(BulkMovementsDto bulkMovementsDto) {
+        return socksMetrics.record(SocksMetrics.MOVEMENTS, () -> {
+            List<SocksDto> movements = bulkMovementsDto.getMovements();
+            if (movements == null || movements.isEmpty()) {
+                throw new IllegalArgumentException("Пакет движений не должен быть пустым");
+            }
+            if (movements.size() > bulkMaxMovements) {
+                throw new IllegalArgumentException("В пакете не больше " + bulkMaxMovements + " движений");
+            }
+            BulkMode mode = bulkMovementsDto.getMode() == null ? BulkMode.ALL_OR_NOTHING : bulkMovementsDto.getMode();
+            log.debug("Применение пакета движений: {} строк, режим {}", movements.size(), mode);
+
+            Map<String, String> batchColors = new HashMap<>();
+            Set<SocksKey> keys = new LinkedHashSet<>();
+            for (SocksDto movement : movements) {
+                if (validateMovement(movement) == null) {
+                    keys.add(movementKey(movement, batchColors));
+                }
+            }
+            //В режиме отложенной записи несброшенные движения артикулов пакета сначала переносятся в БД
+            stockWriter.settleForTransaction(keys);
+            Map<SocksKey, Integer> stock = new HashMap<>(socksRepository.lockQuantities(keys));
+            Set<SocksKey> existing = new HashSet<>(stock.keySet());
+
+            Map<SocksKey, Integer> deltas = new LinkedHashMap<>();
+            List<MovementResultDto> results = new ArrayList<>(movements.size());
+            int accepted = 0;
+            for (int i = 0; i < movements.size(); i++) {
+                SocksDto movement = movements.get(i);
+                MovementResultDto result = new MovementResultDto(i, movement);
+                results.add(result);
+                String error = validateMovement(movement);
+                if (error != null) {
+                    result.setStatus("INVALID");
+                    result.setMessage(error);
+                    continue;
+                }
+                SocksKey key = movementKey(movement, batchColors);
+                int available = stock.getOrDefault(key, 0);
+                long remaining = (long) available + movement.getQuantity();
+                if (remaining < 0) {
+                    result.setStatus("REJECTED");
+                    result.setMessage("Недостаточно носков на складе");
+                    continue;
+                }
+                if (remaining > Integer.MAX_VALUE) {
+                    result.setStatus("REJECTED");
+                    result.setMessage("Остаток превысит допустимое количество");
+                    continue;
+                }
+                stock.put(key, (int) remaining);
+                //Остаток в пределах int, поэтому сумма движений артикула тоже
+                deltas.merge(key, movement.getQuantity(), Math::addExact);
+                result.setStatus("ACCEPTED");
+                result.setRemaining((int) remaining);
+                accepted++;
+            }
+
+            BulkMovementResultDto bulkResult = new BulkMovementResultDto();
+            bulkResult.setMode(mode);
+            bulkResult.setResults(results);
+            bulkResult.setAccepted(accepted);
+            bulkResult.setRejected(movements.size() - accepted);
+            if (mode == BulkMode.ALL_OR_NOTHING && accepted < movements.size()) {
+                for (MovementResultDto result : results) {
+                    if ("ACCEPTED".equals(result.getStatus())) {
+                        result.setStatus("NOT_APPLIED");
+                        result.setRemaining(null);
+                    }
+                }
+                bulkResult.setAccepted(0);
+                log.warn("Пакет движений отклонен целиком: {} строк не принято", movements.size() - accepted);
+                return bulkResult;
+            }
+
+            //Существующие артикулы с нулевым итогом не трогаем; новый артикул создается, как и при обычном приходе
+            deltas.entrySet().removeIf(entry -> entry.getValue() == 0 && existing.contains(entry.getKey()));
+            if (!deltas.isEmpty()) {
+                Map<SocksKey, Integer> applied = canonicalKeys(deltas);
+                socksRepository.upsertQuantities(applied, batchChunkSize);
+                invalidateAfterCommit(applied.keySet());
+            }
+            bulkResult.setApplied(true);
+            log.info("Пакет движений применен: принято {}, отклонено {}", accepted, movements.size() - accepted);
+            return bulkResult;
+        });
+    }
 
     @Override
     public LotOfSocksDto processBatchOfSocks(MultipartFile file) {
-        log.info("Обработка партии носков из файла: {}", file.getOriginalFilename());
-        List<Socks> socksList = new ArrayList<>();
+        return socksMetrics.record(SocksMetrics.BATCH, () -> {
+            log.info("Обработка партии носков из файла: {}", file.getOriginalFilename());
+
+            // Проверка на пустой файл
+            if (file.isEmpty()) {
+                log.error("Файл пустой: {}", file.getOriginalFilename());
+                throw new IllegalArgumentException("Файл не должен быть пустым");
+            }
+
+            Path tempFile = null;
+            try {
+                LotOfSocksDto result;
+                if (BatchFormat.detect(file.getContentType(), file.getOriginalFilename()) == BatchFormat.CSV) {
+                    //CSV разбирается прямо из потока multipart, без копии на диске и в памяти
+                    try (InputStream inputStream = file.getInputStream()) {
+                        result = importCsv(inputStream, new BatchProgress());
+                    }
+                } else {
+                    //XLSX - это zip-архив, поэтому для потокового чтения его нужно положить на диск, а не в heap
+                    tempFile = copyToTempFile(file);
+                    result = importBatch(tempFile, BatchFormat.EXCEL, new BatchProgress());
+                }
+                log.info("Партия носков загружена, количество: {}, создано позиций: {}, пополнено: {}, " +
+                        "отклонено строк: {}", result.getRows(), result.getInserted(), result.getUpdated(),
+                        result.getInvalid());
+                return result;
+            } catch (IOException e) {
+                log.error("Ошибка при чтении файла: {}", e.getMessage());
+                throw new RuntimeException("Ошибка при чтении файла", e);
+            } catch (Exception e) {
+                log.error("Ошибка при обработке данных из файла: {}", e.getMessage());
+                throw new RuntimeException("Ошибка при обработке данных из файла", e);
+            } finally {
+                deleteQuietly(tempFile);
+            }
+        });
+    }
 
-        // Проверка на пустой файл
-        if (file.isEmpty()) {
-            log.error("Файл пустой: {}", file.getOriginalFilename());
-            throw new IllegalArgumentException("Файл не должен быть пустым");
+    //Разбор файла партии с публикацией прогресса; используется и синхронной, и фоновой загрузкой.
+    //Строки проверяются, агрегируются по артикулу и сливаются со складом многострочными upsert-ами;
+    //отклоненные строки попадают в отчет, если он задан в progress
+    public LotOfSocksDto importBatch(Path path, BatchFormat format, BatchProgress progress) throws IOException {
+        if (format == BatchFormat.CSV) {
+            try (InputStream inputStream = Files.newInputStream(path)) {
+                return importCsv(inputStream, progress);
+            }
         }
+        return batchPipeline.run(handler -> ExcelSocksReader.read(path.toFile(), handler),
+                newBatchIngest(progress, BatchFormat.EXCEL), progress);
+    }
 
-        try (Workbook workbook = WorkbookFactory.create(file.getInputStream())) {
-            Sheet sheet = workbook.getSheetAt(0); // Получаем первый лист
+    //Копия загрузки на диске: нужна для XLSX и для фоновой обработки, которая переживает HTTP-запрос
+    public Path copyToTempFile(MultipartFile file) throws IOException {
+        Path tempFile = Files.createTempFile("socks-batch-", ".upload");
+        try (InputStream inputStream = file.getInputStream()) {
+            Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            deleteQuietly(tempFile);
+            throw e;
+        }
+        return tempFile;
+    }
 
-            for (Row row : sheet) {
-                if (row.getRowNum() == 0) continue; // Пропускаем заголовок
+    private LotOfSocksDto importCsv(InputStream inputStream, BatchProgress progress) throws IOException {
+        return batchPipeline.run(handler -> CsvSocksReader.read(inputStream, handler),
+                newBatchIngest(progress, BatchFormat.CSV), progress);
+    }
 
-                String color = row.getCell(0).getStringCellValue();
-                int cotton = (int) row.getCell(1).getNumericCellValue();
-                int quantity = (int) row.getCell(2).getNumericCellValue();
+    //Преобразования доступны в пакете для бенчмарков (src/jmh)
+    static LotOfSocksDto convertToLotOfSocks(Socks socks) {
+        return new LotOfSocksDto(socks.getColor(), socks.getCotton(), socks.getQuantity());
+    }
 
-                Socks socks = new Socks();
-                socks.setColor(color);
-                socks.setCotton(cotton);
-                socks.setQuantity(quantity);
+    private SocksBatchIngest newBatchIngest(BatchProgress progress, BatchFormat format) {
+        return new SocksBatchIngest(socksRepository, stockCache, colorDictionary, batchChunkSize,
+                batchMaxPendingSkus, progress, socksMetrics, format);
+    }
 
-                socksList.add(socks);
-            }
-            socksRepository.saveAll(socksList); // Сохраняем все носки в Базе данных
-            log.info("Партия носков успешно загружена, количество: {}", socksList.size());
+    private CachedStock loadStock(SocksKey key) {
+        return stockWriter.load(key);
+    }
+
+    //Цвет и точное значение хлопка задают ровно один артикул
+    private boolean isSingleSku(String color, Integer minCotton, Integer maxCotton) {
+        return color != null && minCotton != null && minCotton.equals(maxCotton);
+    }
+
+    public void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
         } catch (IOException e) {
-            log.error("Ошибка при чтении файла: {}", e.getMessage());
-            throw new RuntimeException("Ошибка при чтении файла", e);
-        } catch (Exception e) {
-            log.error("Ошибка при обработке данных из файла: {}", e.getMessage());
-            throw new RuntimeException("Ошибка при обработке данных из файла", e);
+            log.warn("Не удалось удалить временный файл {}: {}", path, e.getMessage());
         }
-        return new LotOfSocksDto(socksList.size());
     }
 
-    private LotOfSocksDto convertToLotOfSocks(Socks socks) {
-        return new LotOfSocksDto(socks.getColor(), socks.getCotton(), socks.getQuantity());
+    //Отрицательное количество поменяло бы направление движения (отпуск увеличил бы остаток);
+    //проверяется до записи, поэтому одинаково для всех режимов socks.stock.write-mode
+    private static void requireNonNegative(int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Количество не может быть отрицательным");
+        }
     }
 
-//    //Метод для загрузки данных из CSV-файла
-//    public void loadDataFromCSV(String csvFilePath) {
-//        log.info("Загрузка данных из CSV файла: {}", csvFilePath);
-//        try (FileReader reader = new FileReader(csvFilePath)) {
-//            Iterable<CSVRecord> records = CSVFormat.DEFAULT.withHeader("ID", "Color", "Cotton", "Quantity").parse(reader);
-//            for (CSVRecord record : records) {
-//                SocksDto sock = new SocksDto();
-//                sock.setId(Long.parseLong(record.get("ID")));
-//                sock.setColor(record.get("Color"));
-//                sock.setCotton(Integer.parseInt(record.get("Cotton")));
-//                sock.setQuantity(Integer.parseInt(record.get("Quantity")));
-//                socksList.add(sock);
-//            }
-//            log.info("Данные успешно загружены из CSV файла");
-//        } catch (IOException e) {
-//            log.error("Ошибка при чтении CSV файла: {}", e.getMessage());
-//            e.printStackTrace();
-//            // Обработайте ошибку чтения файла
-//        }
-//    }
-
-    public void loadDataFromCSV(String csvFilePath) {
+    //Причина, по которой строка пакета движений не применяется; null - строка корректна
+    private String validateMovement(SocksDto movement) {
+        if (movement.getColor() == null || movement.getColor().isBlank()) {
+            return "Не указан цвет";
+        }
+        if (movement.getCotton() < 0 || movement.getCotton() > 100) {
+            return "Значение хлопка должно быть в диапазоне: 0-100";
+        }
+        if (movement.getQuantity() == 0) {
+            return "Количество не должно быть нулевым";
+        }
+        return null;
+    }
+
+    //Ключ движения без регистрации цвета: новый цвет в пакете пишется как в первом его движении,
+    //остальные написания того же цвета сводятся к нему
+    private SocksKey movementKey(SocksDto movement, Map<String, String> batchColors) {
+        String color = batchColors.computeIfAbsent(ColorDictionary.normalize(movement.getColor()),
+                normalized -> colorDictionary.lookup(movement.getColor()));
+        return new SocksKey(color, movement.getCotton());
+    }
+
+    //Новые цвета регистрируются только для применяемых движений, поэтому отклоненный пакет
+    //не оставляет их в словаре
+    private Map<SocksKey, Integer> canonicalKeys(Map<SocksKey, Integer> deltas) {
+        Map<SocksKey, Integer> canonical = new LinkedHashMap<>();
+        deltas.forEach((key, delta) -> canonical.merge(
+                new SocksKey(colorDictionary.canonical(key.color()), key.cotton()), delta, Math::addExact));
+        return canonical;
+    }
+
+    //Если транзакции нет (вызов вне Spring), кэш сбрасывается сразу
+    private void invalidateAfterCommit(Collection<SocksKey> keys) {
+        List<SocksKey> changed = new ArrayList<>(keys);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            stockCache.invalidate(changed);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                stockCache.invalidate(changed);
+            }
+        });
+    }
+
+    //Пустой цвет означает отсутствие фильтра по цвету; известный цвет ищется в каноническом написании
+    private String normalizeColor(String color) {
+        return colorDictionary.lookup(color);
+    }
+
+    //Загрузка партии из локального CSV файла тем же потоковым разбором, что и для /batch
+    public LotOfSocksDto loadDataFromCSV(String csvFilePath) {
         log.info("Загрузка данных из CSV файла: {}", csvFilePath);
 
         // Проверка на существование файла
@@ -249,22 +554,10 @@ public class SocksServiceImpl implements SocksService {
             throw new IllegalArgumentException("Файл не существует или не может быть прочитан");
         }
 
-        try (FileReader reader = new FileReader(csvFilePath)) {
-            Iterable<CSVRecord> records = CSVFormat.DEFAULT.withHeader("ID", "Color", "Cotton", "Quantity").parse(reader);
-            for (CSVRecord record : records) {
-                try {
-                    SocksDto sock = new SocksDto();
-                    sock.setId(Long.parseLong(record.get("ID")));
-                    sock.setColor(record.get("Color"));
-                    sock.setCotton(Integer.parseInt(record.get("Cotton")));
-                    sock.setQuantity(Integer.parseInt(record.get("Quantity")));
-                    socksList.add(sock);
-                } catch (NumberFormatException e) {
-                    log.error("Ошибка при парсинге данных в строке {}: {}", record.getRecordNumber(), e.getMessage());
-                    // Можно добавить логику для обработки ошибок, например, пропустить строку или сохранить в отдельный список ошибок
-                }
-            }
-            log.info("Данные успешно загружены из CSV файла, количество: {}", socksList.size());
+        try (InputStream inputStream = Files.newInputStream(csvFile.toPath())) {
+            LotOfSocksDto result = importCsv(inputStream, new BatchProgress());
+            log.info("Данные успешно загружены из CSV файла, количество: {}", result.getRows());
+            return result;
         } catch (IOException e) {
             log.error("Ошибка при чтении CSV файла: {}", e.getMessage());
             throw new RuntimeException("Ошибка при чтении CSV файла", e);
@@ -0,0 +1,319 @@
+package com.shop.socks.service.impl;
+
+import com.shop.socks.cache.CachedStock;
+import com.shop.socks.cache.StockCache;
+import com.shop.socks.cache.StockListener;
+import com.shop.socks.journal.StockJournal;
+import com.shop.socks.model.Socks;
+import com.shop.socks.model.SocksKey;
+import com.shop.socks.repository.SocksRepository;
+import com.shop.socks.repository.StockJournalRepository;
+import com.shop.socks.repository.StockRow;
+import com.shop.socks.service.StockWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//Режим отложенной записи (socks.stock.write-mode=write-behind): приход и отпуск применяются к таблице
+//остатков в памяти и дописываются в локальный журнал (StockJournal), после чего сразу подтверждаются.
+//Фоновый сброс раз в socks.write-behind.flush-interval-ms переносит суммарные изменения артикулов в БД
+//одной транзакцией вместе с номером последней учтенной записи журнала; при старте записи после этого
+//номера повторяются. Остаток артикула читается из БД один раз и дальше ведется в памяти, поэтому режим
+//рассчитан на один пишущий экземпляр приложения
+@Component
+@ConditionalOnProperty(name = "socks.stock.write-mode", havingValue = "write-behind")
+@Slf4j
+public class WriteBehindStockWriter implements StockWriter, StockListener, DisposableBean {
+
+    private final SocksRepository socksRepository;
+    private final StockJournalRepository journalRepository;
+    private final StockCache stockCache;
+    private final String nodeId;
+    private final StockJournal journal;
+    private final ScheduledExecutorService flusher;
+
+    //Изменяются под блокировкой артикула в StockCache; pending сбрасывает фоновый поток под gate
+    private final ConcurrentHashMap<SocksKey, Sku> table = new ConcurrentHashMap<>();
+    private final Set<SocksKey> dirty = ConcurrentHashMap.newKeySet();
+    //Запись в журнал и изменение pending - под чтением, снятие изменений для сброса - под записью:
+    //изменения всех записей журнала до снятого номера попадают в один сброс
+    private final ReentrantReadWriteLock gate = new ReentrantReadWriteLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private long flushedSeq; //Под flushLock
+    private Flush retry; //Сброс, исход которого неизвестен; повторяется с тем же номером, под flushLock
+
+    @Autowired
+    public WriteBehindStockWriter(SocksRepository socksRepository,
+                                  StockJournalRepository journalRepository,
+                                  StockCache stockCache,
+                                  @Value("${socks.write-behind.journal-dir:data/journal}") String journalDir,
+                                  @Value("${socks.write-behind.segment-bytes:16777216}") int segmentBytes,
+                                  @Value("${socks.write-behind.fsync:true}") boolean fsync,
+                                  @Value("${socks.write-behind.flush-interval-ms:5}") long flushIntervalMs,
+                                  @Value("${socks.write-behind.node-id:default}") String nodeId) {
+        this.socksRepository = socksRepository;
+        this.journalRepository = journalRepository;
+        this.stockCache = stockCache;
+        this.nodeId = nodeId;
+        this.journal = StockJournal.open(Path.of(journalDir), segmentBytes, fsync);
+        //Журнал прошлого запуска применяется до первого запроса, иначе остатки в памяти
+        //были бы загружены из БД без несброшенных движений
+        replay();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "socks-write-behind-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (flushIntervalMs > 0) {
+            flusher.scheduleWithFixedDelay(this::scheduledFlush, flushIntervalMs, flushIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+        stockCache.addListener(this);
+    }
+
+    @Override
+    public Socks increment(SocksKey key, int quantity) {
+        return apply(key, quantity).orElseThrow();
+    }
+
+    @Override
+    public Optional<Socks> decrement(SocksKey key, int quantity) {
+        return apply(key, -quantity);
+    }
+
+    //Вызывается StockCache под блокировкой артикула
+    @Override
+    public CachedStock load(SocksKey key) {
+        Sku sku = sku(key, false);
+        return sku == null ? CachedStock.ABSENT : new CachedStock(sku.id, sku.quantity);
+    }
+
+    //Перед перезаписью строки все изменения сбрасываются в БД, а остаток артикула
+    //при следующем обращении загружается заново
+    @Override
+    public void settle(SocksKey key) {
+        flush();
+        table.remove(key);
+    }
+
+    //Пакет движений проверяет остаток по БД: несброшенные изменения его артикулов переносятся в нее,
+    //а приход и отпуск по этим артикулам ждут завершения транзакции пакета на их блокировках.
+    //После фиксации остатки перечитываются из БД (stockInvalidated)
+    @Override
+    public void settleForTransaction(Collection<SocksKey> keys) {
+        Runnable unlock = stockCache.lockAll(keys);
+        try {
+            flush();
+            keys.forEach(table::remove);
+        } catch (RuntimeException e) {
+            unlock.run();
+            throw e;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            unlock.run(); //Вне транзакции каждый запрос фиксируется сразу
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                unlock.run();
+            }
+        });
+    }
+
+    @Override
+    public void stockChanged(SocksKey key, CachedStock stock) {
+        //Значения в кэш записывает сам режим или изменение данных носков после settle
+    }
+
+    //Пакеты движений и загрузки партий пишут в БД напрямую: остаток таких артикулов перечитывается
+    @Override
+    public void stockInvalidated(Collection<SocksKey> keys) {
+        for (SocksKey key : keys) {
+            Sku sku = table.get(key);
+            if (sku != null) {
+                sku.stale = true;
+            }
+        }
+    }
+
+    //Перенос накопленных изменений в БД; возвращает число артикулов в сбросе
+    public int flush() {
+        flushLock.lock();
+        try {
+            retryFlush();
+            long seq;
+            Map<SocksKey, Integer> deltas = new HashMap<>();
+            gate.writeLock().lock();
+            try {
+                seq = journal.lastSeq();
+                for (SocksKey key : dirty) {
+                    Sku sku = table.get(key);
+                    if (sku != null && sku.pending != 0) {
+                        deltas.put(key, sku.pending);
+                        sku.pending = 0;
+                    }
+                }
+                dirty.clear();
+            } finally {
+                gate.writeLock().unlock();
+            }
+            if (seq == flushedSeq) {
+                return 0;
+            }
+            //Если фиксация прошла, а ответ потерялся, повтор с тем же номером ничего не изменит
+            retry = new Flush(seq, deltas);
+            retryFlush();
+            return deltas.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        flusher.shutdownNow();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Журнал движений не сброшен при остановке, он будет применен при запуске: {}",
+                    e.getMessage());
+        }
+        journal.close();
+    }
+
+    private Optional<Socks> apply(SocksKey key, int delta) {
+        long[] seq = new long[1];
+        Optional<Socks> result = stockCache.writeThrough(key, () -> {
+            Sku sku = sku(key, delta >= 0);
+            if (delta > 0 && sku.quantity > Integer.MAX_VALUE - delta) {
+                //Проверяется до журнала: переполненный остаток иначе был бы записан и воспроизведен
+                throw new IllegalArgumentException("Остаток превысит допустимое количество");
+            }
+            if (sku == null || sku.quantity + delta < 0) {
+                return Optional.empty(); //Отпуск сверх остатка или по отсутствующему артикулу отклоняется
+            }
+            gate.readLock().lock();
+            try {
+                seq[0] = journal.append(key.color(), key.cotton(), delta);
+                sku.quantity += delta;
+                sku.pending += delta;
+                dirty.add(key);
+            } finally {
+                gate.readLock().unlock();
+            }
+            Socks socks = new Socks(key.color(), key.cotton(), sku.quantity);
+            socks.setId(sku.id);
+            return Optional.of(socks);
+        });
+        //Ответ отдается, когда запись журнала на диске; ожидающие потоки сбрасываются одним force
+        if (result.isPresent()) {
+            journal.sync(seq[0]);
+        }
+        return result;
+    }
+
+    //Остаток артикула в памяти; загружается из БД при первом обращении и после изменений в обход режима.
+    //Загрузка идет под flushLock: количество в БД и несброшенный остаток pending читаются согласованно.
+    //Новому артикулу с приходом сразу создается строка, чтобы у позиции был id
+    private Sku sku(SocksKey key, boolean create) {
+        Sku sku = table.get(key);
+        if (sku != null && !sku.stale) {
+            return sku;
+        }
+        flushLock.lock();
+        try {
+            retryFlush();
+            Long id;
+            int quantity;
+            Optional<Socks> row = socksRepository.findByColorAndCotton(key.color(), key.cotton());
+            if (row.isPresent()) {
+                id = row.get().getId();
+                quantity = row.get().getQuantity();
+            } else if (create) {
+                StockRow created = socksRepository.upsertStock(key.color(), key.cotton(), 0);
+                id = created.getId();
+                quantity = created.getQuantity();
+            } else {
+                return null;
+            }
+            if (sku == null) {
+                sku = new Sku();
+                table.put(key, sku);
+            }
+            sku.id = id;
+            sku.quantity = quantity + sku.pending;
+            sku.stale = false;
+            return sku;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void retryFlush() {
+        if (retry == null) {
+            return;
+        }
+        journalRepository.apply(nodeId, retry.seq(), retry.deltas());
+        flushedSeq = retry.seq();
+        log.debug("Журнал движений сброшен в БД до записи {}: {} артикулов", retry.seq(), retry.deltas().size());
+        retry = null;
+        journal.release(flushedSeq);
+    }
+
+    private void replay() {
+        long flushed = journalRepository.flushedSeq(nodeId);
+        Map<SocksKey, Integer> deltas = new LinkedHashMap<>();
+        long last = journal.replay(flushed, (seq, color, cotton, delta) ->
+                deltas.merge(new SocksKey(color, cotton), delta, Integer::sum));
+        if (last > flushed) {
+            journalRepository.apply(nodeId, last, deltas);
+            log.info("Журнал движений применен при запуске: записи {}..{}, артикулов: {}",
+                    flushed + 1, last, deltas.size());
+            flushed = last;
+        }
+        flushedSeq = flushed;
+        journal.start(flushed);
+        journal.release(flushed);
+    }
+
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Ошибка сброса журнала движений в БД: {}", e.getMessage());
+        }
+    }
+
+    private static final class Sku {
+        private Long id;
+        private int quantity; //Текущий остаток с учетом несброшенных изменений
+        private int pending; //Изменения, еще не внесенные в БД
+        private volatile boolean stale;
+    }
+
+    private record Flush(long seq, Map<SocksKey, Integer> deltas) {
+    }
+}
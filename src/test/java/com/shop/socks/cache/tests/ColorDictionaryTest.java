@@ -0,0 +1,98 @@
+package com.shop.socks.cache.tests;
+
+import com.shop.socks.cache.ColorDictionary;
+import com.shop.socks.model.SocksColor;
+import com.shop.socks.repository.ColorRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColorDictionaryTest {
+
+    //Проверить, что варианты регистра и пробелов - один цвет с одним экземпляром написания
+    @Test
+    public void testVariantsShareCanonicalName() {
+        ColorDictionary dictionary = new ColorDictionary(null);
+
+        String red = dictionary.canonical("Red");
+
+        assertSame(red, dictionary.canonical(" red "));
+        assertSame(red, dictionary.canonical("RED"));
+        assertSame(red, dictionary.lookup("rEd"));
+        assertEquals("Dark Blue", dictionary.canonical(" Dark \t Blue"));
+        assertEquals("Dark Blue", dictionary.canonical("dark blue"));
+        assertEquals(2, dictionary.size());
+    }
+
+    //Проверить, что выборка по неизвестному цвету не регистрирует его, а пустой цвет не фильтрует
+    @Test
+    public void testLookupUnknownNotRegistered() {
+        ColorDictionary dictionary = new ColorDictionary(null);
+
+        assertEquals("Green", dictionary.lookup("  Green "));
+        assertEquals(0, dictionary.size());
+        assertNull(dictionary.lookup("   "));
+        assertEquals("   ", dictionary.canonical("   ")); //Пустой цвет отклоняет проверка операции
+    }
+
+    //Проверить, что при первом запуске словарь заполняется цветами остатков, а при следующем - из таблицы
+    @Test
+    public void testSeedFromStock() {
+        InMemoryRepository repository = new InMemoryRepository("Blue", "Red", "red ");
+
+        ColorDictionary dictionary = new ColorDictionary(repository);
+        assertEquals(0, dictionary.size()); //Таблица читается только после старта приложения
+        dictionary.load();
+
+        assertEquals(2, dictionary.size());
+        assertEquals("Red", dictionary.canonical("RED")); //Первый вариант по порядку
+        assertEquals("Blue", dictionary.lookup("blue"));
+
+        dictionary.canonical("Green");
+        ColorDictionary restarted = new ColorDictionary(repository);
+        restarted.load();
+
+        assertEquals(3, restarted.size());
+        assertEquals("Green", restarted.lookup("GREEN"));
+        assertEquals("Red", restarted.canonical("rED"));
+    }
+
+    //Таблицы socks_colors и socks (только цвета) в памяти
+    private static final class InMemoryRepository extends ColorRepository {
+
+        private final Map<String, SocksColor> colors = new LinkedHashMap<>();
+        private final List<String> stockColors;
+
+        InMemoryRepository(String... stockColors) {
+            super(null);
+            this.stockColors = List.of(stockColors);
+        }
+
+        @Override
+        public void forEach(Consumer<SocksColor> consumer) {
+            new ArrayList<>(colors.values()).forEach(consumer);
+        }
+
+        @Override
+        public SocksColor register(String name, String normalized) {
+            return colors.computeIfAbsent(normalized, key -> new SocksColor(name, key));
+        }
+
+        @Override
+        public void forEachStockColor(Consumer<String> consumer) {
+            stockColors.forEach(consumer);
+        }
+
+        @Override
+        public void seed(Collection<SocksColor> seeded) {
+            seeded.forEach(color -> register(color.getName(), color.getNormalized()));
+        }
+    }
+}
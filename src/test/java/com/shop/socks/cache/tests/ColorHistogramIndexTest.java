@@ -0,0 +1,141 @@
+package com.shop.socks.cache.tests;
+
+import com.shop.socks.cache.CachedStock;
+import com.shop.socks.cache.ColorDictionary;
+import com.shop.socks.cache.ColorHistogramIndex;
+import com.shop.socks.cache.StockCache;
+import com.shop.socks.dto.SocksDto;
+import com.shop.socks.metrics.SocksMetrics;
+import com.shop.socks.model.Socks;
+import com.shop.socks.model.SocksKey;
+import com.shop.socks.repository.SocksRepository;
+import com.shop.socks.repository.StockRowCallback;
+import com.shop.socks.service.impl.BatchPipeline;
+import com.shop.socks.service.impl.DirectStockWriter;
+import com.shop.socks.service.impl.SocksServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class ColorHistogramIndexTest {
+
+    private SocksRepository socksRepository;
+    private StockCache stockCache;
+    private ColorHistogramIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        socksRepository = mock(SocksRepository.class);
+        stockCache = new StockCache(100, 60);
+        index = new ColorHistogramIndex(socksRepository, stockCache, 60, 1000);
+    }
+
+    //Проверить суммы и списки по диапазонам хлопка, включая границы за пределами 0..100
+    @Test
+    public void testRangeQueries() {
+        when(socksRepository.findByColor("Red")).thenReturn(List.of(
+                socks(1L, "Red", 0, 5), socks(2L, "Red", 50, 10), socks(3L, "Red", 100, 20)));
+
+        assertEquals(35, index.sumQuantity("Red", null, null).getAsLong());
+        assertEquals(15, index.sumQuantity("Red", -10, 50).getAsLong());
+        assertEquals(30, index.sumQuantity("Red", 50, 200).getAsLong());
+        assertEquals(0, index.sumQuantity("Red", 60, 40).getAsLong());
+
+        List<SocksDto> listed = scan("Red", 1, 100);
+        assertEquals(List.of(50, 100), listed.stream().map(SocksDto::getCotton).toList());
+        assertEquals(3L, listed.get(1).getId());
+        verify(socksRepository, times(1)).findByColor("Red"); //Цвет загружается один раз
+    }
+
+    //Проверить, что изменения через кэш применяются к снимку без обращения к БД,
+    //а сброс артикула приводит к перечитыванию цвета
+    @Test
+    public void testIncrementalUpdatesAndInvalidation() {
+        when(socksRepository.findByColor("Red")).thenReturn(List.of(socks(1L, "Red", 50, 10)));
+        assertEquals(10, index.sumQuantity("Red", 0, 100).getAsLong());
+
+        stockCache.put(new SocksKey("Red", 50), new CachedStock(1L, 7));
+        stockCache.put(new SocksKey("Red", 70), new CachedStock(2L, 4));
+        assertEquals(11, index.sumQuantity("Red", 0, 100).getAsLong());
+        stockCache.put(new SocksKey("Red", 70), CachedStock.ABSENT);
+        assertEquals(1, scan("Red", 0, 100).size());
+        verify(socksRepository, times(1)).findByColor("Red");
+
+        when(socksRepository.findByColor("Red")).thenReturn(List.of(socks(1L, "Red", 50, 40)));
+        stockCache.invalidate(List.of(new SocksKey("Red", 50)));
+        assertEquals(40, index.sumQuantity("Red", 0, 100).getAsLong());
+        verify(socksRepository, times(2)).findByColor("Red");
+    }
+
+    //Проверить, что цвет с позицией вне диапазона хлопка индексом не обслуживается
+    @Test
+    public void testOutOfRangeCottonFallsBackToDatabase() {
+        when(socksRepository.findByColor("Red")).thenReturn(List.of(socks(1L, "Red", 150, 10)));
+
+        assertTrue(index.sumQuantity("Red", 0, 100).isEmpty());
+        assertFalse(index.scanCottonRange("Red", 0, 100,
+                (id, color, cotton, quantity) -> fail("Строк быть не должно")));
+    }
+
+    //Проверить построение индекса одним проходом по таблице
+    @Test
+    public void testRebuild() {
+        doAnswer(invocation -> {
+            StockRowCallback callback = invocation.getArgument(4);
+            callback.row(1L, "Blue", 10, 3);
+            callback.row(2L, "Blue", 20, 4);
+            callback.row(3L, "Red", 50, 5);
+            return null;
+        }).when(socksRepository).scanFiltered(isNull(), isNull(), isNull(), eq("color"), any());
+
+        index.rebuild();
+
+        assertEquals(7, index.sumQuantity("Blue", null, null).getAsLong());
+        assertEquals(5, index.sumQuantity("Red", null, null).getAsLong());
+        verify(socksRepository, never()).findByColor(anyString());
+    }
+
+    //Проверить, что сервис отвечает на запросы по диапазону хлопка из индекса, не обращаясь к БД
+    @Test
+    public void testServiceUsesIndex() {
+        when(socksRepository.findByColor("Red")).thenReturn(List.of(
+                socks(1L, "Red", 30, 5), socks(2L, "Red", 60, 10)));
+        SocksServiceImpl service = new SocksServiceImpl(socksRepository, stockCache,
+                new DirectStockWriter(socksRepository, stockCache),
+                new SocksMetrics(new SimpleMeterRegistry(), stockCache), Optional.of(index),
+                new BatchPipeline(2, 8, 4096), new ColorDictionary(null));
+
+        List<SocksDto> result = service.getFilteredSocks(" Red ", 20, 70, "cotton");
+        long total = service.getTotalQuantity("Red", 40, null);
+
+        assertEquals(List.of(30, 60), result.stream().map(SocksDto::getCotton).toList());
+        assertEquals(10, total);
+        verify(socksRepository, never()).scanFiltered(any(), any(), any(), any(), any());
+        verify(socksRepository, never()).sumQuantity(any(), any(), any());
+    }
+
+    private List<SocksDto> scan(String color, Integer minCotton, Integer maxCotton) {
+        List<SocksDto> result = new ArrayList<>();
+        assertTrue(index.scanCottonRange(color, minCotton, maxCotton, (id, rowColor, cotton, quantity) -> {
+            SocksDto socksDto = new SocksDto(rowColor, cotton, quantity);
+            socksDto.setId(id);
+            result.add(socksDto);
+        }));
+        return result;
+    }
+
+    private static Socks socks(Long id, String color, int cotton, int quantity) {
+        Socks socks = new Socks(color, cotton, quantity);
+        socks.setId(id);
+        return socks;
+    }
+}
@@ -0,0 +1,240 @@
+package com.shop.socks.cache.tests;
+
+import com.shop.socks.cache.IdempotencyStore;
+import com.shop.socks.cache.IdempotencyStore.Status;
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.dto.SocksDto;
+import com.shop.socks.model.IdempotencyRecord;
+import com.shop.socks.repository.IdempotencyRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyStoreTest {
+
+    private static final SocksDto INCOME = new SocksDto("Red", 50, 10);
+
+    private InMemoryRepository repository;
+    private IdempotencyStore store;
+    private AtomicInteger executions;
+
+    @BeforeEach
+    public void setUp() {
+        repository = new InMemoryRepository();
+        store = store(100);
+        executions = new AtomicInteger();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        store.destroy();
+    }
+
+    //Проверить, что повтор ключа возвращает сохраненный ответ, не выполняя операцию,
+    //а тот же ключ с другим запросом отклоняется
+    @Test
+    public void testReplay() {
+        assertEquals(Status.EXECUTED, store.execute("k1", "income", INCOME, this::income).status());
+
+        IdempotencyStore.Result replayed = store.execute("k1", "income", INCOME, this::income);
+
+        assertEquals(Status.REPLAYED, replayed.status());
+        assertEquals(10, replayed.response().getQuantity());
+        assertEquals(Status.CONFLICT, store.execute("k1", "outcome", INCOME, this::income).status());
+        assertEquals(Status.CONFLICT,
+                store.execute("k1", "income", new SocksDto("Red", 50, 11), this::income).status());
+        assertEquals(1, executions.get());
+        assertEquals(0, repository.finds.get()); //Ключ найден в памяти
+    }
+
+    //Проверить, что вытесненный из памяти ключ находится в БД, а новый ключ занимается без чтения
+    @Test
+    public void testEvictedKeyFoundInDatabase() {
+        store.destroy();
+        store = store(1);
+        store.execute("k1", "income", INCOME, this::income);
+        store.execute("k2", "income", INCOME, this::income); //Вытесняет k1
+        assertEquals(2, store.flush());
+
+        assertEquals(Status.REPLAYED, store.execute("k1", "income", INCOME, this::income).status());
+        assertEquals(1, repository.finds.get());
+        assertEquals(Status.EXECUTED, store.execute("k3", "income", INCOME, this::income).status());
+        assertEquals(1, repository.finds.get());
+        assertEquals(3, executions.get());
+    }
+
+    //Проверить, что после перезапуска ключи прошлого запуска не выполняются повторно
+    @Test
+    public void testReplayAfterRestart() {
+        store.execute("k1", "income", INCOME, this::income);
+        store.destroy(); //Записывает ответы в БД
+
+        store = store(100);
+
+        assertEquals(Status.REPLAYED, store.execute("k1", "income", INCOME, this::income).status());
+        assertEquals(1, executions.get());
+    }
+
+    //Проверить, что повтор на другом экземпляре до записи ответа в БД не выполняет операцию второй раз,
+    //а после записи получает сохраненный ответ
+    @Test
+    public void testRetryOnAnotherInstance() {
+        IdempotencyStore other = store(100);
+        try {
+            assertEquals(Status.EXECUTED, store.execute("k1", "income", INCOME, this::income).status());
+
+            assertEquals(Status.IN_PROGRESS, other.execute("k1", "income", INCOME, this::income).status());
+            store.flush();
+            assertEquals(Status.REPLAYED, other.execute("k1", "income", INCOME, this::income).status());
+            assertEquals(1, executions.get());
+        } finally {
+            other.destroy();
+        }
+    }
+
+    //Проверить, что ответ, не записанный в БД до аварийной остановки, не приводит к повторному выполнению
+    @Test
+    public void testRetryAfterCrashBeforeFlush() {
+        store.execute("k1", "income", INCOME, this::income);
+        //Процесс остановлен без destroy: ответа в БД нет, ключ занят
+
+        IdempotencyStore restarted = store(100);
+        try {
+            assertEquals(Status.IN_PROGRESS, restarted.execute("k1", "income", INCOME, this::income).status());
+            assertEquals(1, executions.get());
+        } finally {
+            restarted.destroy();
+        }
+    }
+
+    //Проверить, что ключ без ответа, брошенный остановленным экземпляром, после аренды занимается заново
+    @Test
+    public void testAbandonedReservationExpires() {
+        store.execute("k1", "income", INCOME, this::income);
+        //Процесс остановлен без destroy, аренда ключа истекла
+        repository.records.get("k1").setCreatedAt(OffsetDateTime.now().minusMinutes(2));
+
+        IdempotencyStore restarted = store(100);
+        try {
+            assertEquals(Status.EXECUTED, restarted.execute("k1", "income", INCOME, this::income).status());
+            assertEquals(2, executions.get());
+            restarted.flush();
+            assertTrue(repository.records.get("k1").hasResponse());
+        } finally {
+            restarted.destroy();
+        }
+    }
+
+    //Проверить, что отказ не запоминается: ключ освобождается, повтор с тем же ключом выполняется заново
+    @Test
+    public void testRejectedNotRemembered() {
+        assertNull(store.execute("k1", "outcome", INCOME, () -> null).response());
+        assertFalse(repository.records.containsKey("k1"));
+
+        assertEquals(Status.EXECUTED, store.execute("k1", "outcome", INCOME, this::income).status());
+        assertEquals(1, executions.get());
+    }
+
+    //Проверить, что одновременный запрос с тем же ключом ждет первый и получает его ответ
+    @Test
+    public void testConcurrentSameKey() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<IdempotencyStore.Result> first = executor.submit(() ->
+                    store.execute("k1", "income", INCOME, () -> {
+                        running.countDown();
+                        awaitQuietly(release);
+                        return income();
+                    }));
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            Future<IdempotencyStore.Result> second = executor.submit(() ->
+                    store.execute("k1", "income", INCOME, this::income));
+            release.countDown();
+
+            assertEquals(Status.EXECUTED, first.get(5, TimeUnit.SECONDS).status());
+            assertEquals(Status.REPLAYED, second.get(5, TimeUnit.SECONDS).status());
+            assertEquals(1, executions.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private IdempotencyStore store(int maxEntries) {
+        //Запись по расписанию отключена, тесты вызывают flush сами
+        return new IdempotencyStore(repository, maxEntries, 24, 60_000, 0, 5000);
+    }
+
+    private LotOfSocksDto income() {
+        executions.incrementAndGet();
+        return new LotOfSocksDto(INCOME.getColor(), INCOME.getCotton(), INCOME.getQuantity());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //Таблица socks_idempotency в памяти
+    private static final class InMemoryRepository extends IdempotencyRepository {
+
+        private final Map<String, IdempotencyRecord> records = new ConcurrentHashMap<>();
+        private final AtomicInteger finds = new AtomicInteger();
+
+        InMemoryRepository() {
+            super(null);
+        }
+
+        //Ключ без ответа старше аренды занимается заново
+        @Override
+        public boolean reserve(IdempotencyRecord reservation, long leaseMs) {
+            OffsetDateTime now = OffsetDateTime.now();
+            reservation.setCreatedAt(now);
+            IdempotencyRecord current = records.compute(reservation.getIdempotencyKey(), (key, previous) ->
+                    previous == null || !previous.hasResponse()
+                            && previous.getCreatedAt().isBefore(now.minusNanos(leaseMs * 1_000_000))
+                            ? reservation : previous);
+            return current == reservation;
+        }
+
+        @Override
+        public void release(String key) {
+            records.computeIfPresent(key, (k, record) -> record.hasResponse() ? record : null);
+        }
+
+        @Override
+        public void saveAll(Collection<IdempotencyRecord> saved) {
+            saved.forEach(record -> records.merge(record.getIdempotencyKey(), record,
+                    (previous, next) -> previous.hasResponse() ? previous : next));
+        }
+
+        @Override
+        public Optional<IdempotencyRecord> find(String key) {
+            finds.incrementAndGet();
+            return Optional.ofNullable(records.get(key));
+        }
+
+        @Override
+        public int deleteExpired(long maxAgeSeconds) {
+            return 0;
+        }
+    }
+}
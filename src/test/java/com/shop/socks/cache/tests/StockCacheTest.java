@@ -0,0 +1,197 @@
+package com.shop.socks.cache.tests;
+
+import com.shop.socks.cache.CacheStats;
+import com.shop.socks.cache.CachedStock;
+import com.shop.socks.cache.ColorDictionary;
+import com.shop.socks.cache.StockCache;
+import com.shop.socks.cache.StockVersions;
+import com.shop.socks.dto.SocksDto;
+import com.shop.socks.metrics.SocksMetrics;
+import com.shop.socks.model.Socks;
+import com.shop.socks.model.SocksKey;
+import com.shop.socks.repository.SocksRepository;
+import com.shop.socks.service.impl.BatchPipeline;
+import com.shop.socks.service.impl.DirectStockWriter;
+import com.shop.socks.service.impl.SocksServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StockCacheTest {
+
+    //Проверить вытеснение давно не используемых артикулов и счетчики попаданий/промахов/вытеснений
+    @Test
+    public void testLruEvictionAndStats() {
+        StockCache cache = new StockCache(2, 60);
+        SocksKey red = new SocksKey("Red", 50);
+        SocksKey blue = new SocksKey("Blue", 50);
+        SocksKey green = new SocksKey("Green", 50);
+
+        cache.get(red, key -> new CachedStock(1L, 10));   //Промах
+        cache.get(blue, key -> new CachedStock(2L, 20));  //Промах
+        cache.get(red, key -> fail("Должно быть попадание")); //Попадание, red становится свежим
+        cache.get(green, key -> new CachedStock(3L, 30)); //Промах, вытесняет blue
+
+        assertEquals(21, cache.get(blue, key -> new CachedStock(2L, 21)).quantity()); //Вытеснен и загружен заново
+        CacheStats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(4, stats.misses());
+        assertEquals(2, stats.evictions());
+        assertEquals(2, stats.size());
+    }
+
+    //Проверить, что отклоненное изменение не трогает кэш
+    @Test
+    public void testWriteThrough_RejectedWriteKeepsEntry() {
+        StockCache cache = new StockCache(10, 60);
+        SocksKey key = new SocksKey("Red", 50);
+        cache.put(key, new CachedStock(1L, 5));
+
+        cache.writeThrough(key, Optional::empty);
+
+        assertEquals(5, cache.get(key, k -> fail("Значение должно остаться в кэше")).quantity());
+    }
+
+    //Проверить, что версии остатков меняет только изменение, а не загрузка при промахе кэша
+    @Test
+    public void testVersionsChangeOnWriteOnly() {
+        StockCache cache = new StockCache(10, 60);
+        StockVersions versions = new StockVersions(cache);
+        SocksKey key = new SocksKey("Red", 50);
+
+        cache.get(key, k -> new CachedStock(1L, 5));
+
+        assertEquals(0, versions.version("Red"));
+        assertEquals(0, versions.version(null));
+
+        cache.writeThrough(key, () -> Optional.of(FakeTable.row(key, 7)));
+
+        assertEquals(1, versions.version("Red"));
+        assertEquals(1, versions.version(null));
+        assertEquals(7, cache.get(key, k -> fail("Значение должно быть в кэше")).quantity());
+    }
+
+    //Проверить, что при параллельных приходах и отпусках кэш совпадает с таблицей.
+    //Репозиторий имитирует таблицу с атомарными запросами и случайной задержкой ответа,
+    //чтобы ответы разных потоков возвращались не в порядке их выполнения в БД
+    @Test
+    public void testConsistencyUnderConcurrentIncomeAndOutcome() throws Exception {
+        FakeTable table = new FakeTable();
+        StockCache cache = new StockCache(100, 60);
+        SocksRepository repository = table.repository();
+        SocksServiceImpl service = new SocksServiceImpl(repository, cache, new DirectStockWriter(repository, cache),
+                new SocksMetrics(new SimpleMeterRegistry(), cache), Optional.empty(), new BatchPipeline(2, 8, 4096),
+                new ColorDictionary(null));
+        SocksKey key = new SocksKey("Red", 50);
+        service.addSocks(new SocksDto("Red", 50, 100));
+
+        int threads = 32;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                boolean income = i % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 200; j++) {
+                        if (income) {
+                            service.addSocks(new SocksDto("Red", 50, 3));
+                        } else {
+                            service.removeSocks(new SocksDto("Red", 50, 2));
+                        }
+                        service.getFilteredSocks("Red", 50, 50, null); //Чтения идут параллельно с записью
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int expected = table.quantity(key);
+        assertEquals(expected, cache.get(key, k -> fail("Артикул должен быть в кэше")).quantity());
+        assertEquals(expected, service.getFilteredSocks("Red", 50, 50, null).get(0).getQuantity());
+    }
+
+    private static final class FakeTable {
+
+        private final Map<SocksKey, Integer> rows = new HashMap<>();
+
+        synchronized int quantity(SocksKey key) {
+            return rows.getOrDefault(key, 0);
+        }
+
+        SocksRepository repository() {
+            SocksRepository repository = mock(SocksRepository.class);
+            when(repository.incrementQuantity(anyString(), anyInt(), anyInt())).thenAnswer(invocation -> {
+                SocksKey key = new SocksKey(invocation.getArgument(0), invocation.getArgument(1));
+                Socks socks;
+                synchronized (this) {
+                    int quantity = rows.merge(key, invocation.getArgument(2), Integer::sum);
+                    socks = row(key, quantity);
+                }
+                jitter();
+                return socks;
+            });
+            when(repository.decrementQuantity(anyString(), anyInt(), anyInt())).thenAnswer(invocation -> {
+                SocksKey key = new SocksKey(invocation.getArgument(0), invocation.getArgument(1));
+                int requested = invocation.getArgument(2);
+                Optional<Socks> result;
+                synchronized (this) {
+                    Integer quantity = rows.get(key);
+                    if (quantity == null || quantity < requested) {
+                        result = Optional.empty();
+                    } else {
+                        rows.put(key, quantity - requested);
+                        result = Optional.of(row(key, quantity - requested));
+                    }
+                }
+                jitter();
+                return result;
+            });
+            when(repository.findByColorAndCotton(anyString(), anyInt())).thenAnswer(invocation -> {
+                SocksKey key = new SocksKey(invocation.getArgument(0), invocation.getArgument(1));
+                Optional<Socks> result;
+                synchronized (this) {
+                    Integer quantity = rows.get(key);
+                    result = quantity == null ? Optional.empty() : Optional.of(row(key, quantity));
+                }
+                jitter();
+                return result;
+            });
+            return repository;
+        }
+
+        private static Socks row(SocksKey key, int quantity) {
+            Socks socks = new Socks(key.color(), key.cotton(), quantity);
+            socks.setId(1L);
+            return socks;
+        }
+
+        private static void jitter() throws InterruptedException {
+            Thread.sleep(0, ThreadLocalRandom.current().nextInt(200_000));
+        }
+    }
+}
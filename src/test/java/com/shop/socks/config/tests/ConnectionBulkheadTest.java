@@ -0,0 +1,39 @@
+package com.shop.socks.config.tests;
+
+import com.shop.socks.config.ConnectionBulkhead;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConnectionBulkheadTest {
+
+    //Проверить, что ограничитель не выдает больше соединений, чем разрешений, и возвращает их при close()
+    @Test
+    public void testBulkheadLimitsConnections() throws Exception {
+        ConnectionBulkhead bulkhead = new ConnectionBulkhead(fakePool(), 2, 50);
+
+        Connection first = bulkhead.getConnection();
+        Connection second = bulkhead.getConnection();
+        assertEquals(0, bulkhead.getAvailablePermits());
+        assertThrows(SQLTransientConnectionException.class, bulkhead::getConnection);
+
+        first.close();
+        first.close(); //Повторное закрытие не освобождает лишнее разрешение
+        assertEquals(1, bulkhead.getAvailablePermits());
+        second.close();
+        assertEquals(2, bulkhead.getAvailablePermits());
+    }
+
+    private static DataSource fakePool() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        return dataSource;
+    }
+}
@@ -1,31 +1,61 @@
 package com.shop.socks.controller.tests;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.socks.cache.CachedStock;
+import com.shop.socks.cache.ColorDictionary;
+import com.shop.socks.cache.IdempotencyStore;
+import com.shop.socks.cache.ResponseCache;
+import com.shop.socks.cache.StockCache;
+import com.shop.socks.cache.StockVersions;
 import com.shop.socks.controller.SocksController;
+import com.shop.socks.dto.BatchJobDto;
+import com.shop.socks.dto.BulkMovementResultDto;
+import com.shop.socks.dto.BulkMovementsDto;
 import com.shop.socks.dto.LotOfSocksDto;
 import com.shop.socks.dto.SocksDto;
+import com.shop.socks.dto.SocksPageDto;
+import com.shop.socks.model.SocksKey;
+import com.shop.socks.repository.IdempotencyRepository;
+import com.shop.socks.repository.StockRowCallback;
+import com.shop.socks.service.impl.BatchJobServiceImpl;
 import com.shop.socks.service.impl.SocksServiceImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.crossstore.ChangeSetPersister;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 
 public class SocksControllerTest {
 
@@ -35,15 +65,26 @@ public class SocksControllerTest {
     @Mock
     private SocksServiceImpl socksServiceImpl;
 
-    @InjectMocks
+    @Mock
+    private BatchJobServiceImpl batchJobServiceImpl;
+
     private SocksController socksController;
 
+    private StockCache stockCache;
+
 
     private ObjectMapper objectMapper;
 
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
+        stockCache = new StockCache(100, 60);
+        IdempotencyRepository idempotencyRepository = mock(IdempotencyRepository.class);
+        when(idempotencyRepository.reserve(any(), anyLong())).thenReturn(true);
+        socksController = new SocksController(socksServiceImpl, batchJobServiceImpl,
+                new ResponseCache(new StockVersions(stockCache), new ColorDictionary(null), new ObjectMapper(),
+                        100, 1 << 20, 1 << 24, 60),
+                new IdempotencyStore(idempotencyRepository, 100, 24, 30_000, 0, 1000));
         mockMvc = MockMvcBuilders.standaloneSetup(socksController).build();
         objectMapper = new ObjectMapper();
     }
@@ -64,6 +105,34 @@ public class SocksControllerTest {
                 .andExpect(jsonPath("$.quantity").value(100));
     }
 
+    //Проверить, что повтор прихода с тем же Idempotency-Key возвращает прежний ответ без второго прихода,
+    //а тот же ключ с другим телом отклоняется
+    @Test
+    public void testArrivalOfSocks_IdempotencyKey() throws Exception {
+        String jsonContent = objectMapper.writeValueAsString(new SocksDto("Red", 50, 100));
+        when(socksServiceImpl.addSocks(any(SocksDto.class))).thenReturn(new LotOfSocksDto("Red", 50, 100));
+
+        mockMvc.perform(post("/api/socks/income")
+                        .header("Idempotency-Key", "order-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonContent))
+                .andExpect(status().isCreated());
+        mockMvc.perform(post("/api/socks/income")
+                        .header("Idempotency-Key", "order-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonContent))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.quantity").value(100));
+        mockMvc.perform(post("/api/socks/income")
+                        .header("Idempotency-Key", "order-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new SocksDto("Red", 50, 5))))
+                .andExpect(status().isUnprocessableEntity());
+
+        verify(socksServiceImpl, times(1)).addSocks(any(SocksDto.class));
+    }
+
     @Test
     public void testDepartureOfSocks_Success() throws Exception {
         //Подготовка данных для теста
@@ -169,6 +238,91 @@ public class SocksControllerTest {
                 .andExpect(jsonPath("$[0].cotton").value(100));
     }
 
+    //Проверяет условный GET: повтор с If-None-Match получает 304 без обращения к сервису,
+    //а изменение остатков цвета приводит к перестроению ответа с новым ETag
+    @Test
+    public void testAllFilteredSocks_ConditionalGet() throws Exception {
+        when(socksServiceImpl.getFilteredSocks("Red", null, null, null))
+                .thenReturn(List.of(new SocksDto("Red", 50, 10)))
+                .thenReturn(List.of(new SocksDto("Red", 50, 7)));
+
+        String etag = mockMvc.perform(get("/api/socks").param("color", "Red"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].quantity").value(10))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(get("/api/socks").param("color", "Red").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+        mockMvc.perform(get("/api/socks").param("color", "Red"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].quantity").value(10));
+        verify(socksServiceImpl, times(1)).getFilteredSocks("Red", null, null, null);
+
+        stockCache.put(new SocksKey("Red", 50), new CachedStock(1L, 7));
+        mockMvc.perform(get("/api/socks").param("color", "Red").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].quantity").value(7));
+        verify(socksServiceImpl, times(2)).getFilteredSocks("Red", null, null, null);
+    }
+
+    //Проверяет постраничную выдачу и отказ на некорректный курсор
+    @Test
+    public void testPageOfFilteredSocks() throws Exception {
+        SocksPageDto page = new SocksPageDto();
+        page.setItems(List.of(new SocksDto("Red", 30, 5)));
+        page.setNextCursor("next");
+        when(socksServiceImpl.getSocksPage("Red", null, null, null, null, 1)).thenReturn(page);
+        when(socksServiceImpl.getSocksPage("Red", null, null, null, "broken", null))
+                .thenThrow(new IllegalArgumentException("Некорректный курсор: broken"));
+
+        mockMvc.perform(get("/api/socks/page")
+                        .param("color", "Red")
+                        .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].cotton").value(30))
+                .andExpect(jsonPath("$.nextCursor").value("next"));
+        mockMvc.perform(get("/api/socks/page")
+                        .param("color", "Red")
+                        .param("cursor", "broken"))
+                .andExpect(status().isBadRequest());
+    }
+
+    //Проверяет потоковую выдачу: по JSON-объекту на строку
+    @Test
+    public void testStreamOfFilteredSocks() throws Exception {
+        doAnswer(invocation -> {
+            StockRowCallback callback = invocation.getArgument(4);
+            callback.row(1L, "Red", 30, 5);
+            callback.row(2L, "Red", 40, 7);
+            return null;
+        }).when(socksServiceImpl).streamFilteredSocks(eq("Red"), isNull(), isNull(), eq("cotton"), any());
+
+        MvcResult result = mockMvc.perform(get("/api/socks/stream")
+                        .param("color", "Red")
+                        .param("sortBy", "cotton"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", MediaType.APPLICATION_NDJSON_VALUE))
+                .andExpect(content().string("{\"id\":1,\"color\":\"Red\",\"cotton\":30,\"quantity\":5}\n"
+                        + "{\"id\":2,\"color\":\"Red\",\"cotton\":40,\"quantity\":7}\n"));
+    }
+
+    //Проверяет получение суммарного количества носков с фильтрацией
+    @Test
+    public void testTotalQuantityOfSocks() throws Exception {
+        when(socksServiceImpl.getTotalQuantity("Red", 30, 60)).thenReturn(250L);
+
+        mockMvc.perform(get("/api/socks/total")
+                        .param("color", "Red")
+                        .param("minCotton", "30")
+                        .param("maxCotton", "60"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").value(250));
+    }
+
     @Test
     public void testUpdateSocks_Success() throws Exception {
         // Подготовка данных для теста
@@ -189,4 +343,71 @@ public class SocksControllerTest {
                 .andExpect(jsonPath("$.quantity").value(150)); // Замените на реальные свойства
     }
 
+    //Проверяет, что фоновая загрузка возвращает 202 и идентификатор задачи
+    @Test
+    public void testBatchOfSocks_Async() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "batch.csv", "text/csv",
+                "color,cotton,quantity\nRed,50,10\n".getBytes());
+        BatchJobDto job = new BatchJobDto();
+        job.setId("job-1");
+        job.setStatus("QUEUED");
+        when(batchJobServiceImpl.submit(any())).thenReturn(job);
+
+        mockMvc.perform(multipart("/api/socks/batch").file(file).param("async", "true"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/socks/batch/job-1"))
+                .andExpect(jsonPath("$.id").value("job-1"))
+                .andExpect(jsonPath("$.status").value("QUEUED"));
+    }
+
+    //Проверяет, что при заполненной очереди загрузок возвращается 429
+    @Test
+    public void testBatchOfSocks_AsyncQueueFull() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "batch.csv", "text/csv", "x".getBytes());
+        when(batchJobServiceImpl.submit(any())).thenThrow(new RejectedExecutionException());
+
+        mockMvc.perform(multipart("/api/socks/batch").file(file).param("async", "true"))
+                .andExpect(status().isTooManyRequests());
+    }
+
+    //Проверяет получение состояния фоновой загрузки
+    @Test
+    public void testBatchJobStatus() throws Exception {
+        BatchJobDto job = new BatchJobDto();
+        job.setId("job-1");
+        job.setStatus("RUNNING");
+        job.setRowsParsed(1500);
+        when(batchJobServiceImpl.getJob("job-1")).thenReturn(Optional.of(job));
+        when(batchJobServiceImpl.getJob("missing")).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/socks/batch/{jobId}", "job-1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rowsParsed").value(1500));
+        mockMvc.perform(get("/api/socks/batch/{jobId}", "missing"))
+                .andExpect(status().isNotFound());
+    }
+
+    //Проверяет, что непримененный пакет движений возвращает 400 с итогами по строкам
+    @Test
+    public void testBulkMovements() throws Exception {
+        BulkMovementsDto request = new BulkMovementsDto();
+        request.setMovements(List.of(new SocksDto("Red", 50, -5)));
+        BulkMovementResultDto applied = new BulkMovementResultDto();
+        applied.setApplied(true);
+        applied.setAccepted(1);
+        BulkMovementResultDto notApplied = new BulkMovementResultDto();
+        notApplied.setRejected(1);
+        when(socksServiceImpl.applyMovements(any())).thenReturn(applied).thenReturn(notApplied);
+
+        mockMvc.perform(post("/api/socks/movements")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(1));
+        mockMvc.perform(post("/api/socks/movements")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.rejected").value(1));
+    }
 }
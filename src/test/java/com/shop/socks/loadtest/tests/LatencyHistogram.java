@@ -0,0 +1,84 @@
+package com.shop.socks.loadtest.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Гистограмма задержек в микросекундах: логарифмические корзины по 8 подкорзин (точность около 12%),
+//запись без блокировок, поэтому ее можно разделять между потоками нагрузки
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(index(value));
+        total.incrementAndGet();
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    long count() {
+        return total.get();
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    //Верхняя граница корзины, в которую попадает процентиль
+    long percentile(double percentile) {
+        long target = (long) Math.ceil(percentile / 100.0 * total.get());
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target && seen > 0) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return 0;
+    }
+
+    //Распределение по диапазонам-степеням двойки в миллисекундах
+    List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        long[] ranges = new long[64];
+        for (int i = 0; i < counts.length(); i++) {
+            long count = counts.get(i);
+            if (count > 0) {
+                long millis = Math.max(1, upperBound(i) / 1000);
+                ranges[63 - Long.numberOfLeadingZeros(millis)] += count;
+            }
+        }
+        for (int exp = 0; exp < ranges.length; exp++) {
+            if (ranges[exp] > 0) {
+                lines.add(String.format("< %6d мс: %8d (%.1f%%)", 1L << (exp + 1), ranges[exp],
+                        100.0 * ranges[exp] / total.get()));
+            }
+        }
+        return lines;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
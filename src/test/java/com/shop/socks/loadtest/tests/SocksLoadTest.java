@@ -0,0 +1,342 @@
+package com.shop.socks.loadtest.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.socks.Application;
+import com.shop.socks.config.VirtualThreads;
+import com.shop.socks.loadtest.tests.WorkloadMix.Operation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//Сквозной нагрузочный тест: приложение поднимается на случайном порту с PostgreSQL в контейнере,
+//клиенты по HTTP вызывают все пять эндпоинтов SocksController в заданной пропорции.
+//Запускается только явно: -Dloadtest=true. Параметры (системные свойства):
+//loadtest.mix (по умолчанию income=34,outcome=34,filter=25,update=2,batch=5), loadtest.clients (32),
+//loadtest.duration-seconds (30), loadtest.colors (20), loadtest.batch-rows (1000),
+//loadtest.report (build/reports/loadtest/report.json),
+//loadtest.threads (platform, virtual или both): режим потоков приложения, socks.threads.virtual=false/true.
+//При both приложение поднимается дважды, по разу на режим, с одной и той же нагрузкой на свои артикулы,
+//и в отчет попадают оба прогона и сравнение пропускной способности и p99
+@Testcontainers
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+public class SocksLoadTest {
+
+    private static final int[] COTTONS = {0, 10, 20, 30, 40, 50, 60, 70, 80, 90, 100};
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private int port;
+    private String colorPrefix;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private final WorkloadMix mix = WorkloadMix.parse(
+            System.getProperty("loadtest.mix", "income=34,outcome=34,filter=25,update=2,batch=5"));
+    private final int clients = Integer.getInteger("loadtest.clients", 32);
+    private final int durationSeconds = Integer.getInteger("loadtest.duration-seconds", 30);
+    private final int colors = Integer.getInteger("loadtest.colors", 20);
+    private final int batchRows = Integer.getInteger("loadtest.batch-rows", 1000);
+    private final Path report = Paths.get(System.getProperty("loadtest.report", "build/reports/loadtest/report.json"));
+    private final String threads = System.getProperty("loadtest.threads", "platform");
+
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final List<SeededRow> rows = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void runLoad() throws Exception {
+        List<String> modes = switch (threads) {
+            case "platform", "virtual" -> List.of(threads);
+            case "both" -> List.of("platform", "virtual");
+            default -> throw new IllegalArgumentException(
+                    "loadtest.threads: platform, virtual или both, а не " + threads);
+        };
+        if (modes.contains("virtual")) {
+            assertTrue(VirtualThreads.isSupported(), "Режим virtual требует Java 21 или новее");
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        long errors = 0;
+        for (String mode : modes) {
+            try (ConfigurableApplicationContext context = start(mode)) {
+                port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                colorPrefix = "load-" + mode + "-";
+                stats.clear();
+                rows.clear();
+                summary.put(mode, runMode(mode));
+                errors += stats.values().stream().mapToLong(s -> s.errors.get()).sum();
+            }
+        }
+        if (modes.size() > 1) {
+            summary.put("comparison", compare(summary));
+        }
+
+        if (report.getParent() != null) {
+            Files.createDirectories(report.getParent());
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(report.toFile(), summary);
+        assertEquals(0, errors, "Во время нагрузки были ошибки сервера");
+    }
+
+    //Приложение на случайном порту; режимы отличаются только socks.threads.virtual
+    private ConfigurableApplicationContext start(String mode) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", 0);
+        properties.put("spring.datasource.url", POSTGRES.getJdbcUrl());
+        properties.put("spring.datasource.username", POSTGRES.getUsername());
+        properties.put("spring.datasource.password", POSTGRES.getPassword());
+        properties.put("spring.jpa.hibernate.ddl-auto", "update");
+        properties.put("socks.threads.virtual", "virtual".equals(mode));
+        return new SpringApplicationBuilder(Application.class).properties(properties).run();
+    }
+
+    private Map<String, Object> runMode(String mode) throws Exception {
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+        seed();
+
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long started = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < clients; i++) {
+                futures.add(executor.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        execute(mix.next());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(durationSeconds + 60L, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        return report(mode, seconds);
+    }
+
+    //Отношение virtual к platform: пропускная способность всего и p99 по каждой операции
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> compare(Map<String, Object> summary) {
+        Map<String, Object> platform = (Map<String, Object>) summary.get("platform");
+        Map<String, Object> virtual = (Map<String, Object>) summary.get("virtual");
+        Map<String, Object> comparison = new LinkedHashMap<>();
+        double throughputRatio = (double) virtual.get("throughput") / (double) platform.get("throughput");
+        comparison.put("throughputRatio", throughputRatio);
+        System.out.printf("virtual/platform: пропускная способность x%.2f%n", throughputRatio);
+        for (Operation operation : Operation.values()) {
+            String name = operation.name().toLowerCase();
+            Map<String, Object> before = (Map<String, Object>) platform.get(name);
+            Map<String, Object> after = (Map<String, Object>) virtual.get(name);
+            if (before == null || after == null) {
+                continue;
+            }
+            long p99Platform = (long) before.get("p99Micros");
+            long p99Virtual = (long) after.get("p99Micros");
+            Map<String, Object> p99 = new LinkedHashMap<>();
+            p99.put("platformMicros", p99Platform);
+            p99.put("virtualMicros", p99Virtual);
+            p99.put("ratio", (double) p99Virtual / Math.max(1, p99Platform));
+            comparison.put(name + "P99", p99);
+            System.out.printf("%-8s p99 %7.2f мс -> %7.2f мс%n", operation,
+                    p99Platform / 1000.0, p99Virtual / 1000.0);
+        }
+        return comparison;
+    }
+
+    //Начальный остаток по каждому артикулу и идентификаторы строк для PUT
+    private void seed() throws Exception {
+        for (int c = 0; c < colors; c++) {
+            for (int cotton : COTTONS) {
+                send(post("/api/socks/income", body(color(c), cotton, 1000)));
+            }
+        }
+        for (int c = 0; c < colors; c++) {
+            HttpResponse<String> response = send(get("/api/socks?color=" + color(c)));
+            for (JsonNode node : objectMapper.readTree(response.body())) {
+                rows.add(new SeededRow(node.get("id").asLong(), node.get("color").asText(), node.get("cotton").asInt()));
+            }
+        }
+    }
+
+    private void execute(Operation operation) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String color = color(random.nextInt(colors));
+        int cotton = COTTONS[random.nextInt(COTTONS.length)];
+        HttpRequest request = switch (operation) {
+            case INCOME -> post("/api/socks/income", body(color, cotton, 1 + random.nextInt(10)));
+            case OUTCOME -> post("/api/socks/outcome", body(color, cotton, 1 + random.nextInt(10)));
+            case FILTER -> get("/api/socks?color=" + color + "&minCotton=" + random.nextInt(50)
+                    + "&maxCotton=" + (50 + random.nextInt(51)) + "&sortBy=cotton");
+            case UPDATE -> update(random);
+            case BATCH -> batch(random);
+        };
+        if (request == null) {
+            return;
+        }
+
+        OperationStats operationStats = stats.get(operation);
+        long sent = System.nanoTime();
+        HttpResponse<String> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            operationStats.errors.incrementAndGet();
+            return;
+        }
+        operationStats.latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sent));
+        if (response.statusCode() >= 500) {
+            operationStats.errors.incrementAndGet();
+        } else if (response.statusCode() >= 400) {
+            operationStats.rejected.incrementAndGet(); //Например, отпуск сверх остатка
+        }
+    }
+
+    //Позиция остается в своем артикуле, меняется только количество
+    private HttpRequest update(ThreadLocalRandom random) {
+        if (rows.isEmpty()) {
+            return null;
+        }
+        SeededRow row = rows.get(random.nextInt(rows.size()));
+        return HttpRequest.newBuilder(uri("/api/socks/" + row.id()))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString(body(row.color(), row.cotton(), 500 + random.nextInt(500))))
+                .build();
+    }
+
+    private HttpRequest batch(ThreadLocalRandom random) {
+        StringBuilder csv = new StringBuilder("Color,Cotton,Quantity\n");
+        for (int i = 0; i < batchRows; i++) {
+            csv.append(color(random.nextInt(colors))).append(',')
+                    .append(COTTONS[random.nextInt(COTTONS.length)]).append(',')
+                    .append(1 + random.nextInt(5)).append('\n');
+        }
+        String boundary = "----socks-load-" + random.nextLong();
+        String multipart = "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"load.csv\"\r\n"
+                + "Content-Type: text/csv\r\n\r\n"
+                + csv
+                + "\r\n--" + boundary + "--\r\n";
+        return HttpRequest.newBuilder(uri("/api/socks/batch"))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofString(multipart, StandardCharsets.UTF_8))
+                .build();
+    }
+
+    private Map<String, Object> report(String mode, double seconds) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("threads", mode);
+        summary.put("mix", mix.toString());
+        summary.put("clients", clients);
+        summary.put("durationSeconds", seconds);
+        long totalRequests = 0;
+        System.out.printf("Потоки %s, нагрузка %s, клиентов %d, %.1f с%n", mode, mix, clients, seconds);
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            if (latency.count() == 0) {
+                continue;
+            }
+            totalRequests += latency.count();
+            Map<String, Object> operation = new LinkedHashMap<>();
+            operation.put("requests", latency.count());
+            operation.put("throughput", latency.count() / seconds);
+            operation.put("rejected", entry.getValue().rejected.get());
+            operation.put("errors", entry.getValue().errors.get());
+            operation.put("p50Micros", latency.percentile(50));
+            operation.put("p90Micros", latency.percentile(90));
+            operation.put("p99Micros", latency.percentile(99));
+            operation.put("p999Micros", latency.percentile(99.9));
+            operation.put("maxMicros", latency.max());
+            operation.put("histogram", latency.describe());
+            summary.put(entry.getKey().name().toLowerCase(), operation);
+
+            System.out.printf("%-8s %8d запросов, %8.1f/с, p50 %6.2f мс, p99 %7.2f мс, max %7.2f мс, отказов %d, ошибок %d%n",
+                    entry.getKey(), latency.count(), latency.count() / seconds,
+                    latency.percentile(50) / 1000.0, latency.percentile(99) / 1000.0, latency.max() / 1000.0,
+                    entry.getValue().rejected.get(), entry.getValue().errors.get());
+            latency.describe().forEach(line -> System.out.println("         " + line));
+        }
+        summary.put("throughput", totalRequests / seconds);
+        System.out.printf("Всего %.1f запросов/с%n", totalRequests / seconds);
+        return summary;
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        assertTrue(response.statusCode() < 300, "Ошибка подготовки данных: " + response.statusCode());
+        return response;
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(uri(path)).GET().build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private String body(String color, int cotton, int quantity) {
+        return "{\"color\":\"" + color + "\",\"cotton\":" + cotton + ",\"quantity\":" + quantity + "}";
+    }
+
+    //У каждого прогона свои артикулы, чтобы второй режим не получал каталог, уже выросший в первом
+    private String color(int index) {
+        return colorPrefix + index;
+    }
+
+    private record SeededRow(long id, String color, int cotton) {
+    }
+
+    private static final class OperationStats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+    }
+}
@@ -0,0 +1,53 @@
+package com.shop.socks.loadtest.tests;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+//Доли операций нагрузки, например "income=35,outcome=35,filter=25,update=0,batch=5".
+//Доли не обязаны давать в сумме 100: операция выбирается пропорционально весу
+final class WorkloadMix {
+
+    enum Operation {
+        INCOME, OUTCOME, FILTER, UPDATE, BATCH
+    }
+
+    private final Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+    private final int totalWeight;
+
+    private WorkloadMix(Map<Operation, Integer> weights) {
+        this.weights.putAll(weights);
+        this.totalWeight = weights.values().stream().mapToInt(Integer::intValue).sum();
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("Сумма долей нагрузки должна быть положительной");
+        }
+    }
+
+    static WorkloadMix parse(String spec) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Некорректная доля нагрузки: " + part);
+            }
+            weights.put(Operation.valueOf(pair[0].trim().toUpperCase()), Integer.parseInt(pair[1].trim()));
+        }
+        return new WorkloadMix(weights);
+    }
+
+    Operation next() {
+        int point = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Map.Entry<Operation, Integer> entry : weights.entrySet()) {
+            point -= entry.getValue();
+            if (point < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    @Override
+    public String toString() {
+        return weights.toString();
+    }
+}
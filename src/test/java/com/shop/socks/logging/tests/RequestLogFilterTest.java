@@ -0,0 +1,124 @@
+package com.shop.socks.logging.tests;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.shop.socks.logging.LogPayload;
+import com.shop.socks.logging.RequestLogFilter;
+import com.shop.socks.logging.RequestLogProperties;
+import com.shop.socks.logging.Verbosity;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestLogFilterTest {
+
+    private final Logger requestLogger = (Logger) LoggerFactory.getLogger("socks.requests");
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    @BeforeEach
+    public void setUp() {
+        appender.start();
+        requestLogger.addAppender(appender);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        requestLogger.detachAppender(appender);
+    }
+
+    //Проверить, что при нулевой доле выборки обычные запросы не журналируются, а ошибки сервера журналируются
+    @Test
+    public void testSampling_ServerErrorsAlwaysLogged() throws Exception {
+        RequestLogProperties properties = new RequestLogProperties();
+        properties.setSampleRate(0);
+        RequestLogFilter filter = new RequestLogFilter(properties);
+
+        filter.doFilter(request("/api/socks"), new MockHttpServletResponse(), new MockFilterChain());
+        MockHttpServletResponse failed = new MockHttpServletResponse();
+        failed.setStatus(500);
+        filter.doFilter(request("/api/socks"), failed, new MockFilterChain());
+
+        assertEquals(1, appender.list.size());
+        String message = appender.list.get(0).getFormattedMessage();
+        assertTrue(message.contains("status=500"), message);
+        assertTrue(message.contains("sampled=false"), message);
+    }
+
+    //Проверить, что асинхронный запрос, завершившийся ошибкой, журналируется один раз как ошибка сервера
+    @Test
+    public void testAsyncError_AlwaysLogged() throws Exception {
+        RequestLogProperties properties = new RequestLogProperties();
+        properties.setSampleRate(0);
+        RequestLogFilter filter = new RequestLogFilter(properties);
+        MockHttpServletRequest request = request("/api/reactive/socks");
+        request.setAsyncSupported(true);
+
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+        MockAsyncContext asyncContext = (MockAsyncContext) request.getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onError(new AsyncEvent(asyncContext, new IOException("Соединение разорвано")));
+        }
+        asyncContext.complete(); //Контейнер завершает запрос после ошибки
+
+        assertEquals(1, appender.list.size());
+        String message = appender.list.get(0).getFormattedMessage();
+        assertTrue(message.contains("status=500"), message);
+        assertTrue(message.contains("error=IOException"), message);
+    }
+
+    //Проверить настройки эндпоинта: самый длинный префикс, наследование пустых полей и подробный режим
+    @Test
+    public void testEndpointSettings() throws Exception {
+        RequestLogProperties properties = new RequestLogProperties();
+        properties.setSampleRate(0);
+        RequestLogProperties.Endpoint socks = new RequestLogProperties.Endpoint();
+        socks.setVerbosity(Verbosity.OFF);
+        RequestLogProperties.Endpoint batch = new RequestLogProperties.Endpoint();
+        batch.setSampleRate(1.0);
+        batch.setVerbosity(Verbosity.DETAILED);
+        properties.getEndpoints().put("/api/socks", socks);
+        properties.getEndpoints().put("/api/socks/batch", batch);
+        RequestLogFilter filter = new RequestLogFilter(properties);
+
+        assertEquals(Verbosity.OFF, properties.resolve("/api/socks/income").getVerbosity());
+        assertEquals(0.0, properties.resolve("/api/socks/income").getSampleRate());
+        assertEquals(Verbosity.SUMMARY, properties.resolve("/actuator/health").getVerbosity());
+
+        MockHttpServletRequest request = request("/api/socks/batch");
+        request.setQueryString("async=true");
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        filter.doFilter(request("/api/socks/income"), new MockHttpServletResponse(), new MockFilterChain());
+
+        assertEquals(1, appender.list.size());
+        String message = appender.list.get(0).getFormattedMessage();
+        assertTrue(message.contains("path=/api/socks/batch"), message);
+        assertTrue(message.contains("query=async=true"), message);
+    }
+
+    //Проверить, что в лог попадают только размер и первые элементы списка
+    @Test
+    public void testLogPayload_Bounded() {
+        List<Integer> items = List.of(1, 2, 3, 4, 5);
+
+        assertEquals("size=5 [1, 2, ... еще 3]", LogPayload.limit(items, 2).toString());
+        assertEquals("size=5 [1, 2, 3, 4, 5]", LogPayload.limit(items, 10).toString());
+        assertEquals("size=5 [... еще 5]", LogPayload.limit(items, 0).toString());
+    }
+
+    private static MockHttpServletRequest request(String path) {
+        return new MockHttpServletRequest("GET", path);
+    }
+}
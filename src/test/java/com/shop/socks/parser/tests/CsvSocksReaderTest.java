@@ -0,0 +1,128 @@
+package com.shop.socks.parser.tests;
+
+import com.shop.socks.parser.CsvSocksReader;
+import com.shop.socks.parser.SocksRowHandler;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CsvSocksReaderTest {
+
+    //Проверить разбор прежнего формата "ID,Color,Cotton,Quantity", кавычек, пробелов и пустых строк
+    @Test
+    public void testRead_LegacyHeaderAndQuoting() throws Exception {
+        String csv = "\uFEFFID,Color,Cotton,Quantity\r\n" +
+                "1,Red,50,10\r\n" +
+                "\r\n" +
+                "2,\"Dark \"\"Blue\"\"\", 70 ,5.0\n" +
+                ",,,\n" +
+                "3,Red,50,1";
+        List<String> rows = new ArrayList<>();
+
+        long count = CsvSocksReader.read(stream(csv),
+                (rowNumber, color, cotton, quantity) -> rows.add(color + "|" + cotton + "|" + quantity));
+
+        assertEquals(3, count);
+        assertEquals(List.of("Red|50|10", "Dark \"Blue\"|70|5", "Red|50|1"), rows);
+    }
+
+    //Проверить, что файл прежнего формата без заголовка ("ID,Color,Cotton,Quantity") не теряет первую строку
+    @Test
+    public void testRead_LegacyWithoutHeader() throws Exception {
+        List<String> rows = new ArrayList<>();
+
+        long count = CsvSocksReader.read(stream("1,Red,50,10\n2,Blue,70,5\n"),
+                (rowNumber, color, cotton, quantity) ->
+                        rows.add(rowNumber + ":" + color + "|" + cotton + "|" + quantity));
+
+        assertEquals(2, count);
+        assertEquals(List.of("0:Red|50|10", "1:Blue|70|5"), rows);
+    }
+
+    //Проверить, что файл без заголовка из трех столбцов читается как "Color,Cotton,Quantity"
+    @Test
+    public void testRead_ThreeColumnsWithoutHeader() throws Exception {
+        List<String> rows = new ArrayList<>();
+
+        CsvSocksReader.read(stream("\nRed,50,10\n"),
+                (rowNumber, color, cotton, quantity) -> rows.add(color + "|" + cotton + "|" + quantity));
+
+        assertEquals(List.of("Red|50|10"), rows);
+    }
+
+    //Проверить, что заголовок без нужного столбца прерывает чтение, а не подставляет столбцы по позиции
+    @Test
+    public void testRead_HeaderWithoutRequiredColumn() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () ->
+                CsvSocksReader.read(stream("ID,Colour,Cotton,Quantity\n1,Red,50,10\n"),
+                        (rowNumber, color, cotton, quantity) -> {
+                        }));
+        assertEquals("В заголовке должны быть столбцы Color, Cotton и Quantity: ID,Colour,Cotton,Quantity",
+                exception.getMessage());
+    }
+
+    //Проверить, что столбцы определяются по заголовку, а не по позиции
+    @Test
+    public void testRead_ColumnsByHeader() throws Exception {
+        List<String> rows = new ArrayList<>();
+
+        CsvSocksReader.read(stream("quantity,cotton,color\n7,80,Green\n"),
+                (rowNumber, color, cotton, quantity) -> rows.add(color + "|" + cotton + "|" + quantity));
+
+        assertEquals(List.of("Green|80|7"), rows);
+    }
+
+    //Проверить, что некорректное число приводит к ошибке с номером строки
+    @Test
+    public void testRead_InvalidNumber() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () ->
+                CsvSocksReader.read(stream("color,cotton,quantity\nRed,50,10\nRed,fifty,10\n"),
+                        (rowNumber, color, cotton, quantity) -> {
+                        }));
+        assertEquals("Некорректное число в строке 3", exception.getMessage());
+    }
+
+    //Проверить, что обработчик с onInvalidRow получает ошибочные строки и чтение продолжается
+    @Test
+    public void testRead_InvalidRowsPassedToHandler() throws Exception {
+        List<String> rows = new ArrayList<>();
+
+        long count = CsvSocksReader.read(stream("color,cotton,quantity\nRed,fifty,10\nRed,50\nRed,50,10\n"),
+                new SocksRowHandler() {
+                    @Override
+                    public void onRow(long rowNumber, String color, int cotton, int quantity) {
+                        rows.add(rowNumber + ":" + color + "|" + cotton + "|" + quantity);
+                    }
+
+                    @Override
+                    public void onInvalidRow(long rowNumber, String message) {
+                        rows.add(rowNumber + ":" + message);
+                    }
+                });
+
+        assertEquals(3, count);
+        assertEquals(List.of("1:Некорректное число в строке 2", "2:Не заполнены данные в строке 3",
+                "3:Red|50|10"), rows);
+    }
+
+    //Проверить, что повторяющиеся цвета не создают новых строк
+    @Test
+    public void testRead_ReusesColorInstances() throws Exception {
+        List<String> colors = new ArrayList<>();
+
+        CsvSocksReader.read(stream("color,cotton,quantity\nRed,1,1\nRed,2,2\n"),
+                (rowNumber, color, cotton, quantity) -> colors.add(color));
+
+        assertSame(colors.get(0), colors.get(1));
+    }
+
+    private static InputStream stream(String csv) {
+        return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,81 @@
+package com.shop.socks.parser.tests;
+
+import com.shop.socks.parser.ExcelSocksReader;
+import com.shop.socks.parser.SocksRowHandler;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExcelSocksReaderTest {
+
+    @TempDir
+    private Path dir;
+
+    //Проверить, что числа читаются по значению ячейки независимо от формата отображения,
+    //а дробь и значение вне int отклоняются как ошибка строки
+    @Test
+    public void testRead_NumbersByCellValue() throws Exception {
+        Path xlsx = dir.resolve("batch.xlsx");
+        try (XSSFWorkbook workbook = new XSSFWorkbook();
+             OutputStream outputStream = Files.newOutputStream(xlsx)) {
+            CellStyle thousands = style(workbook, "#,##0");
+            CellStyle percent = style(workbook, "0%");
+            CellStyle scientific = style(workbook, "0.00E+00");
+            Sheet sheet = workbook.createSheet();
+            sheet.createRow(0).createCell(0).setCellValue("color");
+            row(sheet, 1, "Red", 50, null, 1000, thousands);
+            row(sheet, 2, "Blue", 0.7, percent, 1234, scientific);
+            row(sheet, 3, "Green", 20, null, 3_000_000_000d, null);
+            row(sheet, 4, "Black", 20.5, null, 1, null);
+            workbook.write(outputStream);
+        }
+        List<String> rows = new ArrayList<>();
+
+        long count = ExcelSocksReader.read(xlsx.toFile(), new SocksRowHandler() {
+            @Override
+            public void onRow(long rowNumber, String color, int cotton, int quantity) {
+                rows.add(color + "|" + cotton + "|" + quantity);
+            }
+
+            @Override
+            public void onInvalidRow(long rowNumber, String message) {
+                rows.add(message);
+            }
+        });
+
+        assertEquals(4, count);
+        assertEquals(List.of("Red|50|1000", "Blue|70|1234",
+                "Некорректное число в строке 4", "Некорректное число в строке 5"), rows);
+    }
+
+    private static CellStyle style(XSSFWorkbook workbook, String format) {
+        CellStyle style = workbook.createCellStyle();
+        style.setDataFormat(workbook.createDataFormat().getFormat(format));
+        return style;
+    }
+
+    private static void row(Sheet sheet, int index, String color, double cotton, CellStyle cottonStyle,
+                            double quantity, CellStyle quantityStyle) {
+        Row row = sheet.createRow(index);
+        row.createCell(0).setCellValue(color);
+        row.createCell(1).setCellValue(cotton);
+        row.createCell(2).setCellValue(quantity);
+        if (cottonStyle != null) {
+            row.getCell(1).setCellStyle(cottonStyle);
+        }
+        if (quantityStyle != null) {
+            row.getCell(2).setCellStyle(quantityStyle);
+        }
+    }
+}
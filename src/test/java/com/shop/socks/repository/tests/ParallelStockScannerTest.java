@@ -0,0 +1,113 @@
+package com.shop.socks.repository.tests;
+
+import com.shop.socks.repository.ParallelStockScanner;
+import com.shop.socks.repository.StockRowCallback;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelStockScannerTest {
+
+    private ParallelStockScanner scanner;
+    private List<Row> table;
+
+    @BeforeEach
+    public void setUp() {
+        scanner = new ParallelStockScanner(4, 1000);
+        table = new ArrayList<>();
+        String[] colors = {"Red", "red", "Blue", "Ёлочный", "Зеленый", "Zebra"};
+        Random random = new Random(42);
+        for (long id = 1; id <= 5000; id++) {
+            //Хлопок вне 0..100 встречается, пока ограничение не задано в схеме
+            int cotton = random.nextInt(111) - 5;
+            table.add(new Row(id, colors[random.nextInt(colors.length)], cotton, random.nextInt(1000)));
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scanner.destroy();
+    }
+
+    //Проверить, что параллельный обход возвращает те же строки в том же порядке, что и один запрос
+    @Test
+    public void testMatchesSequentialOrder() {
+        assertEquals(sequential(10, 90, "color"), parallel(10, 90, "color"));
+        assertEquals(sequential(null, null, "color"), parallel(null, null, "color"));
+        assertEquals(sequential(null, 70, "cotton"), parallel(null, 70, "cotton"));
+        assertEquals(sequential(20, null, null).size(), parallel(20, null, null).size());
+    }
+
+    //Проверить, что части выборки читаются в разных потоках и не пересекаются
+    @Test
+    public void testRangesAreDisjoint() {
+        ConcurrentHashMap<String, Integer> ranges = new ConcurrentHashMap<>();
+        scanner.scan(null, null, null, (min, max, sortBy, callback) -> ranges.put(min + ".." + max, 1),
+                (id, color, cotton, quantity) -> fail("Строк быть не должно"));
+
+        assertEquals(4, ranges.size());
+        assertTrue(ranges.containsKey("null..24"));
+        assertTrue(ranges.containsKey("75..null"));
+    }
+
+    //Проверить порог параллельного обхода
+    @Test
+    public void testShouldSplit() {
+        assertTrue(scanner.shouldSplit(null, null, 1010));
+        assertFalse(scanner.shouldSplit(null, null, 900));
+        assertFalse(scanner.shouldSplit(0, 49, 1010));
+        assertFalse(scanner.shouldSplit(50, 50, 1_000_000));
+        assertFalse(scanner.shouldSplit(70, 30, 1_000_000));
+
+        ParallelStockScanner disabled = new ParallelStockScanner(1, 1000);
+        assertFalse(disabled.shouldSplit(null, null, 1_000_000));
+    }
+
+    private List<Row> parallel(Integer minCotton, Integer maxCotton, String sortBy) {
+        List<Row> result = new ArrayList<>();
+        scanner.scan(minCotton, maxCotton, sortBy, this::scanTable,
+                (id, color, cotton, quantity) -> result.add(new Row(id, color, cotton, quantity)));
+        return result;
+    }
+
+    private List<Row> sequential(Integer minCotton, Integer maxCotton, String sortBy) {
+        List<Row> result = new ArrayList<>();
+        scanTable(minCotton, maxCotton, sortBy, (id, color, cotton, quantity) ->
+                result.add(new Row(id, color, cotton, quantity)));
+        return result;
+    }
+
+    //Имитация запроса к БД: сортировка по цвету побайтовая, как ORDER BY color COLLATE "C"
+    private void scanTable(Integer minCotton, Integer maxCotton, String sortBy,
+                           StockRowCallback callback) {
+        Predicate<Row> filter = row -> (minCotton == null || row.cotton() >= minCotton)
+                && (maxCotton == null || row.cotton() <= maxCotton);
+        Comparator<Row> order = Comparator.comparingLong(Row::id);
+        if ("color".equals(sortBy)) {
+            order = Comparator.comparing(Row::color, ParallelStockScannerTest::compareBytes)
+                    .thenComparingInt(Row::cotton).thenComparingLong(Row::id);
+        } else if ("cotton".equals(sortBy)) {
+            order = Comparator.comparingInt(Row::cotton).thenComparing(Row::color).thenComparingLong(Row::id);
+        }
+        table.stream().filter(filter).sorted(order)
+                .forEach(row -> callback.row(row.id(), row.color(), row.cotton(), row.quantity()));
+    }
+
+    private static int compareBytes(String first, String second) {
+        return Arrays.compareUnsigned(first.getBytes(StandardCharsets.UTF_8), second.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private record Row(long id, String color, int cotton, int quantity) {
+    }
+}
@@ -0,0 +1,127 @@
+package com.shop.socks.repository.tests;
+
+import com.shop.socks.config.ConnectionBulkhead;
+import com.shop.socks.repository.ParallelStockScanner;
+import com.shop.socks.repository.SocksRepositoryImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SocksRepositoryImplTest {
+
+    private static final int PARALLELISM = 4;
+
+    private ParallelStockScanner scanner;
+    private AtomicInteger rangeQueries;
+
+    @BeforeEach
+    public void setUp() {
+        scanner = new ParallelStockScanner(PARALLELISM, 1000);
+        rangeQueries = new AtomicInteger();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scanner.destroy();
+    }
+
+    //Проверить, что одновременные параллельные выборки проходят через пул из двух соединений:
+    //потоки запросов соединений не держат, части читаются по очереди на свободных соединениях
+    @Test
+    public void testConcurrentParallelScansWithSmallPool() throws Exception {
+        ConnectionBulkhead pool = new ConnectionBulkhead(database(), 2, 1000);
+        SocksRepositoryImpl repository = repository(pool);
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<?>> scans = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                scans.add(executor.submit(() -> repository.scanFiltered(null, null, null, "color",
+                        (id, color, cotton, quantity) -> fail("Строк быть не должно"))));
+            }
+            for (Future<?> scan : scans) {
+                scan.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(callers * PARALLELISM, rangeQueries.get());
+        assertEquals(2, pool.getAvailablePermits());
+    }
+
+    //Проверить, что внутри открытой транзакции выборка не просит у пула из одного соединения второе,
+    //а читается одним запросом на соединении транзакции
+    @Test
+    public void testScanInsideTransactionUsesItsConnection() {
+        ConnectionBulkhead pool = new ConnectionBulkhead(database(), 1, 200);
+        SocksRepositoryImpl repository = repository(pool);
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(pool));
+
+        transaction.executeWithoutResult(status -> repository.scanFiltered(null, null, null, "color",
+                (id, color, cotton, quantity) -> fail("Строк быть не должно")));
+
+        assertEquals(1, rangeQueries.get());
+        assertEquals(1, pool.getAvailablePermits());
+    }
+
+    private SocksRepositoryImpl repository(DataSource dataSource) {
+        return new SocksRepositoryImpl(new JdbcTemplate(dataSource), new DataSourceTransactionManager(dataSource),
+                scanner);
+    }
+
+    //БД, в которой по статистике миллион строк, а выборки пусты
+    private DataSource database() {
+        DataSource dataSource = mock(DataSource.class);
+        try {
+            when(dataSource.getConnection()).thenAnswer(invocation -> connection());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return dataSource;
+    }
+
+    private Connection connection() throws Exception {
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(1);
+        ResultSet estimate = mock(ResultSet.class);
+        when(estimate.next()).thenReturn(true, false);
+        when(estimate.getMetaData()).thenReturn(metaData);
+        when(estimate.getLong(1)).thenReturn(1_000_000L);
+        Statement statement = mock(Statement.class);
+        when(statement.executeQuery(anyString())).thenReturn(estimate);
+
+        PreparedStatement scan = mock(PreparedStatement.class);
+        when(scan.executeQuery()).thenAnswer(invocation -> {
+            rangeQueries.incrementAndGet();
+            return mock(ResultSet.class);
+        });
+
+        Connection connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(connection.prepareStatement(anyString())).thenReturn(scan);
+        return connection;
+    }
+}
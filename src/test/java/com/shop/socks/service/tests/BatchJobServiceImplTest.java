@@ -0,0 +1,123 @@
+package com.shop.socks.service.tests;
+
+import com.shop.socks.dto.BatchJobDto;
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.parser.BatchFormat;
+import com.shop.socks.service.impl.BatchJobServiceImpl;
+import com.shop.socks.service.impl.SocksServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class BatchJobServiceImplTest {
+
+    @Mock
+    private SocksServiceImpl socksServiceImpl;
+
+    @Mock
+    private MultipartFile file;
+
+    private BatchJobServiceImpl batchJobService;
+
+    private Path tempFile;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        batchJobService = new BatchJobServiceImpl(socksServiceImpl, 1, 1, 10); //Один поток и одно место в очереди
+        tempFile = Files.createTempFile("socks-job-", ".upload");
+        when(file.isEmpty()).thenReturn(false);
+        when(file.getOriginalFilename()).thenReturn("batch.csv");
+        when(socksServiceImpl.copyToTempFile(file)).thenReturn(tempFile);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        batchJobService.shutdown();
+        Files.deleteIfExists(tempFile);
+    }
+
+    //Проверить, что задача выполняется в фоне и ее итог доступен по идентификатору
+    @Test
+    public void testSubmit_CompletesInBackground() throws Exception {
+        when(socksServiceImpl.importBatch(eq(tempFile), eq(BatchFormat.CSV), any()))
+                .thenReturn(new LotOfSocksDto(10, 2, 3));
+
+        BatchJobDto submitted = batchJobService.submit(file);
+        assertNotNull(submitted.getId());
+
+        BatchJobDto finished = awaitFinished(submitted.getId());
+        assertEquals("COMPLETED", finished.getStatus());
+        assertEquals(10, finished.getResult().getRows());
+        verify(socksServiceImpl, timeout(1000)).deleteQuietly(tempFile); //Временная копия удалена
+    }
+
+    //Проверить, что ошибка загрузки отражается в состоянии задачи
+    @Test
+    public void testSubmit_Failure() throws Exception {
+        when(socksServiceImpl.importBatch(any(), any(), any())).thenThrow(new IllegalArgumentException("Плохой файл"));
+
+        BatchJobDto finished = awaitFinished(batchJobService.submit(file).getId());
+
+        assertEquals("FAILED", finished.getStatus());
+        assertEquals("Плохой файл", finished.getMessage());
+        assertEquals(1, finished.getErrors());
+    }
+
+    //Проверить, что при занятых потоке и очереди новая задача отклоняется до копирования файла
+    @Test
+    public void testSubmit_RejectsWhenSaturated() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        when(socksServiceImpl.importBatch(any(), any(), any())).thenAnswer(invocation -> {
+            running.countDown();
+            release.await();
+            return new LotOfSocksDto(0, 0, 0);
+        });
+
+        batchJobService.submit(file); //Выполняется
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        batchJobService.submit(file); //Ждет в очереди
+
+        assertThrows(RejectedExecutionException.class, () -> batchJobService.submit(file));
+        verify(socksServiceImpl, times(2)).copyToTempFile(file);
+        release.countDown();
+
+        //Освободившееся место снова принимает загрузки
+        verify(socksServiceImpl, timeout(5000).times(2)).deleteQuietly(tempFile);
+        awaitFinished(batchJobService.submit(file).getId());
+    }
+
+    //Проверить, что неизвестный идентификатор не находится
+    @Test
+    public void testGetJob_Unknown() {
+        assertTrue(batchJobService.getJob("missing").isEmpty());
+    }
+
+    private BatchJobDto awaitFinished(String jobId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            BatchJobDto job = batchJobService.getJob(jobId).orElseThrow();
+            if ("COMPLETED".equals(job.getStatus()) || "FAILED".equals(job.getStatus())) {
+                return job;
+            }
+            Thread.sleep(10);
+        }
+        fail("Задача не завершилась");
+        return null;
+    }
+}
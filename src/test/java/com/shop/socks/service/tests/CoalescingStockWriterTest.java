@@ -0,0 +1,196 @@
+package com.shop.socks.service.tests;
+
+import com.shop.socks.cache.StockCache;
+import com.shop.socks.model.Socks;
+import com.shop.socks.model.SocksKey;
+import com.shop.socks.repository.SocksRepository;
+import com.shop.socks.repository.StockRow;
+import com.shop.socks.service.StockWriter;
+import com.shop.socks.service.impl.CoalescingStockWriter;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CoalescingStockWriterTest {
+
+    private static final SocksKey KEY = new SocksKey("Red", 50);
+
+    //Проверить, что при объединении записей отпуск сверх остатка отклоняется для каждого запроса отдельно
+    @Test
+    public void testOutcome_NoOversellAndOwnResults() throws Exception {
+        StockTable table = new StockTable();
+        StockWriter writer = coalescing(table);
+        writer.increment(KEY, 100);
+
+        Set<Integer> remainders = new ConcurrentSkipListSet<>();
+        int accepted = runConcurrently(64, 5, i -> {
+            Optional<Socks> result = writer.decrement(KEY, 1);
+            result.ifPresent(socks -> remainders.add(socks.getQuantity()));
+            return result.isPresent();
+        });
+
+        assertEquals(100, accepted);
+        assertEquals(0, table.quantity);
+        //Каждый принятый отпуск получил свой остаток после списания
+        Set<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, remainders);
+    }
+
+    //Проверить, что отпуск по отсутствующему артикулу отклоняется, а приход создает строку
+    @Test
+    public void testAbsentRow() {
+        StockTable table = new StockTable();
+        StockWriter writer = coalescing(table);
+
+        assertTrue(writer.decrement(KEY, 1).isEmpty());
+        assertEquals(7, writer.increment(KEY, 7).getQuantity());
+        assertEquals(7, table.quantity);
+    }
+
+    //Проверить, что приход, переполняющий остаток, отклоняется, а остаток и следующие движения не искажаются
+    @Test
+    public void testIncomeOverflowRejected() {
+        StockTable table = new StockTable();
+        StockWriter writer = coalescing(table);
+        writer.increment(KEY, Integer.MAX_VALUE - 1);
+
+        assertThrows(IllegalArgumentException.class, () -> writer.increment(KEY, 2));
+        assertEquals(Integer.MAX_VALUE, writer.increment(KEY, 1).getQuantity());
+        assertEquals(Integer.MAX_VALUE, table.quantity);
+    }
+
+    private static StockWriter coalescing(StockTable table) {
+        return new CoalescingStockWriter(table.repository(), new StockCache(100, 60),
+                TransactionOperations.withoutTransaction(), 200, 256);
+    }
+
+    private static int runConcurrently(int threads, int operations, Operation operation) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit((Callable<Integer>) () -> {
+                    start.await();
+                    int succeeded = 0;
+                    for (int j = 0; j < operations; j++) {
+                        if (operation.run(thread + j)) {
+                            succeeded++;
+                        }
+                    }
+                    return succeeded;
+                }));
+            }
+            start.countDown();
+            int total = 0;
+            for (Future<Integer> future : futures) {
+                total += future.get(1, TimeUnit.MINUTES);
+            }
+            return total;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface Operation {
+        boolean run(int index) throws Exception;
+    }
+
+    //Одна строка склада; каждый запрос выполняется под "блокировкой строки"
+    private static final class StockTable {
+
+        private Long id;
+        private int quantity;
+
+        SocksRepository repository() {
+            SocksRepository repository = mock(SocksRepository.class);
+            when(repository.incrementQuantity(anyString(), anyInt(), anyInt())).thenAnswer(invocation -> {
+                synchronized (this) {
+                    ensureRow();
+                    quantity += (int) invocation.getArgument(2);
+                    return row();
+                }
+            });
+            when(repository.decrementQuantity(anyString(), anyInt(), anyInt())).thenAnswer(invocation -> {
+                synchronized (this) {
+                    int requested = invocation.getArgument(2);
+                    if (id == null || quantity < requested) {
+                        return Optional.empty();
+                    }
+                    quantity -= requested;
+                    return Optional.of(row());
+                }
+            });
+            when(repository.lockStock(anyString(), anyInt())).thenAnswer(invocation -> {
+                synchronized (this) {
+                    return id == null ? Optional.empty() : Optional.of(stockRow());
+                }
+            });
+            when(repository.addQuantity(anyLong(), anyInt())).thenAnswer(invocation -> {
+                synchronized (this) {
+                    quantity += (int) invocation.getArgument(1);
+                    return 1;
+                }
+            });
+            when(repository.upsertStock(anyString(), anyInt(), anyInt())).thenAnswer(invocation -> {
+                synchronized (this) {
+                    ensureRow();
+                    quantity += (int) invocation.getArgument(2);
+                    return stockRow();
+                }
+            });
+            return repository;
+        }
+
+        private void ensureRow() {
+            if (id == null) {
+                id = 1L;
+            }
+        }
+
+        private Socks row() {
+            Socks socks = new Socks(KEY.color(), KEY.cotton(), quantity);
+            socks.setId(id);
+            return socks;
+        }
+
+        private StockRow stockRow() {
+            Long rowId = id;
+            int rowQuantity = quantity;
+            return new StockRow() {
+                @Override
+                public Long getId() {
+                    return rowId;
+                }
+
+                @Override
+                public int getQuantity() {
+                    return rowQuantity;
+                }
+            };
+        }
+    }
+}
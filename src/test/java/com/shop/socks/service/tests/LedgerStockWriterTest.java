@@ -0,0 +1,198 @@
+package com.shop.socks.service.tests;
+
+import com.shop.socks.cache.CachedStock;
+import com.shop.socks.cache.StockCache;
+import com.shop.socks.model.Socks;
+import com.shop.socks.model.SocksKey;
+import com.shop.socks.repository.StockBalance;
+import com.shop.socks.repository.StockLedgerRepository;
+import com.shop.socks.service.impl.LedgerStockWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LedgerStockWriterTest {
+
+    private static final SocksKey KEY = new SocksKey("Red", 50);
+
+    private InMemoryLedger ledger;
+    private StockCache stockCache;
+    private LedgerStockWriter writer;
+
+    @BeforeEach
+    public void setUp() {
+        ledger = new InMemoryLedger();
+        stockCache = new StockCache(100, 60);
+        //Свертка по расписанию отключена, тесты вызывают ее сами
+        writer = new LedgerStockWriter(ledger, stockCache, TransactionOperations.withoutTransaction(), 64, 0);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        writer.destroy();
+    }
+
+    //Проверить, что движения только дописываются в журнал, отпуск сверх остатка отклоняется
+    //и каждый принятый отпуск получает свой остаток
+    @Test
+    public void testAppendOnlyWithoutOversell() throws Exception {
+        assertEquals(100, writer.increment(KEY, 100).getQuantity());
+
+        Set<Integer> remainders = new ConcurrentSkipListSet<>();
+        AtomicInteger accepted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 150; i++) {
+                futures.add(executor.submit(() -> writer.decrement(KEY, 1).ifPresent(socks -> {
+                    accepted.incrementAndGet();
+                    remainders.add(socks.getQuantity());
+                })));
+            }
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(100, accepted.get());
+        assertEquals(100, remainders.size());
+        assertEquals(101, ledger.movements.size()); //Приход и 100 принятых отпусков
+        assertEquals(0, ledger.snapshot.get(KEY)); //Снимок не менялся до свертки
+        assertEquals(0, writer.load(KEY).quantity());
+    }
+
+    //Проверить, что свертка переносит движения в снимок, не меняя остаток
+    @Test
+    public void testSnapshotFoldsTail() {
+        writer.increment(KEY, 10);
+        writer.decrement(KEY, 3);
+
+        assertEquals(1, writer.snapshot());
+        assertEquals(7, ledger.snapshot.get(KEY));
+        assertEquals(7, writer.load(KEY).quantity());
+        assertEquals(0, writer.snapshot()); //Новых движений нет
+
+        assertEquals(9, writer.increment(KEY, 2).getQuantity());
+        assertEquals(7, ledger.snapshot.get(KEY));
+    }
+
+    //Проверить, что отпуск по отсутствующему артикулу отклоняется, а приход создает строку-снимок
+    @Test
+    public void testAbsentRow() {
+        assertTrue(writer.decrement(KEY, 1).isEmpty());
+        assertEquals(CachedStock.ABSENT, writer.load(KEY));
+
+        Socks created = writer.increment(KEY, 5);
+
+        assertEquals(5, created.getQuantity());
+        assertNotNull(created.getId());
+        assertEquals(0, ledger.snapshot.get(KEY));
+        assertEquals(new CachedStock(created.getId(), 5), stockCache.get(KEY, key -> CachedStock.ABSENT));
+    }
+
+    //Журнал в памяти с той же моделью, что и в БД: снимок по артикулу, движения и граница свертки
+    private static final class InMemoryLedger extends StockLedgerRepository {
+
+        private final Map<SocksKey, Integer> snapshot = new HashMap<>();
+        private final Map<SocksKey, Long> ids = new HashMap<>();
+        private final List<long[]> movements = new ArrayList<>(); //id движения, id позиции, изменение
+        private long appliedId;
+
+        InMemoryLedger() {
+            super(null);
+        }
+
+        @Override
+        public synchronized void beginAppend() {
+        }
+
+        @Override
+        public synchronized void lockRows(Collection<SocksKey> keys) {
+        }
+
+        @Override
+        public synchronized void createRows(Collection<SocksKey> keys) {
+            for (SocksKey key : keys) {
+                if (snapshot.putIfAbsent(key, 0) == null) {
+                    ids.put(key, (long) ids.size() + 1);
+                }
+            }
+        }
+
+        @Override
+        public synchronized Map<SocksKey, StockBalance> balances(Collection<SocksKey> keys) {
+            Map<SocksKey, StockBalance> balances = new HashMap<>();
+            for (SocksKey key : keys) {
+                if (snapshot.containsKey(key)) {
+                    balances.put(key, new StockBalance(ids.get(key), snapshot.get(key) + tail(ids.get(key))));
+                }
+            }
+            return balances;
+        }
+
+        @Override
+        public synchronized Optional<StockBalance> balance(SocksKey key) {
+            return Optional.ofNullable(balances(List.of(key)).get(key));
+        }
+
+        @Override
+        public synchronized void append(long[] socksIds, int[] deltas) {
+            for (int i = 0; i < socksIds.length; i++) {
+                movements.add(new long[]{movements.size() + 1, socksIds[i], deltas[i]});
+            }
+        }
+
+        @Override
+        public synchronized long sealedId() {
+            return movements.size();
+        }
+
+        @Override
+        public synchronized List<SocksKey> fold(long upToId) {
+            List<SocksKey> folded = new ArrayList<>();
+            for (Map.Entry<SocksKey, Long> entry : ids.entrySet()) {
+                int delta = 0;
+                for (long[] movement : movements) {
+                    if (movement[0] > appliedId && movement[0] <= upToId && movement[1] == entry.getValue()) {
+                        delta += (int) movement[2];
+                    }
+                }
+                if (delta != 0) {
+                    snapshot.merge(entry.getKey(), delta, Integer::sum);
+                    folded.add(entry.getKey());
+                }
+            }
+            appliedId = Math.max(appliedId, upToId);
+            return folded;
+        }
+
+        private int tail(long socksId) {
+            int delta = 0;
+            for (long[] movement : movements) {
+                if (movement[0] > appliedId && movement[1] == socksId) {
+                    delta += (int) movement[2];
+                }
+            }
+            return delta;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.shop.socks.service.tests;
+
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.dto.SocksDto;
+import com.shop.socks.service.ReactiveSocksService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+@SpringBootTest(properties = "socks.reactive.enabled=true")
+public class ReactiveSocksServiceImplContractTest extends SocksServiceContract {
+
+    @Autowired
+    private ReactiveSocksService reactiveSocksService;
+
+    @Override
+    protected LotOfSocksDto income(SocksDto socksDto) {
+        return reactiveSocksService.addSocks(socksDto).block();
+    }
+
+    @Override
+    protected LotOfSocksDto outcome(SocksDto socksDto) {
+        return reactiveSocksService.removeSocks(socksDto).block();
+    }
+
+    @Override
+    protected List<SocksDto> filtered(String color, Integer minCotton, Integer maxCotton, String sortBy) {
+        return reactiveSocksService.getFilteredSocks(color, minCotton, maxCotton, sortBy).collectList().block();
+    }
+
+    @Override
+    protected long total(String color, Integer minCotton, Integer maxCotton) {
+        return reactiveSocksService.getTotalQuantity(color, minCotton, maxCotton).block();
+    }
+}
@@ -0,0 +1,302 @@
+package com.shop.socks.service.tests;
+
+import com.shop.socks.cache.ColorDictionary;
+import com.shop.socks.cache.StockCache;
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.metrics.SocksMetrics;
+import com.shop.socks.model.SocksKey;
+import com.shop.socks.parser.BatchFormat;
+import com.shop.socks.repository.BatchUpsertResult;
+import com.shop.socks.repository.SocksRepository;
+import com.shop.socks.service.impl.BatchPipeline;
+import com.shop.socks.service.impl.BatchProgress;
+import com.shop.socks.service.impl.DirectStockWriter;
+import com.shop.socks.service.impl.SocksServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+//Тесты потоковой загрузки партий из Excel.
+//Файл на 1 000 000 строк загружается в отдельной JVM с -Xmx128m (MILLION_ROWS_HEAP):
+//с прежним WorkbookFactory.create такой файл в него не помещался
+public class SocksBatchImportTest {
+
+    private static final String MILLION_ROWS_HEAP = "-Xmx128m";
+
+    private SocksServiceImpl socksService;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private BatchPipeline pipeline;
+
+    @Mock
+    private SocksRepository socksRepository;
+
+    @Mock
+    private MultipartFile file;
+
+    private Path xlsx;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        StockCache stockCache = new StockCache(1000, 60);
+        meterRegistry = new SimpleMeterRegistry();
+        pipeline = new BatchPipeline(2, 8, 4096);
+        socksService = new SocksServiceImpl(socksRepository, stockCache, new DirectStockWriter(socksRepository, stockCache),
+                new SocksMetrics(meterRegistry, stockCache), Optional.empty(),
+                pipeline, new ColorDictionary(null));
+        xlsx = Files.createTempFile("socks-test-", ".xlsx");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        pipeline.destroy();
+        Files.deleteIfExists(xlsx);
+    }
+
+    //Проверить, что строки читаются с пропуском заголовка и суммируются по артикулу
+    @Test
+    public void testProcessBatchOfSocks_SmallSheet() throws Exception {
+        writeSheet(3);
+        mockUpload();
+        Map<SocksKey, Integer> saved = new HashMap<>();
+        when(socksRepository.upsertQuantities(anyMap(), anyInt())).thenAnswer(invocation -> {
+            saved.putAll(invocation.getArgument(0));
+            return new BatchUpsertResult(2, 1);
+        });
+
+        LotOfSocksDto result = socksService.processBatchOfSocks(file);
+
+        assertEquals(3, result.getRows());
+        assertEquals(2, result.getInserted());
+        assertEquals(1, result.getUpdated());
+        assertEquals(3, saved.size());
+        assertEquals(2, saved.get(new SocksKey("color-1", 1)));
+        assertEquals(4, saved.get(new SocksKey("color-3", 3)));
+        //Строки и разделение времени на разбор и запись попадают в метрики
+        assertEquals(3, meterRegistry.counter("socks.batch.rows", "stage", "parsed").count());
+        assertEquals(3, meterRegistry.counter("socks.batch.rows", "stage", "persisted").count());
+        assertEquals(1, meterRegistry.timer("socks.batch.phase", "phase", "persist", "format", "excel").count());
+    }
+
+    //Проверить, что строки одного артикула объединяются, а не создают дубликаты
+    @Test
+    public void testProcessBatchOfSocks_MergesBySku() throws Exception {
+        writeSheet(101 * 50 * 2); //Каждый артикул встречается в файле дважды
+        mockUpload();
+        Map<SocksKey, Integer> saved = new HashMap<>();
+        when(socksRepository.upsertQuantities(anyMap(), anyInt())).thenAnswer(invocation -> {
+            saved.putAll(invocation.getArgument(0));
+            return new BatchUpsertResult(0, 0);
+        });
+
+        socksService.processBatchOfSocks(file);
+
+        assertEquals(101 * 50, saved.size());
+        verify(socksRepository, times(1)).upsertQuantities(anyMap(), anyInt()); //Один слив за всю загрузку
+    }
+
+    //Проверить, что файл на 1 000 000 строк загружается без потерь при ограниченной памяти.
+    //Загрузка выполняется в дочерней JVM с MILLION_ROWS_HEAP, поэтому ограничение не зависит от настроек запуска
+    @Test
+    public void testProcessBatchOfSocks_MillionRows() throws Exception {
+        int rows = 1_000_000;
+        writeSheet(rows);
+        Path output = Files.createTempFile("socks-test-", ".out");
+        try {
+            Process process = new ProcessBuilder(
+                    Path.of(System.getProperty("java.home"), "bin", "java").toString(), MILLION_ROWS_HEAP,
+                    "-cp", System.getProperty("java.class.path"), MillionRowsImport.class.getName(), xlsx.toString())
+                    .redirectErrorStream(true)
+                    .redirectOutput(output.toFile())
+                    .start();
+            assertTrue(process.waitFor(5, TimeUnit.MINUTES), "Загрузка не завершилась");
+            List<String> lines = Files.readAllLines(output);
+            assertEquals(0, process.exitValue(), String.join("\n", lines)); //В том числе без OutOfMemoryError
+
+            long expectedQuantity = 0;
+            for (int i = 1; i <= rows; i++) {
+                expectedQuantity += i % 7 + 1;
+            }
+            //Все строки прочитаны, ни одна пара не потеряна при агрегации
+            assertEquals(rows + " " + expectedQuantity, lines.get(lines.size() - 1));
+        } finally {
+            Files.deleteIfExists(output);
+        }
+    }
+
+    //Проверить, что CSV определяется по расширению и читается прямо из потока загрузки
+    @Test
+    public void testProcessBatchOfSocks_Csv() throws Exception {
+        byte[] csv = "color,cotton,quantity\nRed,50,10\nRed,50,5\nBlue,70,1\n".getBytes(StandardCharsets.UTF_8);
+        when(file.isEmpty()).thenReturn(false);
+        when(file.getOriginalFilename()).thenReturn("batch.CSV");
+        when(file.getInputStream()).thenReturn(new ByteArrayInputStream(csv));
+        Map<SocksKey, Integer> saved = new HashMap<>();
+        when(socksRepository.upsertQuantities(anyMap(), anyInt())).thenAnswer(invocation -> {
+            saved.putAll(invocation.getArgument(0));
+            return new BatchUpsertResult(2, 0);
+        });
+
+        LotOfSocksDto result = socksService.processBatchOfSocks(file);
+
+        assertEquals(3, result.getRows());
+        assertEquals(15, saved.get(new SocksKey("Red", 50)));
+        assertEquals(1, saved.get(new SocksKey("Blue", 70)));
+    }
+
+    //Проверить, что ошибочные строки не прерывают загрузку, а попадают в отчет в порядке файла;
+    //порции по две строки проверяются в пуле параллельно
+    @Test
+    public void testImportBatch_InvalidRowsReported() throws Exception {
+        String csv = "color,cotton,quantity\n" +
+                "Red,50,10\n" +
+                "Blue,fifty,1\n" +
+                "Green,20\n" +
+                "Black,150,1\n" +
+                "White,10,-3\n" +
+                "Red,50,5\n" +
+                "\"Grey, dark\",30,0\n";
+        Path upload = Files.createTempFile("socks-test-", ".csv");
+        Path report = Files.createTempFile("socks-test-errors-", ".csv");
+        Files.writeString(upload, csv);
+        StockCache stockCache = new StockCache(1000, 60);
+        BatchPipeline smallChunks = new BatchPipeline(2, 2, 2);
+        SocksServiceImpl service = new SocksServiceImpl(socksRepository, stockCache,
+                new DirectStockWriter(socksRepository, stockCache), new SocksMetrics(meterRegistry, stockCache),
+                Optional.empty(), smallChunks, new ColorDictionary(null));
+        Map<SocksKey, Integer> saved = new HashMap<>();
+        when(socksRepository.upsertQuantities(anyMap(), anyInt())).thenAnswer(invocation -> {
+            saved.putAll(invocation.getArgument(0));
+            return new BatchUpsertResult(1, 0);
+        });
+
+        try {
+            BatchProgress progress = new BatchProgress(report);
+            LotOfSocksDto result = service.importBatch(upload, BatchFormat.CSV, progress);
+
+            assertEquals(7, result.getRows());
+            assertEquals(5, result.getInvalid());
+            assertEquals(5, progress.getRowsInvalid());
+            assertEquals(Map.of(new SocksKey("Red", 50), 15), saved);
+            assertEquals(List.of(
+                    "line,color,cotton,quantity,error",
+                    "3,,,,Некорректное число в строке 3",
+                    "4,,,,Не заполнены данные в строке 4",
+                    "5,Black,150,1,Значение хлопка должно быть в диапазоне: 0-100",
+                    "6,White,10,-3,Количество должно быть положительным",
+                    "8,\"Grey, dark\",30,0,Количество должно быть положительным"),
+                    Files.readAllLines(report));
+        } finally {
+            smallChunks.destroy();
+            Files.deleteIfExists(upload);
+            Files.deleteIfExists(report);
+        }
+    }
+
+    //Проверить, что строка, на которой сумма артикула переполнила бы int, отклоняется, а не искажает остаток
+    @Test
+    public void testImportBatch_QuantityOverflowRejected() throws Exception {
+        Path upload = Files.createTempFile("socks-test-", ".csv");
+        Path report = Files.createTempFile("socks-test-errors-", ".csv");
+        Files.writeString(upload, "color,cotton,quantity\nRed,50,2147483647\nRed,50,1\n");
+        Map<SocksKey, Integer> saved = new HashMap<>();
+        when(socksRepository.upsertQuantities(anyMap(), anyInt())).thenAnswer(invocation -> {
+            saved.putAll(invocation.getArgument(0));
+            return new BatchUpsertResult(1, 0);
+        });
+
+        try {
+            LotOfSocksDto result = socksService.importBatch(upload, BatchFormat.CSV, new BatchProgress(report));
+
+            assertEquals(1, result.getInvalid());
+            assertEquals(Map.of(new SocksKey("Red", 50), Integer.MAX_VALUE), saved);
+            assertEquals("3,Red,50,1,Суммарное количество артикула слишком велико",
+                    Files.readAllLines(report).get(1));
+        } finally {
+            Files.deleteIfExists(upload);
+            Files.deleteIfExists(report);
+        }
+    }
+
+    //Загрузка XLSX из файла args[0] в дочерней JVM; последняя строка вывода - строки и сохраненное количество
+    public static final class MillionRowsImport {
+
+        public static void main(String[] args) throws Exception {
+            SocksRepository repository = mock(SocksRepository.class);
+            AtomicLong savedQuantity = new AtomicLong();
+            when(repository.upsertQuantities(anyMap(), anyInt())).thenAnswer(invocation -> {
+                Map<SocksKey, Integer> quantities = invocation.getArgument(0);
+                quantities.values().forEach(savedQuantity::addAndGet);
+                return new BatchUpsertResult(quantities.size(), 0);
+            });
+            StockCache stockCache = new StockCache(1000, 60);
+            BatchPipeline pipeline = new BatchPipeline(2, 8, 4096);
+            try {
+                SocksServiceImpl service = new SocksServiceImpl(repository, stockCache,
+                        new DirectStockWriter(repository, stockCache),
+                        new SocksMetrics(new SimpleMeterRegistry(), stockCache), Optional.empty(), pipeline,
+                        new ColorDictionary(null));
+                LotOfSocksDto result = service.importBatch(Path.of(args[0]), BatchFormat.EXCEL, new BatchProgress());
+                System.out.println(result.getRows() + " " + savedQuantity.get());
+            } finally {
+                pipeline.destroy();
+            }
+        }
+    }
+
+    private void mockUpload() throws IOException {
+        when(file.isEmpty()).thenReturn(false);
+        when(file.getOriginalFilename()).thenReturn("batch.xlsx");
+        when(file.getInputStream()).thenAnswer(invocation -> Files.newInputStream(xlsx));
+    }
+
+    //SXSSF пишет лист потоково, поэтому генерация файла тоже не требует большого heap
+    private void writeSheet(int rows) throws IOException {
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(100);
+             OutputStream outputStream = Files.newOutputStream(xlsx)) {
+            Sheet sheet = workbook.createSheet();
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("color");
+            header.createCell(1).setCellValue("cotton");
+            header.createCell(2).setCellValue("quantity");
+            for (int i = 1; i <= rows; i++) {
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue("color-" + (i % 50));
+                row.createCell(1).setCellValue(i % 101);
+                row.createCell(2).setCellValue(i % 7 + 1);
+            }
+            workbook.write(outputStream);
+            workbook.dispose();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.shop.socks.service.tests;
+
+import com.shop.socks.dto.SocksDto;
+import com.shop.socks.model.Socks;
+import com.shop.socks.repository.SocksRepository;
+import com.shop.socks.service.impl.SocksServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//Проверяет приход и отпуск на реальной базе (PostgreSQL), как и ApplicationTests
+@SpringBootTest
+public class SocksConcurrencyTest {
+
+    private static final int WRITERS = 64;
+    private static final int OPERATIONS_PER_WRITER = 50;
+
+    @Autowired
+    private SocksServiceImpl socksService;
+
+    @Autowired
+    private SocksRepository socksRepository;
+
+    //Уникальный цвет, чтобы тест не пересекался с данными в таблице
+    private final String color = "concurrency-" + UUID.randomUUID();
+
+    @AfterEach
+    public void tearDown() {
+        socksRepository.findByColor(color).forEach(socksRepository::delete);
+    }
+
+    //Проверить, что 64 параллельных писателя по одной позиции не теряют обновления
+    @Test
+    public void testParallelIncomeAndOutcome_NoLostUpdates() throws Exception {
+        socksService.addSocks(new SocksDto(color, 50, 1000)); //Начальный остаток
+
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < WRITERS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < OPERATIONS_PER_WRITER; j++) {
+                        socksService.addSocks(new SocksDto(color, 50, 2));
+                        assertNotNull(socksService.removeSocks(new SocksDto(color, 50, 1)));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Socks socks = socksRepository.findByColorAndCotton(color, 50).orElseThrow();
+        assertEquals(1000 + WRITERS * OPERATIONS_PER_WRITER, socks.getQuantity());
+    }
+
+    //Проверить, что параллельный отпуск никогда не уводит остаток в минус
+    @Test
+    public void testParallelOutcome_NeverOversells() throws Exception {
+        socksService.addSocks(new SocksDto(color, 70, 100));
+
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < WRITERS * 4; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return socksService.removeSocks(new SocksDto(color, 70, 1)) != null;
+                }));
+            }
+            start.countDown();
+            int accepted = 0;
+            for (Future<Boolean> future : futures) {
+                if (future.get(2, TimeUnit.MINUTES)) {
+                    accepted++;
+                }
+            }
+            assertEquals(100, accepted); //Принято ровно столько, сколько было на складе
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, socksRepository.findByColorAndCotton(color, 70).orElseThrow().getQuantity());
+    }
+}
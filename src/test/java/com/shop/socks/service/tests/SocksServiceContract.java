@@ -0,0 +1,83 @@
+package com.shop.socks.service.tests;
+
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.dto.SocksDto;
+import com.shop.socks.repository.SocksRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//Общий набор проверок контракта склада: его проходят и блокирующая, и реактивная реализации.
+//Работает на реальной базе (PostgreSQL), как SocksConcurrencyTest
+public abstract class SocksServiceContract {
+
+    @Autowired
+    private SocksRepository socksRepository;
+
+    //Уникальный цвет, чтобы тесты не пересекались с данными в таблице
+    protected final String color = "contract-" + UUID.randomUUID();
+
+    protected abstract LotOfSocksDto income(SocksDto socksDto);
+
+    //null - отпуск отклонен
+    protected abstract LotOfSocksDto outcome(SocksDto socksDto);
+
+    protected abstract List<SocksDto> filtered(String color, Integer minCotton, Integer maxCotton, String sortBy);
+
+    protected abstract long total(String color, Integer minCotton, Integer maxCotton);
+
+    @AfterEach
+    public void tearDown() {
+        socksRepository.findByColor(color).forEach(socksRepository::delete);
+    }
+
+    //Проверить, что приход создает позицию и прибавляется к существующей
+    @Test
+    public void testIncome_CreatesAndAccumulates() {
+        assertEquals(10, income(new SocksDto(color, 50, 10)).getQuantity());
+        LotOfSocksDto result = income(new SocksDto(color, 50, 5));
+
+        assertEquals(color, result.getColor());
+        assertEquals(50, result.getCotton());
+        assertEquals(15, result.getQuantity());
+    }
+
+    //Проверить, что приход с хлопком вне диапазона отклоняется
+    @Test
+    public void testIncome_InvalidCotton() {
+        assertThrows(IllegalArgumentException.class, () -> income(new SocksDto(color, 101, 1)));
+    }
+
+    //Проверить, что отпуск списывает остаток и не уводит его в минус
+    @Test
+    public void testOutcome_DecrementsAndRejectsOversell() {
+        income(new SocksDto(color, 50, 10));
+
+        assertEquals(3, outcome(new SocksDto(color, 50, 7)).getQuantity());
+        assertNull(outcome(new SocksDto(color, 50, 4)));
+        assertNull(outcome(new SocksDto(color, 40, 1))); //Позиции нет
+        assertEquals(3, total(color, 50, 50));
+    }
+
+    //Проверить фильтры по хлопку и сортировку
+    @Test
+    public void testFilteredAndTotal() {
+        income(new SocksDto(color, 70, 3));
+        income(new SocksDto(color, 30, 1));
+        income(new SocksDto(color, 50, 2));
+
+        List<SocksDto> sorted = filtered(color, 40, null, "cotton");
+        assertEquals(List.of(50, 70), sorted.stream().map(SocksDto::getCotton).toList());
+        assertNotNull(sorted.get(0).getId());
+
+        assertEquals(3, filtered(" " + color + " ", null, null, null).size()); //Цвет нормализуется
+        assertEquals(6, total(color, null, null));
+        assertEquals(3, total(color, 0, 50));
+        assertEquals(0, total(color, 90, 100));
+    }
+}
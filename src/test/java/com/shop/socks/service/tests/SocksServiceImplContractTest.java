@@ -0,0 +1,36 @@
+package com.shop.socks.service.tests;
+
+import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.dto.SocksDto;
+import com.shop.socks.service.impl.SocksServiceImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+@SpringBootTest
+public class SocksServiceImplContractTest extends SocksServiceContract {
+
+    @Autowired
+    private SocksServiceImpl socksService;
+
+    @Override
+    protected LotOfSocksDto income(SocksDto socksDto) {
+        return socksService.addSocks(socksDto);
+    }
+
+    @Override
+    protected LotOfSocksDto outcome(SocksDto socksDto) {
+        return socksService.removeSocks(socksDto);
+    }
+
+    @Override
+    protected List<SocksDto> filtered(String color, Integer minCotton, Integer maxCotton, String sortBy) {
+        return socksService.getFilteredSocks(color, minCotton, maxCotton, sortBy);
+    }
+
+    @Override
+    protected long total(String color, Integer minCotton, Integer maxCotton) {
+        return socksService.getTotalQuantity(color, minCotton, maxCotton);
+    }
+}
@@ -1,13 +1,26 @@
 package com.shop.socks.service.tests;
 
+import com.shop.socks.cache.ColorDictionary;
+import com.shop.socks.cache.StockCache;
+import com.shop.socks.dto.BulkMode;
+import com.shop.socks.dto.BulkMovementResultDto;
+import com.shop.socks.dto.BulkMovementsDto;
 import com.shop.socks.dto.LotOfSocksDto;
+import com.shop.socks.dto.MovementResultDto;
 import com.shop.socks.dto.SocksDto;
+import com.shop.socks.dto.SocksPageDto;
+import com.shop.socks.metrics.SocksMetrics;
 import com.shop.socks.model.Socks;
+import com.shop.socks.model.SocksKey;
 import com.shop.socks.repository.SocksRepository;
+import com.shop.socks.repository.StockCursor;
+import com.shop.socks.repository.StockRowCallback;
+import com.shop.socks.service.impl.BatchPipeline;
+import com.shop.socks.service.impl.DirectStockWriter;
 import com.shop.socks.service.impl.SocksServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.web.multipart.MultipartFile;
@@ -25,14 +38,14 @@ import java.util.stream.Collectors;
 
 public class SocksServiceImplTest {
 
-    @InjectMocks
     private SocksServiceImpl socksService;
 
-    @Mock
-    private SocksRepository socksRepository;
+    private SimpleMeterRegistry meterRegistry;
+
+    private ColorDictionary colorDictionary;
 
     @Mock
-    private List<SocksDto> socksList;
+    private SocksRepository socksRepository;
 
     @Mock
     private MultipartFile file;
@@ -40,43 +53,54 @@ public class SocksServiceImplTest {
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
-        socksList = new ArrayList<>();
-        socksList.add(new SocksDto("Red", 40, 100));
-        socksList.add(new SocksDto("Blue", 70, 10));
-        socksList.add(new SocksDto("Red", 30, 150));
-        socksList.add(new SocksDto("Green", 60, 50));
-        socksService.setSocksList(socksList);
+        StockCache stockCache = new StockCache(1000, 60);
+        meterRegistry = new SimpleMeterRegistry();
+        colorDictionary = new ColorDictionary(null);
+        socksService = new SocksServiceImpl(socksRepository, stockCache, new DirectStockWriter(socksRepository, stockCache),
+                new SocksMetrics(meterRegistry, stockCache), Optional.empty(),
+                new BatchPipeline(2, 8, 4096), colorDictionary);
     }
 
     //Проверить, что метод removeSocks корректно уменьшает кол-во носков на складе
     @Test
     public void testRemoveSocks() {
         SocksDto socksDto = new SocksDto("Red", 40, 50); //Носки для удаления
-        Socks existingSocks = new Socks("Red", 40, 100); //Существующие носки на складе
+        Socks updatedSocks = new Socks("Red", 40, 50); //Остаток на складе после списания
 
-        when(socksRepository.findByColorAndCotton(socksDto.getColor(), socksDto.getCotton()))
-                .thenReturn(Optional.of(existingSocks)); //Настройка поведения мока
+        when(socksRepository.decrementQuantity(socksDto.getColor(), socksDto.getCotton(), socksDto.getQuantity()))
+                .thenReturn(Optional.of(updatedSocks)); //Настройка поведения мока
 
         LotOfSocksDto result = socksService.removeSocks(socksDto); //Вызов метода
 
         assertNotNull(result); //Проверка результата
-        assertEquals(50, existingSocks.getQuantity()); //Проверяем что количество уменьшилось
-        verify(socksRepository, times(1)).save(existingSocks); //Проверяем, что save был вызван
+        assertEquals(50, result.getQuantity()); //Проверяем что количество уменьшилось
+        verify(socksRepository, never()).findByColorAndCotton(anyString(), anyInt()); //Без предварительного чтения
+        verify(socksRepository, never()).save(any(Socks.class));
     }
 
     //Проверить, что метод removeSocks не позволяет удалить большее количество носков, чем есть на складе
     @Test
     public void testRemoveSocks_InsufficientQuantity() {
         SocksDto socksDto = new SocksDto("Red", 70, 150); //Носки для удаления
-        Socks existingSocks = new Socks("Red", 70, 100); //Существующие носки на складе
 
-        when(socksRepository.findByColorAndCotton(socksDto.getColor(), socksDto.getCotton()))
-                .thenReturn(Optional.of(existingSocks)); //Настройка поведения мока
+        when(socksRepository.decrementQuantity(socksDto.getColor(), socksDto.getCotton(), socksDto.getQuantity()))
+                .thenReturn(Optional.empty()); //Условный UPDATE не изменил ни одной строки
 
         LotOfSocksDto result = socksService.removeSocks(socksDto); //Вызов метода
 
         assertNull(result); //Ожидаем, что результат будет null
         verify(socksRepository, never()).save(any(Socks.class)); //Проверяем, что save не был вызван
+        assertEquals(1, meterRegistry.counter("socks.outcome.rejected").count()); //Отказ учтен в метриках
+        assertEquals(1, meterRegistry.timer("socks.operation", "operation", "remove", "outcome", "success").count());
+    }
+
+    //Проверить, что отрицательное количество отклоняется до записи: отпуск не может увеличить остаток
+    @Test
+    public void testNegativeQuantityRejected() {
+        assertThrows(IllegalArgumentException.class, () -> socksService.removeSocks(new SocksDto("Red", 50, -5)));
+        assertThrows(IllegalArgumentException.class, () -> socksService.addSocks(new SocksDto("Red", 50, -5)));
+        verify(socksRepository, never()).decrementQuantity(anyString(), anyInt(), anyInt());
+        verify(socksRepository, never()).incrementQuantity(anyString(), anyInt(), anyInt());
     }
 
     //Проверить, что метод removeSocks корректно обрабатывает ситуацию, когда нужно удалить носки, которых нет на складе
@@ -84,7 +108,7 @@ public class SocksServiceImplTest {
     public void testRemoveSocks_NonExistingSocks() {
         SocksDto socksDto = new SocksDto("Red", 60, 40); //Носки для удаления
 
-        when(socksRepository.findByColorAndCotton(socksDto.getColor(), socksDto.getCotton()))
+        when(socksRepository.decrementQuantity(socksDto.getColor(), socksDto.getCotton(), socksDto.getQuantity()))
                 .thenReturn(Optional.empty()); //Настройки поведения мока
 
         LotOfSocksDto result = socksService.removeSocks(socksDto); //Вызов метода
@@ -97,10 +121,10 @@ public class SocksServiceImplTest {
     @Test
     public void testAddSocks_ExistingSocks() {
         SocksDto socksDto = new SocksDto("Red", 50, 50); //Носки для добавления
-        Socks existingSocks = new Socks("Red", 50, 30); //Существующие носки на складе
+        Socks updatedSocks = new Socks("Red", 50, 80); //Строка после upsert: 30 на складе + 50
 
-        when(socksRepository.findByColorAndCotton(socksDto.getColor(), socksDto.getCotton()))
-                .thenReturn(Optional.of(existingSocks)); //Настройка поведения мока
+        when(socksRepository.incrementQuantity(socksDto.getColor(), socksDto.getCotton(), socksDto.getQuantity()))
+                .thenReturn(updatedSocks); //Настройка поведения мока
 
         LotOfSocksDto result = socksService.addSocks(socksDto); //Вызов метода
 
@@ -109,17 +133,18 @@ public class SocksServiceImplTest {
         assertEquals(50, result.getCotton());
         assertEquals(80, result.getQuantity()); //Проверяем, что количество обновлено
         verify(socksRepository, times(1))
-                .save(existingSocks); //Проверяем, что save был вызван один раз
+                .incrementQuantity("Red", 50, 50); //Проверяем, что upsert был вызван один раз
+        verify(socksRepository, never()).findByColorAndCotton(anyString(), anyInt());
     }
 
     //Проверяет, что метод addSocks корректно обновляет кол-во носков, если их нет в БД
     @Test
     public void testAddSocks_NewSocks() {
         SocksDto socksDto = new SocksDto("Blue", 80, 20); //Носки для добавления
-        Socks newSocks = new Socks("Blue", 80, 20); //Существующие носки на складе
+        Socks newSocks = new Socks("Blue", 80, 20); //Вставленная строка
 
-        when(socksRepository.findByColorAndCotton(socksDto.getColor(), socksDto.getCotton()))
-                .thenReturn(Optional.empty()); //Настройка поведения мока
+        when(socksRepository.incrementQuantity(socksDto.getColor(), socksDto.getCotton(), socksDto.getQuantity()))
+                .thenReturn(newSocks); //Настройка поведения мока
 
         LotOfSocksDto result = socksService.addSocks(socksDto); //Вызов метода
 
@@ -128,62 +153,157 @@ public class SocksServiceImplTest {
         assertEquals(newSocks.getCotton(), result.getCotton());
         assertEquals(newSocks.getQuantity(), result.getQuantity());
         verify(socksRepository, times(1))
-                .save(newSocks); //Проверяем, что save был вызван один раз
+                .incrementQuantity("Blue", 80, 20); //Проверяем, что upsert был вызван один раз
     }
 
-    //Проверить, что метод возвращает пустой список, если в базе данных нет носков
+    //Проверяет, что addSocks отклоняет значение хлопка вне диапазона 0-100
     @Test
-    public void testGetFilteredSocks_EmptyList() {
-        socksList.clear(); // Очищаем список для теста
-        List<SocksDto> result = socksService.getFilteredSocks("Red", null, null, null);
-        assertTrue(result.isEmpty(), "Список должен быть пустым");
+    public void testAddSocks_InvalidCotton() {
+        SocksDto socksDto = new SocksDto("Blue", 120, 20);
+
+        assertThrows(IllegalArgumentException.class, () -> socksService.addSocks(socksDto));
+        verify(socksRepository, never()).incrementQuantity(anyString(), anyInt(), anyInt());
     }
 
-    //Проверить, что метод фильтрует носки по цвету
+    //Проверяет, что варианты написания цвета приходят в одну позицию и находятся выборкой в любом написании
     @Test
-    public void testGetFilteredSocks_FilterByColor() {
-        List<SocksDto> result = socksService.getFilteredSocks("Red", null, null, null);
-        assertEquals(2, result.size(), "Должно быть 2 носка красного цвета");
+    public void testAddSocks_ColorVariantsMerged() {
+        when(socksRepository.incrementQuantity(eq("Red"), eq(50), anyInt()))
+                .thenReturn(new Socks("Red", 50, 10), new Socks("Red", 50, 30));
+
+        socksService.addSocks(new SocksDto("Red", 50, 10));
+        LotOfSocksDto result = socksService.addSocks(new SocksDto(" RED ", 50, 20));
+        socksService.getFilteredSocks("red", null, null, null);
+
+        assertEquals("Red", result.getColor());
+        assertEquals(30, result.getQuantity());
+        verify(socksRepository).incrementQuantity("Red", 50, 20);
+        verify(socksRepository, never()).incrementQuantity(eq(" RED "), anyInt(), anyInt());
+        verify(socksRepository).scanFiltered(eq("Red"), isNull(), isNull(), isNull(), any());
     }
 
-    //Проверить, что метод фильтрует носки по минимальному содержанию хлопка
+    //Проверить, что метод возвращает пустой список, если в базе данных нет носков
     @Test
-    public void testGetFilteredSocks_FilterByMinCotton() {
-        List<SocksDto> result = socksService.getFilteredSocks(null, 50, null, null);
-        assertEquals(2, result.size(), "Должно быть 2 носка с хлопком >= 50");
+    public void testGetFilteredSocks_EmptyList() {
+        List<SocksDto> result = socksService.getFilteredSocks("Red", null, null, null);
+        assertTrue(result.isEmpty(), "Список должен быть пустым");
     }
 
-    //Проверить, что метод фильтрует носки по максимальному содержанию хлопка
+    //Проверить, что фильтры передаются в один запрос к репозиторию, а строки конвертируются в DTO
     @Test
-    public void testGetFilteredSocks_FilterByMaxCotton() {
-        List<SocksDto> result = socksService.getFilteredSocks(null, null, 50, null);
-        assertEquals(2, result.size(), "Должно быть 2 носка с хлопком <= 50");
+    public void testGetFilteredSocks_FilterByColorAndCotton() {
+        Socks socks = new Socks("Red", 40, 100);
+        socks.setId(7L);
+        stubScan("Red", 30, 60, "cotton", socks);
+
+        List<SocksDto> result = socksService.getFilteredSocks("Red", 30, 60, "cotton");
+
+        assertEquals(1, result.size());
+        assertEquals(7L, result.get(0).getId());
+        assertEquals("Red", result.get(0).getColor());
+        assertEquals(40, result.get(0).getCotton());
+        assertEquals(100, result.get(0).getQuantity());
+        verify(socksRepository, times(1)).scanFiltered(eq("Red"), eq(30), eq(60), eq("cotton"), any());
+        verify(socksRepository, never()).findAll();
     }
 
-    //Проверить, что метод фильтрует носки по диапазону содержания хлопка
+    //Проверить, что цвет обрезается по краям, а пустой цвет не фильтрует
     @Test
-    public void testGetFilteredSocks_FilterByMinAndMaxCotton() {
-        List<SocksDto> result = socksService.getFilteredSocks(null, 30, 60, null);
-        assertEquals(3, result.size(), "Должно быть 3 носка с хлопком в диапазоне [30, 60]");
+    public void testGetFilteredSocks_NormalizesColor() {
+        socksService.getFilteredSocks("  Red ", null, null, null);
+        socksService.getFilteredSocks("   ", 50, null, null);
+
+        verify(socksRepository).scanFiltered(eq("Red"), isNull(), isNull(), isNull(), any());
+        verify(socksRepository).scanFiltered(isNull(), eq(50), isNull(), isNull(), any());
     }
 
-    //Проверить, что метод сортирует носки по цвету
+    //Проверить, что порядок строк из репозитория сохраняется (сортировка выполняется в БД)
     @Test
     public void testGetFilteredSocks_SortingByColor() {
+        stubScan(null, null, null, "color",
+                new Socks("Blue", 70, 10), new Socks("Green", 60, 50),
+                new Socks("Red", 30, 150), new Socks("Red", 40, 100));
+
         List<SocksDto> result = socksService.getFilteredSocks(null, null, null, "color");
 
-        // Проверяем, что список отсортирован правильно
         List<String> expectedColors = Arrays.asList("Blue", "Green", "Red", "Red");
         List<String> actualColors = result.stream().map(SocksDto::getColor).collect(Collectors.toList());
-
         assertEquals(expectedColors, actualColors, "Список носков должен быть отсортирован по цвету");
     }
 
-    //Проверить, что метод сортирует носки по содержанию хлопка
+    //Проверить, что следующая страница читается от курсора последней строки предыдущей
+    @Test
+    public void testGetSocksPage_KeysetCursor() {
+        doAnswer(invocation -> {
+            StockRowCallback callback = invocation.getArgument(6);
+            callback.row(1L, "Blue", 10, 5);
+            callback.row(2L, "Red", 20, 7);
+            callback.row(3L, "Red", 30, 9);
+            return null;
+        }).when(socksRepository).scanPage(isNull(), eq(0), eq(100), eq(false), isNull(), eq(3), any());
+
+        SocksPageDto first = socksService.getSocksPage("", 0, 100, "color", null, 2);
+
+        assertEquals(List.of(1L, 2L), first.getItems().stream().map(SocksDto::getId).toList());
+        assertNotNull(first.getNextCursor());
+        assertEquals(new StockCursor(false, "Red", 20, 2L), StockCursor.decode(first.getNextCursor()));
+
+        SocksPageDto last = socksService.getSocksPage("", 0, 100, "color", first.getNextCursor(), 2);
+        verify(socksRepository).scanPage(isNull(), eq(0), eq(100), eq(false),
+                eq(new StockCursor(false, "Red", 20, 2L)), eq(3), any());
+        assertTrue(last.getItems().isEmpty());
+        assertNull(last.getNextCursor());
+    }
+
+    //Проверить, что курсор другой сортировки и слишком большая страница отклоняются
     @Test
-    public void testGetFilteredSocks_SortingByCotton() {
-        List<SocksDto> result = socksService.getFilteredSocks(null, null, null, "cotton");
-        assertEquals(30, result.get(0).getCotton(), "Первый носок должен иметь хлопок 30");
+    public void testGetSocksPage_InvalidRequest() {
+        String byCotton = new StockCursor(true, "Red", 20, 2L).encode();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> socksService.getSocksPage("Red", null, null, "color", byCotton, 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> socksService.getSocksPage("Red", null, null, null, "not a cursor", 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> socksService.getSocksPage("Red", null, null, null, null, 100_000));
+        verify(socksRepository, never()).scanPage(any(), any(), any(), anyBoolean(), any(), anyInt(), any());
+    }
+
+    //Проверить, что общее количество считается агрегатным запросом
+    @Test
+    public void testGetTotalQuantity() {
+        when(socksRepository.sumQuantity("Red", 30, 60)).thenReturn(250L);
+
+        assertEquals(250L, socksService.getTotalQuantity(" Red", 30, 60));
+        verify(socksRepository, never()).scanFiltered(any(), any(), any(), any(), any());
+    }
+
+    //Проверить, что запрос одного артикула после прихода обслуживается кэшем без обращения к БД
+    @Test
+    public void testGetFilteredSocks_SingleSkuFromCache() {
+        Socks updatedSocks = new Socks("Red", 50, 80);
+        updatedSocks.setId(3L);
+        when(socksRepository.incrementQuantity("Red", 50, 30)).thenReturn(updatedSocks);
+
+        socksService.addSocks(new SocksDto("Red", 50, 30));
+        List<SocksDto> result = socksService.getFilteredSocks("Red", 50, 50, null);
+
+        assertEquals(1, result.size());
+        assertEquals(80, result.get(0).getQuantity());
+        assertEquals(80L, socksService.getTotalQuantity("Red", 50, 50));
+        verify(socksRepository, never()).findByColorAndCotton(anyString(), anyInt());
+        verify(socksRepository, never()).scanFiltered(any(), any(), any(), any(), any());
+    }
+
+    //Проверить, что промах кэша загружает артикул из БД один раз
+    @Test
+    public void testGetFilteredSocks_SingleSkuReadThrough() {
+        when(socksRepository.findByColorAndCotton("Blue", 70)).thenReturn(Optional.empty());
+
+        assertTrue(socksService.getFilteredSocks("Blue", 70, 70, null).isEmpty());
+        assertTrue(socksService.getFilteredSocks("Blue", 70, 70, null).isEmpty());
+
+        verify(socksRepository, times(1)).findByColorAndCotton("Blue", 70);
     }
 
     //Тест на проверку носков с определенным ID, которые существуют в БД
@@ -250,4 +370,78 @@ public class SocksServiceImplTest {
         });
         assertEquals("Ошибка при чтении файла", exception.getMessage());
     }
+
+    //Проверить пакет движений в режиме BEST_EFFORT: строки оцениваются по порядку, в БД уходят суммарные изменения
+    @Test
+    void testApplyMovements_BestEffort() {
+        BulkMovementsDto request = new BulkMovementsDto();
+        request.setMode(BulkMode.BEST_EFFORT);
+        request.setMovements(List.of(
+                new SocksDto("Red", 50, -8),   //Остаток 10 -> 2
+                new SocksDto("Red", 50, -5),   //Недостаточно
+                new SocksDto("Blue", 30, 4),   //Новый артикул
+                new SocksDto("Blue", 30, -1),  //Покрыт приходом выше
+                new SocksDto("Red", 150, 1))); //Некорректный хлопок
+        when(socksRepository.lockQuantities(any())).thenReturn(Map.of(new SocksKey("Red", 50), 10));
+
+        BulkMovementResultDto result = socksService.applyMovements(request);
+
+        assertTrue(result.isApplied());
+        assertEquals(3, result.getAccepted());
+        assertEquals(2, result.getRejected());
+        assertEquals(List.of("ACCEPTED", "REJECTED", "ACCEPTED", "ACCEPTED", "INVALID"),
+                result.getResults().stream().map(MovementResultDto::getStatus).collect(Collectors.toList()));
+        assertEquals(2, result.getResults().get(0).getRemaining());
+        assertEquals(3, result.getResults().get(3).getRemaining());
+
+        Map<SocksKey, Integer> expected = new LinkedHashMap<>();
+        expected.put(new SocksKey("Red", 50), -8);
+        expected.put(new SocksKey("Blue", 30), 3);
+        verify(socksRepository).upsertQuantities(eq(expected), anyInt());
+        verify(socksRepository, never()).decrementQuantity(anyString(), anyInt(), anyInt()); //Без запросов на строку
+    }
+
+    //Проверить, что в режиме ALL_OR_NOTHING одна отклоненная строка отменяет весь пакет
+    @Test
+    void testApplyMovements_AllOrNothing() {
+        BulkMovementsDto request = new BulkMovementsDto();
+        request.setMovements(List.of(new SocksDto("Red", 50, 5), new SocksDto("Red", 60, -1)));
+        when(socksRepository.lockQuantities(any())).thenReturn(Map.of());
+
+        BulkMovementResultDto result = socksService.applyMovements(request);
+
+        assertFalse(result.isApplied());
+        assertEquals(BulkMode.ALL_OR_NOTHING, result.getMode());
+        assertEquals("NOT_APPLIED", result.getResults().get(0).getStatus());
+        assertEquals("REJECTED", result.getResults().get(1).getStatus());
+        verify(socksRepository, never()).upsertQuantities(any(), anyInt());
+        assertEquals(0, colorDictionary.size()); //Цвет отклоненного пакета не зарегистрирован
+    }
+
+    //Проверить, что написания нового цвета в пакете сводятся к первому и цвет регистрируется при применении
+    @Test
+    void testApplyMovements_NewColorVariants() {
+        BulkMovementsDto request = new BulkMovementsDto();
+        request.setMovements(List.of(new SocksDto("Green", 30, 5), new SocksDto(" GREEN ", 30, -2)));
+        when(socksRepository.lockQuantities(any())).thenReturn(Map.of());
+
+        BulkMovementResultDto result = socksService.applyMovements(request);
+
+        assertTrue(result.isApplied());
+        assertEquals(3, result.getResults().get(1).getRemaining());
+        verify(socksRepository).upsertQuantities(eq(Map.of(new SocksKey("Green", 30), 3)), anyInt());
+        assertEquals("Green", colorDictionary.lookup("green"));
+    }
+
+    //Репозиторий передает строки выборки в callback по полям
+    private void stubScan(String color, Integer minCotton, Integer maxCotton, String sortBy, Socks... rows) {
+        doAnswer(invocation -> {
+            StockRowCallback callback = invocation.getArgument(4);
+            for (Socks socks : rows) {
+                callback.row(socks.getId() == null ? 0L : socks.getId(), socks.getColor(), socks.getCotton(),
+                        socks.getQuantity());
+            }
+            return null;
+        }).when(socksRepository).scanFiltered(eq(color), eq(minCotton), eq(maxCotton), eq(sortBy), any());
+    }
 }
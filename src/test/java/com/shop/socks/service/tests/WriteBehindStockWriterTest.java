@@ -0,0 +1,266 @@
+package com.shop.socks.service.tests;
+
+import com.shop.socks.cache.CachedStock;
+import com.shop.socks.cache.StockCache;
+import com.shop.socks.journal.StockJournal;
+import com.shop.socks.model.Socks;
+import com.shop.socks.model.SocksKey;
+import com.shop.socks.repository.SocksRepository;
+import com.shop.socks.repository.StockJournalRepository;
+import com.shop.socks.repository.StockRow;
+import com.shop.socks.service.impl.WriteBehindStockWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.springframework.transaction.support.TransactionSynchronization.STATUS_COMMITTED;
+
+public class WriteBehindStockWriterTest {
+
+    private static final SocksKey KEY = new SocksKey("Red", 50);
+
+    @TempDir
+    private Path journalDir;
+
+    private InMemoryTable database;
+    private SocksRepository socksRepository;
+
+    @BeforeEach
+    public void setUp() {
+        database = new InMemoryTable();
+        socksRepository = mock(SocksRepository.class);
+        when(socksRepository.findByColorAndCotton(anyString(), anyInt())).thenAnswer(invocation ->
+                database.find(new SocksKey(invocation.getArgument(0), invocation.getArgument(1))));
+        when(socksRepository.upsertStock(anyString(), anyInt(), anyInt())).thenAnswer(invocation ->
+                database.upsert(new SocksKey(invocation.getArgument(0), invocation.getArgument(1))));
+    }
+
+    //Проверить, что движения подтверждаются без записи в таблицу socks, а сброс переносит
+    //в нее одно суммарное изменение артикула
+    @Test
+    public void testAcknowledgedBeforeFlush() {
+        database.quantities.put(KEY, 10);
+        WriteBehindStockWriter writer = writer();
+
+        assertEquals(15, writer.increment(KEY, 5).getQuantity());
+        assertEquals(8, writer.decrement(KEY, 7).orElseThrow().getQuantity());
+        assertTrue(writer.decrement(KEY, 9).isEmpty()); //Остаток проверяется по таблице в памяти
+        assertEquals(10, database.quantities.get(KEY));
+        assertEquals(0, database.applies);
+
+        assertEquals(1, writer.flush());
+        assertEquals(8, database.quantities.get(KEY));
+        assertEquals(2, database.flushedSeq);
+        assertEquals(0, writer.flush());
+        assertEquals(1, database.applies);
+        verify(socksRepository, never()).incrementQuantity(anyString(), anyInt(), anyInt());
+        verify(socksRepository, never()).decrementQuantity(anyString(), anyInt(), anyInt());
+        writer.destroy();
+    }
+
+    //Проверить, что приход сверх допустимого остатка отклоняется и не попадает в журнал
+    @Test
+    public void testIncomeOverflowRejected() {
+        database.quantities.put(KEY, Integer.MAX_VALUE - 1);
+        WriteBehindStockWriter writer = writer();
+
+        assertThrows(IllegalArgumentException.class, () -> writer.increment(KEY, 2));
+        assertEquals(Integer.MAX_VALUE, writer.increment(KEY, 1).getQuantity());
+        writer.flush();
+
+        assertEquals(Integer.MAX_VALUE, database.quantities.get(KEY));
+        assertEquals(1, database.flushedSeq); //В журнале только принятый приход
+        writer.destroy();
+    }
+
+    //Проверить, что несброшенные движения применяются при следующем запуске ровно один раз
+    @Test
+    public void testReplayAfterCrash() {
+        WriteBehindStockWriter crashed = writer();
+        crashed.increment(KEY, 5);
+        crashed.increment(new SocksKey("Blue", 20), 3);
+        crashed.flush();
+        crashed.decrement(KEY, 2);
+        crashed.increment(KEY, 4);
+        //Процесс остановлен без destroy: последние движения есть только в журнале
+
+        WriteBehindStockWriter restarted = writer();
+
+        assertEquals(7, database.quantities.get(KEY));
+        assertEquals(3, database.quantities.get(new SocksKey("Blue", 20)));
+        assertEquals(4, database.flushedSeq);
+        assertEquals(new CachedStock(1L, 7), restarted.load(KEY));
+        assertEquals(8, restarted.increment(KEY, 1).getQuantity());
+        restarted.destroy();
+
+        WriteBehindStockWriter again = writer();
+        assertEquals(8, database.quantities.get(KEY));
+        assertEquals(5, database.flushedSeq);
+        again.destroy();
+    }
+
+    //Проверить, что сброс, фиксация которого прошла без подтверждения, не применяется повторно
+    @Test
+    public void testFlushRetriedWithSameSequence() {
+        WriteBehindStockWriter writer = writer();
+        writer.increment(KEY, 5);
+        database.failAfterCommit = true;
+
+        assertThrows(DataAccessResourceFailureException.class, writer::flush);
+        writer.increment(KEY, 2);
+        writer.flush();
+
+        assertEquals(7, database.quantities.get(KEY));
+        assertEquals(2, database.flushedSeq);
+        writer.destroy();
+    }
+
+    //Проверить, что пакет движений видит в БД несброшенный отпуск, а отпуск по его артикулу
+    //ждет завершения транзакции пакета и проверяется по остатку после него
+    @Test
+    public void testSettleForTransactionBlocksUntilCompletion() throws Exception {
+        database.quantities.put(KEY, 10);
+        WriteBehindStockWriter writer = writer();
+        writer.decrement(KEY, 4);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            writer.settleForTransaction(List.of(KEY));
+            assertEquals(6, database.quantities.get(KEY));
+
+            Future<Optional<Socks>> outcome = executor.submit(() -> writer.decrement(KEY, 6));
+            assertThrows(TimeoutException.class, () -> outcome.get(200, TimeUnit.MILLISECONDS));
+            database.quantities.put(KEY, 1); //Пакет отпустил 5
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(STATUS_COMMITTED));
+
+            assertTrue(outcome.get(5, TimeUnit.SECONDS).isEmpty());
+            assertEquals(1, writer.load(KEY).quantity());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+            executor.shutdownNow();
+            writer.destroy();
+        }
+    }
+
+    //Проверить, что запись, прерванная на середине, и все после нее при повторе отбрасываются
+    @Test
+    public void testTornRecordStopsReplay() throws IOException {
+        StockJournal journal = StockJournal.open(journalDir, 4096, false);
+        journal.replay(0, (seq, color, cotton, delta) -> fail("Журнал должен быть пустым"));
+        journal.start(0);
+        journal.append("Red", 50, 5);
+        journal.append("Red", 50, 6);
+        journal.append("Red", 50, 7);
+        journal.close();
+        try (Stream<Path> files = Files.list(journalDir);
+             FileChannel channel = FileChannel.open(files.findFirst().orElseThrow(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), 32 + 31 + 8 + 10); //Данные второй записи
+        }
+
+        List<Integer> replayed = new ArrayList<>();
+        StockJournal reopened = StockJournal.open(journalDir, 4096, false);
+        assertEquals(1, reopened.replay(0, (seq, color, cotton, delta) -> replayed.add(delta)));
+        reopened.start(0);
+        assertEquals(2, reopened.append("Red", 50, 1));
+        reopened.close();
+        assertEquals(List.of(5), replayed);
+    }
+
+    private WriteBehindStockWriter writer() {
+        //Сброс по расписанию отключен, тесты вызывают его сами
+        return new WriteBehindStockWriter(socksRepository, database, new StockCache(100, 60),
+                journalDir.toString(), 4096, true, 0, "test");
+    }
+
+    //Таблица socks и состояние сброса в памяти
+    private static final class InMemoryTable extends StockJournalRepository {
+
+        private final Map<SocksKey, Integer> quantities = new HashMap<>();
+        private final Map<SocksKey, Long> ids = new HashMap<>();
+        private long flushedSeq;
+        private int applies;
+        private boolean failAfterCommit;
+
+        InMemoryTable() {
+            super(null);
+        }
+
+        @Override
+        public synchronized long flushedSeq(String nodeId) {
+            return flushedSeq;
+        }
+
+        @Override
+        public synchronized boolean apply(String nodeId, long seq, Map<SocksKey, Integer> deltas) {
+            if (flushedSeq >= seq) {
+                return false;
+            }
+            deltas.forEach((key, delta) -> {
+                upsert(key);
+                quantities.merge(key, delta, Integer::sum);
+            });
+            flushedSeq = seq;
+            applies++;
+            if (failAfterCommit) {
+                failAfterCommit = false;
+                throw new DataAccessResourceFailureException("Соединение потеряно после фиксации");
+            }
+            return true;
+        }
+
+        synchronized Optional<Socks> find(SocksKey key) {
+            if (!quantities.containsKey(key)) {
+                return Optional.empty();
+            }
+            Socks socks = new Socks(key.color(), key.cotton(), quantities.get(key));
+            socks.setId(id(key));
+            return Optional.of(socks);
+        }
+
+        synchronized StockRow upsert(SocksKey key) {
+            quantities.putIfAbsent(key, 0);
+            long id = id(key);
+            int quantity = quantities.get(key);
+            return new StockRow() {
+                @Override
+                public Long getId() {
+                    return id;
+                }
+
+                @Override
+                public int getQuantity() {
+                    return quantity;
+                }
+            };
+        }
+
+        private long id(SocksKey key) {
+            return ids.computeIfAbsent(key, k -> (long) ids.size() + 1);
+        }
+    }
+}